@@ -3,6 +3,7 @@ package com.linked.quizbot;
 import java.io.File;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linked.quizbot.utils.StorageCodec;
 
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 
@@ -22,6 +23,7 @@ public class Constants {
 		RESOURCESPATH= "src"+SEPARATOR+"main"+SEPARATOR+"resources",
 		LISTSPATH=RESOURCESPATH+ SEPARATOR +"lists",
 		USERDATAPATH=RESOURCESPATH+ SEPARATOR +"user-data",
+		CHECKPOINTPATH=RESOURCESPATH+ SEPARATOR +"checkpoint",
 		CMDPREFIXE = "q!",
 		NOEXPLICATION = "No explanation found.",
 		UPDATEEXPLANATION = "The bot is curretly getting an update, please be patient.";
@@ -31,8 +33,27 @@ public class Constants {
 		READTIMELONGMIN = 10,
 		INCRTIMESEC = 5,
 		DISCORDIDLENMIN= 17,
-		DISCORDIDLENMAX= 18;
+		DISCORDIDLENMAX= 18,
+		JOURNALCOMPACTEVERY = 100;
+	public static long 
+		FLUSHDELAYMILLIS = 2000,
+		LISTSTORESEGMENTBYTES = 64L*1024*1024,
+		CHECKPOINTLOGBYTES = 16L*1024*1024,
+		SESSIONIDLEMILLIS = 30L*60*1000,
+		SESSIONTICKMILLIS = 1000;
+	public static boolean 
+		LISTSTORE = false,
+		LISTSTOREMMAP = false,
+		CHECKPOINT = false,
+		INTERNING = true;
+	public static int 
+		USERCACHESIZE = 10000,
+		ATTEMPTSKEPT = 20,
+		IMPORTTHREADS = Runtime.getRuntime().availableProcessors(),
+		EXPORTTHREADS = Math.min(8, Runtime.getRuntime().availableProcessors()),
+		SESSIONTHREADS = Runtime.getRuntime().availableProcessors();
 	public static ObjectMapper MAPPER = new ObjectMapper();
+	public static StorageCodec STORAGECODEC = StorageCodec.JSON;
 	public static final String
 		EMOJIDEL = Emoji.fromUnicode("🔥").getFormatted(),
 		EMOJITRUE = Emoji.fromUnicode("✅").getFormatted(),
@@ -90,7 +90,7 @@ public class AddListCommand extends BotCommand{
 			k = Users.getById(l.getId());
 		}
 		if (k==null && l.getName()!=null) {
-			k = Users.getByName(l.getName());
+			k = Users.getByName(senderId, l.getName());
 		}
 		if (k!=null) {
 			String index = l.getId();
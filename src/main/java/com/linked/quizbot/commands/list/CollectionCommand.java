@@ -15,7 +15,6 @@ import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.core.BotCore;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
-import com.linked.quizbot.utils.Attempt;
 import com.linked.quizbot.utils.CollectionManager;
 import com.linked.quizbot.utils.Displayable;
 import com.linked.quizbot.utils.QuestionList;
@@ -268,8 +267,6 @@ public class CollectionCommand extends BotCommand {
 			User user;
 			String minEmoji, score, tagName, emoji;
 			Iterator<String> tagNames;
-			List<Attempt> tmp;
-			Attempt lastAttempt;
 			user= Users.get(l.getOwnerId());
 			minEmoji = Constants.EMOJIBLACKSQUARE; // TODO allow the user to choose the default
 			score="";
@@ -289,11 +286,8 @@ public class CollectionCommand extends BotCommand {
 						}
 					}
 				}
-				tmp = user.getAttempts(l.getId());
-				if (tmp!=null && !tmp.isEmpty()) {
-					lastAttempt = tmp.getFirst();
-					score = lastAttempt.getTextPoints();
-				}
+				// kept up to date on attempt insert, no attempt is scored here
+				score = user.getListStats(l.getId()).getTextPoints();
 			}
 			return String.format("`%s` %s `%2s` %s %s\n", l.getId(), minEmoji, l.size(), score, l.getName());
 		};
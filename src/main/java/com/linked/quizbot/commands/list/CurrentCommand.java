@@ -6,6 +6,7 @@ import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.core.viewers.Viewer;
 
@@ -42,10 +43,12 @@ public class CurrentCommand extends BotCommand {
 		String messageId = args.get(0);
 		Viewer q = BotCore.getViewer(messageId);
 		if (q != null && q.isActive()){
-			if (q instanceof QuizBot){
-				((QuizBot)q).addPlayer(userId);
-			}
-			return new CommandOutput(q.current());
+			return SessionRegistry.callExclusive(q, () -> {
+				if (q instanceof QuizBot){
+					((QuizBot)q).addPlayer(userId);
+				}
+				return new CommandOutput(q.current());
+			});
 		}
 		if (messageId.equals(CollectionCommand.messageIdByUserId.get(userId))){
 			return CollectionCommand.current(userId, CollectionCommand.CMDNAME);
@@ -7,6 +7,7 @@ import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
 
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.core.viewers.Viewer;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
@@ -51,7 +52,7 @@ public class EndCommand extends BotCommand {
 		}
 		Output output;
 		if (q instanceof QuizBot){
-			q.end();
+			SessionRegistry.runExclusive(q, q::end);
 			return BotCommand.getCommandByName(LeaderBoardCommand.CMDNAME).execute(userId, args);
 		}
 		return new CommandOutput(q.start());
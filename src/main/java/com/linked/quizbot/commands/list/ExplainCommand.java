@@ -8,6 +8,7 @@ import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.Explain;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.utils.Users;
@@ -62,9 +63,11 @@ public class ExplainCommand extends BotCommand {
 		if (q == null) {
 			return BotCommand.getCommandByName(HelpCommand.CMDNAME).execute(userId, List.of(getName()));
 		}
-		q.addPlayer(userId);
-		q.isExplaining(true);
-		int nbPlayers = q.getPlayers().size();
+		int nbPlayers = SessionRegistry.callExclusive(q, () -> {
+			q.addPlayer(userId);
+			q.isExplaining(true);
+			return q.getPlayers().size();
+		});
 		Explain ex;
 		if (q.isActive()) {
 			ex = new Explain(q, userId, q.getCurrentIndex());
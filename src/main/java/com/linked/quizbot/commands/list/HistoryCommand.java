@@ -3,8 +3,11 @@ package com.linked.quizbot.commands.list;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.PriorityQueue;
 
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.commands.BotCommand;
@@ -81,13 +84,42 @@ public class HistoryCommand extends CollectionCommand {
 			list = user.getById(args.get(0));
 			lists =  user.getAttempts(list.getId());
 		} else {
-			lists = user.getAttemptsByListId().values().stream()
-				.flatMap(l->l.stream()).sorted(Attempt.comparatorStart().reversed())
-				.toList();
+			lists = newestFirst(user.getAttemptsByListId().values());
 		}
 		return execute(userId, args, lists, listsByLastIndexByUserId, messageIdByUserId,  displayableAttempt(), getName());
 	}
 	
+	/**
+	 * Merges the retained attempts of every list, each already newest first, without sorting them all again.
+	 * @param attemptsPerList the attempts of each list, newest first.
+	 * @return every attempt, newest first.
+	 */
+	public static List<Attempt> newestFirst(Collection<List<Attempt>> attemptsPerList){
+		Comparator<Attempt> newest = Attempt.comparatorStart().reversed();
+		List<Attempt> res = new ArrayList<>();
+		// each list is consumed through a peeking iterator ordered by its current head
+		List<Attempt> current = new ArrayList<>();
+		List<Iterator<Attempt>> iterators = new ArrayList<>();
+		PriorityQueue<Integer> order = new PriorityQueue<>((i, j) -> newest.compare(current.get(i), current.get(j)));
+		for (List<Attempt> l : attemptsPerList){
+			Iterator<Attempt> it = l.stream().filter(att -> att!=null).iterator();
+			if (it.hasNext()){
+				current.add(it.next());
+				iterators.add(it);
+				order.add(current.size()-1);
+			}
+		}
+		while (!order.isEmpty()){
+			int i = order.poll();
+			res.add(current.get(i));
+			if (iterators.get(i).hasNext()){
+				current.set(i, iterators.get(i).next());
+				order.add(i);
+			}
+		}
+		return res;
+	}
+	
 	public static Displayable<Attempt> displayableAttempt(){
 		Displayable<Attempt> res = (att) -> {
 			User user;
@@ -113,7 +145,7 @@ public class HistoryCommand extends CollectionCommand {
 					}
 				}
 			}
-			return String.format("`%s` %s `%2s` %s %s\n", l.getId(), minEmoji, l.size(), att.getTextPoints(), l.getName());
+			return String.format("`%s` %s `%2s` %s `x%d` %s\n", l.getId(), minEmoji, l.size(), att.getTextPoints(), user.getListStats(l.getId()).getPlayCount(), l.getName());
 		};
 		return res;
 	}
@@ -9,6 +9,7 @@ import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 
 import net.dv8tion.jda.api.entities.Message;
@@ -59,17 +60,17 @@ public class LeaderBoardCommand extends BotCommand {
 		List<String> lb = q.leaderBoard();
 		outputBuilder.addAll(lb);
 		Consumer<Message> leaderboardPostSendAction = sentMessage -> {
-			BotCore.explicationRequest.add(sentMessage.getId());
+			SessionRegistry.requestExplication(sentMessage.getId());
 			// Schedule clearing of reactions after a delay
 			if (sentMessage.isFromGuild())
 			sentMessage.clearReactions().queueAfter(Constants.READTIMEMIN, TimeUnit.MINUTES,
 				clearSuccess -> {
 					// Remove message ID from the tracking set after reactions are cleared
-					BotCore.explicationRequest.remove(sentMessage.getId());
+					SessionRegistry.clearExplication(sentMessage.getId());
 				},
 				clearFailure -> {
 					System.err.println(Constants.ERROR + "Failed to clear reactions for message " + sentMessage.getId() + ": " + clearFailure.getMessage());
-					BotCore.explicationRequest.remove(sentMessage.getId()); // Still try to remove from tracking
+					SessionRegistry.clearExplication(sentMessage.getId()); // Still try to remove from tracking
 				}
 			);
 		};
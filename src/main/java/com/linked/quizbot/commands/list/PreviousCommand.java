@@ -8,6 +8,7 @@ import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.core.viewers.Viewer;
 
@@ -55,13 +56,15 @@ public class PreviousCommand extends BotCommand {
 		String messageId = args.get(0);
 		Viewer q = BotCore.getViewer(messageId);
 		if (q != null && q.isActive()){
-			if (q instanceof QuizBot){
-				((QuizBot)q).addPlayer(userId);
-				if (((QuizBot)q).isExplaining()){
-					return new CommandOutput(q.current());
+			return SessionRegistry.callExclusive(q, () -> {
+				if (q instanceof QuizBot){
+					((QuizBot)q).addPlayer(userId);
+					if (((QuizBot)q).isExplaining()){
+						return new CommandOutput(q.current());
+					}
 				}
-			}
-			return new CommandOutput(q.previous());
+				return new CommandOutput(q.previous());
+			});
 		}
 		if (messageId.equals(CollectionCommand.messageIdByUserId.get(userId))){
 			return CollectionCommand.previous(userId, CollectionCommand.CMDNAME);
@@ -1,5 +1,6 @@
 package com.linked.quizbot.core;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,6 +18,7 @@ import com.linked.quizbot.events.MessageListener;
 import com.linked.quizbot.events.ReactionListener;
 import com.linked.quizbot.events.ReadyEventListener;
 import com.linked.quizbot.events.SlashCommandListener;
+import com.linked.quizbot.utils.Checkpoint;
 import com.linked.quizbot.utils.QuestionList;
 import com.linked.quizbot.utils.Users;
 
@@ -39,13 +41,10 @@ public class BotCore {
 	public static JDA jda = null;
 	public static Random rand = new Random();
 	public static  String cmdPrefix = Constants.CMDPREFIXE;
-	public static Map<String, Viewer> viewerByMessageId = new HashMap<>();
 	public static Set<BotCommand> commands = new HashSet<>();
-	public static List<Viewer> listOfGames = new ArrayList<>();
 	public static Set<User> allUsers = new HashSet<>();
 	public static Map<String, QuestionList> toBeDeleted = new HashMap<>();
 	public static Map<String, Message> deletionMessages = new HashMap<>();
-	public static Set<String> explicationRequest = new HashSet<>();
 	public static boolean useButtons = true;
 	
 	public static boolean isBugFree(){
@@ -82,7 +81,7 @@ public class BotCore {
 		Users.addUser(u.getId());
 	}
 	public static List<Viewer> getListOfViewers() {
-		return listOfGames;
+		return SessionRegistry.getSessions();
 	}
 	public static JDA getJDA() {
 		return jda;
@@ -117,21 +116,34 @@ public class BotCore {
 		return jda;
 	}
 	public static void shutDown(){
-		if (getJDA()==null){
-			return;
-		}
 		BotCore.SHUTINGDOWN = true;
-		Users.exportAllUserLists();
-		Users.exportAllUserData();
-		getJDA().shutdown();
-		getJDA().shutdownNow();
-		BotCore.jda = null;
+		if (getJDA()!=null){
+			getJDA().shutdown();
+			try {
+				// events still being delivered may end games and change users
+				if (!getJDA().awaitShutdown(Duration.ofSeconds(10))){
+					getJDA().shutdownNow();
+				}
+			} catch (InterruptedException e){
+				getJDA().shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			BotCore.jda = null;
+		}
+		// events posted before the shutdown are handled before anything is exported
+		SessionRegistry.awaitMailboxes();
+		// unchanged users and lists are already on disk
+		Users.exportModified();
+		if (Constants.CHECKPOINT){
+			// the next start then has no log to replay
+			Checkpoint.take();
+		}
 	}
 	public static boolean isShutingDown(){
 		return BotCore.SHUTINGDOWN;
 	}
 	public static Viewer getViewer(String messageId) {
-		return viewerByMessageId.get(messageId);
+		return SessionRegistry.getViewer(messageId);
 	}
 	public static String getEffectiveNameFromId(String userId){
 		String res;User user;
@@ -11,6 +11,10 @@ import com.linked.quizbot.commands.BotCommand;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
 import com.linked.quizbot.commands.list.HelpCommand;
+import com.linked.quizbot.utils.Checkpoint;
+import com.linked.quizbot.utils.ListStore;
+import com.linked.quizbot.utils.StorageCodec;
+import com.linked.quizbot.utils.StorageMigration;
 import com.linked.quizbot.utils.Users;
 
 /**
@@ -24,7 +28,16 @@ public class CommandLineInterface {
 		s+= String.format("isBugFree:%s\n", BotCore.isBugFree());
 		s+= String.format("Prefix:%s\n", Constants.CMDPREFIXE);
 		s+= String.format("IsOnline:%s\n", BotCore.isOnline());
-		s+= String.format("NumberOfUsers:%d\n", Users.allUsers.size());
+		s+= String.format("NumberOfUsers:%d\n", Users.size());
+		s+= getSessionStatus();
+		return s;
+	}
+	
+	public static String getSessionStatus(){
+		String s = "";
+		s+= String.format("ActiveSessions:%d\n", SessionRegistry.size());
+		s+= String.format("ExpiredSessions:%d\n", SessionRegistry.expiredCount());
+		s+= String.format("TrackedMessages:%d\n", SessionRegistry.messageCount());
 		return s;
 	}
 	
@@ -42,6 +55,11 @@ public class CommandLineInterface {
 		s+= String.format("\t%s\t%s\n", "private","sets the bot to private/testing mode");
 		s+= String.format("\t%s\t%s\n", "public","sets the bot to public mode");
 		s+= String.format("\t%s\t%s\n", "load, reload","reloads all user data from disk");
+		s+= String.format("\t%s\t%s\n", "migrate json, migrate smile","converts every stored list and user to the given format");
+		s+= String.format("\t%s\t%s\n", "store import, store export","moves every list into the list store, or back to one file per list");
+		s+= String.format("\t%s\t%s\n", "store compact","compacts the list store");
+		s+= String.format("\t%s\t%s\n", "snapshot","writes a snapshot of all users and lists, restored on the next start");
+		s+= String.format("\t%s\t%s\n", "sessions","gets the number of active and expired game sessions");
 		s+= String.format("\t%s\t%s\n", "help","displays this usage message");
 		s+= String.format("\t%s\t%s\n", "q![BotCommand] [Argumments]","executes a bot command (e.g., q!help)");
 		
@@ -95,6 +113,24 @@ public class CommandLineInterface {
 					Users.loadAllUsers();
 					System.out.println(Constants.IO + "Loaded All data from disk.");
 				}
+				case "migrate json", "migrate smile" -> {
+					StorageMigration.migrate(StorageCodec.forName(input.substring("migrate ".length())));
+				}
+				case "store import" -> {
+					ListStore.importFromFiles();
+				}
+				case "store export" -> {
+					ListStore.exportToFiles();
+				}
+				case "store compact" -> {
+					ListStore.compact();
+				}
+				case "snapshot" -> {
+					Checkpoint.take();
+				}
+				case "sessions" -> {
+					System.out.print(getSessionStatus());
+				}
 				case "help" -> {
 					System.out.println(usage());
 				}
@@ -5,6 +5,7 @@ import java.util.Scanner;
 
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.utils.Attempt;
+import com.linked.quizbot.utils.Checkpoint;
 import com.linked.quizbot.utils.User;
 import com.linked.quizbot.utils.Users;
 
@@ -48,7 +49,8 @@ public class Main {
 		
 		Scanner scanner = new Scanner(System.in);
 		BotCore.jda= null;
-		Users.loadAllUsers();
+		// users are loaded on first access, see Users.get, unless a snapshot registers them all at once
+		Checkpoint.restore();
 		CommandLineInterface.execute(scanner);
 	}
 }
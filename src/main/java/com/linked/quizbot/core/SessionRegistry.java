@@ -0,0 +1,526 @@
+package com.linked.quizbot.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.core.viewers.QuizBot;
+import com.linked.quizbot.core.viewers.Viewer;
+import com.linked.quizbot.utils.TimerWheel;
+
+/**
+ * The registry of every active {@link Viewer} and {@link com.linked.quizbot.core.viewers.QuizBot} session.
+ * <p>
+ * Sessions are found by the id of any message they sent, by channel and by player. JDA delivers
+ * reactions, buttons and messages on a pool of threads, so lookups are lock-free reads of concurrent maps,
+ * while everything that changes a session goes through {@link #runExclusive(Viewer, Runnable)}. The lock
+ * is picked among {@link #STRIPES} by session id, so events on one game are handled one at a time while
+ * hundreds of other games proceed in parallel, without holding one lock object per session.
+ * </p>
+ * <p>
+ * Reactions and button clicks are not handled on JDA's threads but {@link #post(Viewer, Runnable) posted}
+ * to the session's mailbox. A mailbox is a queue drained by at most one task at a time on a pool shared
+ * by every session, so the events of one game run in the order they arrived, the game's lock is never
+ * contended by its own events, and different games run in parallel on {@link Constants#SESSIONTHREADS} threads.
+ * </p>
+ * <p>
+ * A session nobody touched for {@link Constants#SESSIONIDLEMILLIS} expires through its mailbox, a
+ * {@link QuizBot} still running is ended so its attempts are saved, then every entry of the session is
+ * dropped so its list and attempts can be collected. Idle deadlines live in a {@link TimerWheel}, a touch only records the
+ * time and the deadline is pushed back when it fires.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see BotCore#getViewer(String)
+ */
+public class SessionRegistry {
+	public static final int STRIPES = 64;
+	private static final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+	static {
+		for (int i = 0; i < STRIPES; ++i){
+			locks[i] = new ReentrantLock();
+		}
+	}
+	private static final AtomicLong sequence = new AtomicLong();
+	private static final Map<String, Session> sessionById = new ConcurrentHashMap<>();
+	private static final Map<String, Viewer> viewerByMessageId = new ConcurrentHashMap<>();
+	private static final Map<String, Set<Viewer>> sessionsByChannelId = new ConcurrentHashMap<>();
+	private static final Map<String, Set<Viewer>> sessionsByPlayerId = new ConcurrentHashMap<>();
+	private static final Set<String> explicationRequests = ConcurrentHashMap.newKeySet();
+	public static final int WHEELSLOTS = 512;
+	private static final TimerWheel<Viewer> idleDeadlines = new TimerWheel<>(WHEELSLOTS, Constants.SESSIONTICKMILLIS, System.currentTimeMillis());
+	private static final AtomicLong expired = new AtomicLong();
+	// the time sessions are touched at and expired against, replaced by tests
+	private static volatile LongSupplier clock = System::currentTimeMillis;
+	private static final AtomicBoolean expiryStarted = new AtomicBoolean();
+	private static final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "quizbot-expiry");
+		t.setDaemon(true);
+		return t;
+	});
+	// how many events a mailbox handles before letting other sessions use its thread
+	public static final int MAILBOXBATCH = 32;
+	private static final ExecutorService mailboxes = Executors.newFixedThreadPool(Math.max(1, Constants.SESSIONTHREADS), r -> {
+		Thread t = new Thread(r, "quizbot-session");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// what a session is indexed under, so it can be forgotten without scanning the indexes
+	private static final class Session {
+		final Viewer viewer;
+		final Map<String, Integer> questionIndexByMessageId = new ConcurrentHashMap<>();
+		final Set<String> channelIds = ConcurrentHashMap.newKeySet();
+		final Set<String> playerIds = ConcurrentHashMap.newKeySet();
+		volatile long lastActiveMillis = clock.getAsLong();
+		final Mailbox mailbox;
+
+		Session(Viewer viewer){
+			this.viewer = viewer;
+			this.mailbox = new Mailbox(viewer);
+		}
+	}
+
+	// the events of one session, run one after the other on the shared pool
+	private static final class Mailbox implements Runnable {
+		private final Viewer viewer;
+		private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Mailbox(Viewer viewer){
+			this.viewer = viewer;
+		}
+
+		void post(Runnable event){
+			events.add(event);
+			schedule();
+		}
+
+		private void schedule(){
+			if (!events.isEmpty() && scheduled.compareAndSet(false, true)){
+				mailboxes.execute(this);
+			}
+		}
+
+		@Override
+		public void run(){
+			Runnable event;
+			int handled = 0;
+			while (handled < MAILBOXBATCH && (event = events.poll()) != null){
+				try {
+					// an expiry is no activity, it must see the session as the last event left it
+					locked(viewer, !(event instanceof Expiry), event);
+				} catch (RuntimeException e){
+					System.err.println(Constants.ERROR + "An error occurred while handling an event of session "+viewer.getId());
+					e.printStackTrace();
+				}
+				++handled;
+			}
+			scheduled.set(false);
+			// an event posted after the last poll, or one left by the batch limit
+			schedule();
+		}
+	}
+
+	/**
+	 * @return a session id no other session of this process has, even when created in the same millisecond.
+	 */
+	public static String nextSessionId(){
+		return System.currentTimeMillis()+"-"+sequence.incrementAndGet();
+	}
+
+	private static ReentrantLock lockOf(Viewer v){
+		int h = v.getId().hashCode();
+		return locks[(h ^ (h >>> 16)) & (STRIPES-1)];
+	}
+
+	/**
+	 * Runs {@code action} while holding the lock of {@code v}'s session, the lock is reentrant.
+	 * @param v a session.
+	 * @param action what changes the session.
+	 */
+	public static void runExclusive(Viewer v, Runnable action){
+		locked(v, true, action);
+	}
+
+	private static void locked(Viewer v, boolean touches, Runnable action){
+		ReentrantLock lock = lockOf(v);
+		lock.lock();
+		try {
+			if (touches) touch(v);
+			action.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Computes a value while holding the lock of {@code v}'s session, the lock is reentrant.
+	 * @param <T> the type of the result.
+	 * @param v a session.
+	 * @param action what changes or reads the session.
+	 * @return the value computed by {@code action}.
+	 */
+	public static <T> T callExclusive(Viewer v, Supplier<T> action){
+		ReentrantLock lock = lockOf(v);
+		lock.lock();
+		try {
+			touch(v);
+			return action.get();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues an event of session {@code v}.
+	 * <p>The events of one session run in the order they were posted and never at the same time,
+	 * each one holding the session's lock. The caller does not wait. Only {@link #register(Viewer)},
+	 * {@link #bindMessage(Viewer, String, String, int)} and {@link #addPlayer(Viewer, String)} create
+	 * sessions, an event of a session that expired or was unregistered is dropped, so a late click
+	 * never brings a finished game back.</p>
+	 * @param v the session the event is about.
+	 * @param event what handles the event.
+	 * @return completes once the event was handled, exceptionally if it failed, right away if it was dropped.
+	 */
+	public static CompletableFuture<Void> post(Viewer v, Runnable event){
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		Session s = sessionById.get(v.getId());
+		if (s == null || s.viewer != v){
+			done.complete(null);
+			return done;
+		}
+		s.mailbox.post(() -> {
+			try {
+				event.run();
+				done.complete(null);
+			} catch (RuntimeException e){
+				done.completeExceptionally(e);
+				throw e;
+			}
+		});
+		return done;
+	}
+
+	/**
+	 * Waits for every event posted so far to be handled, expiries included.
+	 * <p>Used on shutdown once JDA delivers no more events.</p>
+	 */
+	public static void awaitMailboxes(){
+		List<CompletableFuture<Void>> pending = new ArrayList<>();
+		for (Session s : sessionById.values()){
+			// queued after the session's events, without registering a session expired meanwhile
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			s.mailbox.post(() -> done.complete(null));
+			pending.add(done);
+		}
+		CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+	}
+
+	/**
+	 * Registers a session, does nothing if it already is.
+	 * @param v the session.
+	 */
+	public static void register(Viewer v){
+		session(v);
+	}
+
+	private static Session session(Viewer v){
+		Session s = sessionById.get(v.getId());
+		if (s != null){
+			return s;
+		}
+		Session fresh = new Session(v);
+		s = sessionById.putIfAbsent(v.getId(), fresh);
+		if (s != null){
+			return s;
+		}
+		idleDeadlines.schedule(v, fresh.lastActiveMillis+Constants.SESSIONIDLEMILLIS);
+		startExpiry();
+		return fresh;
+	}
+
+	private static void touch(Viewer v){
+		Session s = sessionById.get(v.getId());
+		if (s != null){
+			s.lastActiveMillis = clock.getAsLong();
+		}
+	}
+
+	private static void startExpiry(){
+		if (expiryStarted.compareAndSet(false, true)){
+			long tick = Constants.SESSIONTICKMILLIS;
+			expiry.scheduleAtFixedRate(() -> {
+				try {
+					expireIdle(clock.getAsLong());
+				} catch (RuntimeException e){
+					System.err.println(Constants.ERROR + "An error occurred while expiring idle sessions.");
+					e.printStackTrace();
+				}
+			}, tick, tick, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sets where the registry reads the current time, so tests can drive expiry with explicit timestamps.
+	 * @param millis returns the current time, {@code System::currentTimeMillis} by default.
+	 */
+	public static void setClock(LongSupplier millis){
+		clock = millis;
+	}
+
+	/**
+	 * Expires every session idle for {@link Constants#SESSIONIDLEMILLIS} at {@code nowMillis}.
+	 * <p>Called every {@link Constants#SESSIONTICKMILLIS} by the expiry thread. The expiry of each idle
+	 * session is posted to its mailbox, after the events already queued. If one of those touched the
+	 * session, its deadline is pushed back instead, otherwise a running {@link QuizBot} is ended, which
+	 * records the attempt of each player, then the session is unregistered. Nothing is ended on the
+	 * expiry thread, so loading players from disk never holds up other sessions.</p>
+	 * @param nowMillis the current time.
+	 * @return the number of sessions whose expiry was posted.
+	 */
+	public static int expireIdle(long nowMillis){
+		int res = 0;
+		for (Viewer v : idleDeadlines.advance(nowMillis)){
+			Session s = sessionById.get(v.getId());
+			if (s == null || s.viewer != v){
+				// already unregistered
+				continue;
+			}
+			if (expire(s, nowMillis)){
+				++res;
+			}
+		}
+		return res;
+	}
+
+	// the deadline is read again, an event may have touched the session since it was scheduled
+	private static boolean expire(Session s, long nowMillis){
+		if (stillActive(s, nowMillis)){
+			return false;
+		}
+		// straight to the mailbox, post would register the session again once it is gone
+		s.mailbox.post(new Expiry(s, nowMillis));
+		return true;
+	}
+
+	// pushes the deadline back if the session was touched within SESSIONIDLEMILLIS of nowMillis
+	private static boolean stillActive(Session s, long nowMillis){
+		long deadline = s.lastActiveMillis+Constants.SESSIONIDLEMILLIS;
+		if (deadline > nowMillis){
+			idleDeadlines.schedule(s.viewer, deadline);
+			return true;
+		}
+		return false;
+	}
+
+	// ends and unregisters an idle session from its mailbox, unless an event queued before it touched the session
+	private static final class Expiry implements Runnable {
+		private final Session session;
+		private final long nowMillis;
+
+		Expiry(Session session, long nowMillis){
+			this.session = session;
+			this.nowMillis = nowMillis;
+		}
+
+		@Override
+		public void run(){
+			Viewer v = session.viewer;
+			if (sessionById.get(v.getId()) != session || stillActive(session, nowMillis)){
+				return;
+			}
+			if (v instanceof QuizBot && v.isActive()){
+				v.end();
+			}
+			if (unregister(v)){
+				expired.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sessions expired since the start.
+	 */
+	public static long expiredCount(){
+		return expired.get();
+	}
+
+	/**
+	 * Records that {@code messageId} shows question {@code index} of session {@code v}, registering it if needed.
+	 * @param v the session that sent or edited the message.
+	 * @param messageId the id of the message.
+	 * @param channelId the id of the message's channel, may be null.
+	 * @param index the index of the question shown, -1 for the header.
+	 * @requires messageId != null
+	 * @ensures getViewer(messageId) == v && getIndex(v, messageId) == index
+	 */
+	public static void bindMessage(Viewer v, String messageId, String channelId, int index){
+		runExclusive(v, () -> {
+			Session s = session(v);
+			s.questionIndexByMessageId.put(messageId, index);
+			viewerByMessageId.put(messageId, v);
+			if (channelId != null && s.channelIds.add(channelId)){
+				sessionsByChannelId.computeIfAbsent(channelId, k -> ConcurrentHashMap.newKeySet()).add(v);
+			}
+		});
+	}
+
+	/**
+	 * Records that {@code playerId} takes part in session {@code v}.
+	 * @param v the session.
+	 * @param playerId the id of the player.
+	 */
+	public static void addPlayer(Viewer v, String playerId){
+		runExclusive(v, () -> {
+			if (session(v).playerIds.add(playerId)){
+				sessionsByPlayerId.computeIfAbsent(playerId, k -> ConcurrentHashMap.newKeySet()).add(v);
+			}
+		});
+	}
+
+	/**
+	 * Forgets a session with every message, channel and player entry pointing to it.
+	 * @param v the session.
+	 * @return true if the session was registered.
+	 */
+	public static boolean unregister(Viewer v){
+		return callExclusive(v, () -> {
+			Session s = sessionById.remove(v.getId());
+			if (s == null){
+				return false;
+			}
+			for (String messageId : s.questionIndexByMessageId.keySet()){
+				viewerByMessageId.remove(messageId, v);
+				explicationRequests.remove(messageId);
+			}
+			for (String channelId : s.channelIds){
+				removeFromIndex(sessionsByChannelId, channelId, v);
+			}
+			for (String playerId : s.playerIds){
+				removeFromIndex(sessionsByPlayerId, playerId, v);
+			}
+			return true;
+		});
+	}
+
+	private static void removeFromIndex(Map<String, Set<Viewer>> index, String key, Viewer v){
+		index.computeIfPresent(key, (k, sessions) -> {
+			sessions.remove(v);
+			return sessions.isEmpty()?null:sessions;
+		});
+	}
+
+	/**
+	 * @param messageId the id of a message sent by a session.
+	 * @return the session, or null if the message belongs to none.
+	 */
+	public static Viewer getViewer(String messageId){
+		return messageId!=null?viewerByMessageId.get(messageId):null;
+	}
+
+	/**
+	 * @param v a session.
+	 * @param messageId the id of a message sent by the session.
+	 * @return the index of the question shown in the message, or null if unknown.
+	 */
+	public static Integer getIndex(Viewer v, String messageId){
+		Session s = sessionById.get(v.getId());
+		return s!=null?s.questionIndexByMessageId.get(messageId):null;
+	}
+
+	/**
+	 * @param channelId the id of a channel.
+	 * @return a copy of the sessions that sent a message in the channel.
+	 */
+	public static List<Viewer> getSessionsInChannel(String channelId){
+		Set<Viewer> sessions = sessionsByChannelId.get(channelId);
+		return sessions!=null?new ArrayList<>(sessions):List.of();
+	}
+
+	/**
+	 * @param playerId the id of a user.
+	 * @return a copy of the sessions the user plays in.
+	 */
+	public static List<Viewer> getSessionsOfPlayer(String playerId){
+		Set<Viewer> sessions = sessionsByPlayerId.get(playerId);
+		return sessions!=null?new ArrayList<>(sessions):List.of();
+	}
+
+	/**
+	 * @return a copy of every registered session.
+	 */
+	public static List<Viewer> getSessions(){
+		List<Viewer> res = new ArrayList<>();
+		for (Session s : sessionById.values()){
+			res.add(s.viewer);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the number of registered sessions.
+	 */
+	public static int size(){
+		return sessionById.size();
+	}
+
+	/**
+	 * @return the number of messages that lead to a session.
+	 */
+	public static int messageCount(){
+		return viewerByMessageId.size();
+	}
+
+	/**
+	 * Marks a message whose explanation reactions are being tracked.
+	 * @param messageId the id of the message.
+	 */
+	public static void requestExplication(String messageId){
+		explicationRequests.add(messageId);
+	}
+
+	/**
+	 * @param messageId the id of a message.
+	 * @return true if the message was tracked.
+	 */
+	public static boolean clearExplication(String messageId){
+		return messageId!=null && explicationRequests.remove(messageId);
+	}
+
+	/**
+	 * @param messageId the id of a message.
+	 * @return true if the message is tracked for explanations.
+	 */
+	public static boolean isExplicationRequested(String messageId){
+		return explicationRequests.contains(messageId);
+	}
+
+	/**
+	 * Forgets every session, for tests and shutdown.
+	 */
+	public static void clear(){
+		idleDeadlines.clear();
+		sessionById.clear();
+		viewerByMessageId.clear();
+		sessionsByChannelId.clear();
+		sessionsByPlayerId.clear();
+		explicationRequests.clear();
+	}
+}
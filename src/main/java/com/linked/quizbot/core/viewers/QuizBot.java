@@ -8,11 +8,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.utils.Attempt;
 import com.linked.quizbot.utils.Awnser;
 import com.linked.quizbot.utils.Option;
@@ -45,7 +47,7 @@ import net.dv8tion.jda.api.utils.Timestamp;
  * @see Users
  */
 public class QuizBot extends Viewer {
-	private final Map<String, Attempt> attemptByPlayer = new HashMap<>();
+	private final Map<String, Attempt> attemptByPlayer = new ConcurrentHashMap<>();
 	private boolean isExplaining = false;
 	private final boolean autoNext;
 	public final int delaySec = 5;
@@ -113,7 +115,8 @@ public class QuizBot extends Viewer {
 	 */
 	public void addPlayer(String player){
 		if(attemptByPlayer.get(player)==null){
-			attemptByPlayer.put(player, new Attempt(player, getQuestionList()));
+			attemptByPlayer.putIfAbsent(player, new Attempt(player, getQuestionList()));
+			SessionRegistry.addPlayer(this, player);
 		}
 	}
 	
@@ -130,12 +133,12 @@ public class QuizBot extends Viewer {
 	}
 	
 	@Override
-	public void addReaction(String userId, Emoji emoji, Message origin){
+	public void addReactionOnMessage(String userId, Emoji emoji, String messageId){
 		Question question;
 		int i;
 
-		if (origin!=null){
-			question = get(getIndexFromMessage(origin));
+		if (messageId!=null){
+			question = get(getIndexFromMessage(messageId));
 		} else {
 			question = getCurrQuestion();
 		}
@@ -153,7 +156,7 @@ public class QuizBot extends Viewer {
 	
 	@Override
 	public void addReaction(String userId, Emoji emoji){
-		addReaction(userId, emoji, null);
+		addReactionOnMessage(userId, emoji, null);
 	}
 	
 	private void addAwnser(String userId, Option opt){
@@ -203,7 +206,7 @@ public class QuizBot extends Viewer {
 	@Override
 	public void inBetweenProccessorCurrent(){
 		if (getMessage() != null) {
-			BotCore.explicationRequest.remove(getMessageId());
+			SessionRegistry.clearExplication(getMessageId());
 		}
 		isExplaining(false);
 		this.timeLimit = TimeFormat.RELATIVE.now();
@@ -1,10 +1,7 @@
 package com.linked.quizbot.core.viewers;
 
 import java.util.List;
-import java.util.Map;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.function.Consumer;
 
@@ -13,7 +10,7 @@ import org.apache.commons.collections4.map.HashedMap;
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.commands.Output;
 import com.linked.quizbot.commands.CommandOutput;
-import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.utils.Question;
 import com.linked.quizbot.utils.QuestionList;
 
@@ -38,7 +35,6 @@ import net.dv8tion.jda.api.utils.TimeFormat;
  */
 public class Viewer {
 	private final QuestionList questions;
-	public static Map<String, Map<String, Integer>> questionIndexByMessageId = new HashMap<>();
 	private boolean active= false;
 	private boolean sendInOriginalMessage= true;
 	private boolean allAtOnce= false;
@@ -58,7 +54,7 @@ public class Viewer {
 		this.useButtons = useButtons;
 		this.allAtOnce = allAtOnce;
 		this.sendInOriginalMessage=!allAtOnce && sendInOriginalMessage;
-		this.id = ""+Instant.now().toEpochMilli();
+		this.id = SessionRegistry.nextSessionId();
 	}
 		
 	/**
@@ -117,10 +113,11 @@ public class Viewer {
 	public String getChannelId() { return getChannel()!=null?getChannel().getId(): null;}
 
 	public Integer getIndexFromMessage(Message message){
-		if (Viewer.questionIndexByMessageId.get(getId())==null){
-			return null;
-		}
-		return Viewer.questionIndexByMessageId.get(getId()).get(message.getId());
+		return getIndexFromMessage(message.getId());
+	}
+
+	public Integer getIndexFromMessage(String messageId){
+		return SessionRegistry.getIndex(this, messageId);
 	}
 
 	public Question get(int index) {
@@ -141,7 +138,18 @@ public class Viewer {
 	 * @param emoji The emoji added.
 	 */
 	public void addReaction(String userId, Emoji emoji){};
-	public void addReaction(String userId, Emoji emoji, Message origin){};
+	public void addReaction(String userId, Emoji emoji, Message origin){
+		addReactionOnMessage(userId, emoji, origin!=null?origin.getId():null);
+	}
+	
+	/**
+	 * Adds a reaction made on the message with the given id, so the message itself does not need to be fetched.
+	 *
+	 * @param userId The ID of the user who reacted.
+	 * @param emoji The emoji added.
+	 * @param messageId The ID of the message reacted on, or {@code null} for the current question.
+	 */
+	public void addReactionOnMessage(String userId, Emoji emoji, String messageId){};
 	
 	/**
 	 * A placeholder method for removing a reaction (not fully implemented in this class).
@@ -160,12 +168,8 @@ public class Viewer {
 	 */
 	public Consumer<Message> postSendActionStart(){
 		return msg ->{
-			String oldId = msg.getId();
 			this.setMessage(msg);
-			Map<String, Integer> n = new HashMap<>();
-			n.put(msg.getId(), -1);
-			Viewer.questionIndexByMessageId.put(getId(), n);
-			BotCore.viewerByMessageId.put(oldId, this);
+			SessionRegistry.bindMessage(this, msg.getId(), msg.getChannel().getId(), -1);
 		};
 	}
 	
@@ -179,10 +183,7 @@ public class Viewer {
 		final int index = this.getCurrentIndex();
 		return msg ->{
 			this.setMessage(msg);
-			Map<String, Integer> n = Viewer.questionIndexByMessageId.getOrDefault(getId(), new HashMap<>());
-			n.put(msg.getId(), index);
-			Viewer.questionIndexByMessageId.put(getId(), n);
-			BotCore.viewerByMessageId.put(msg.getId(), this);
+			SessionRegistry.bindMessage(this, msg.getId(), msg.getChannel().getId(), index);
 		};
 	}
 	
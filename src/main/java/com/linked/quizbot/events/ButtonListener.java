@@ -5,6 +5,7 @@ import java.util.List;
 import com.linked.quizbot.core.BotCore;
 import com.linked.quizbot.core.CommandLineInterface;
 import com.linked.quizbot.core.MessageSender;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.core.viewers.Viewer;
 import com.linked.quizbot.Constants;
@@ -52,6 +53,17 @@ public class ButtonListener extends ListenerAdapter {
 		String userId = sender.getId();
 		String messageId = event.getMessageId();
 		Message message = event.getMessage();
+		Viewer viewer = BotCore.getViewer(messageId);
+		if (viewer!=null){
+			// the clicks on one game are handled in order, one at a time
+			SessionRegistry.post(viewer, () -> handleButton(event, userId, componentId, message, viewer));
+		} else {
+			handleButton(event, userId, componentId, message, null);
+		}
+	}
+	
+	private static void handleButton(ButtonInteractionEvent event, String userId, String componentId, Message message, Viewer viewer){
+		String messageId = message.getId();
 		BotCommand cmd = BotCommand.getCommandByName(componentId);
 		if(cmd!=null){
 			CommandOutput output= CommandLineInterface.execute(Constants.CMDPREFIXE+cmd.getName()+" "+messageId, userId, null);
@@ -62,7 +74,6 @@ public class ButtonListener extends ListenerAdapter {
 			return;
 		}
 		Emoji reaction = Emoji.fromFormatted(event.getButton().getLabel());
-		Viewer viewer = BotCore.getViewer(messageId);
 		if (viewer!=null && viewer.isActive() && viewer.getReactions().contains(reaction)){
 			// If the reaction is a number, the viewer will handle it.
 			viewer.addReaction(userId, reaction, message);
@@ -6,6 +6,7 @@ import com.linked.quizbot.Constants;
 import com.linked.quizbot.core.BotCore;
 import com.linked.quizbot.core.CommandLineInterface;
 import com.linked.quizbot.core.MessageSender;
+import com.linked.quizbot.core.SessionRegistry;
 import com.linked.quizbot.core.viewers.QuizBot;
 import com.linked.quizbot.core.viewers.Viewer;
 import com.linked.quizbot.utils.Question;
@@ -24,6 +25,8 @@ import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.events.message.react.GenericMessageReactionEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEvent;
+import net.dv8tion.jda.api.exceptions.ErrorHandler;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 
 /**
  * The ReactionListener class is a specialized {@link ListenerAdapter} class,
@@ -49,48 +52,67 @@ public class ReactionListener extends ListenerAdapter {
 		MessageChannel channel = event.getChannel();
 		Emoji reaction = f.getEmoji();
 		String messageId = event.getMessageId();
-		event.getChannel().retrieveMessageById(messageId).queue(message -> {
-			BotCommand cmd = BotCommand.getCommandFromEmoji(reaction.getFormatted());
-			if(cmd!=null){
-				CommandOutput output= CommandLineInterface.execute(Constants.CMDPREFIXE+cmd.getName()+" "+messageId, userId, null);
-				MessageSender.send(
-					output,
-					message 
-				);				
-				return;
-			}			
-			Viewer viewer = BotCore.getViewer(messageId);
-			if (viewer!=null && viewer.isActive() && viewer.getReactions().contains(reaction)){
-				viewer.addReaction(userId, reaction, message);
-				if (viewer instanceof QuizBot && viewer.getCurrentIndex()>=0){
-					QuizBot quizBot = (QuizBot)viewer;
-					if (quizBot.useAutoNext() && quizBot.getPlayers().size()==1){
-						ReactionListener.autoNext(userId, message, quizBot);
-						return;
-					}
+		Viewer viewer = BotCore.getViewer(messageId);
+		if (viewer!=null){
+			// the reactions on one game are applied in the order they arrive, one at a time, from ids only,
+			// the message is fetched once the session's lock is released, so no REST call holds it
+			SessionRegistry.post(viewer, () -> {
+				CommandOutput output = handleReaction(userId, reaction, messageId, viewer);
+				if (output!=null){
+					channel.retrieveMessageById(messageId).queue(message -> MessageSender.send(output, message), IGNOREDELETED);
+				}
+			});
+		} else {
+			channel.retrieveMessageById(messageId).queue(message -> {
+				CommandOutput output = handleReaction(userId, reaction, messageId, null);
+				if (output!=null){
+					MessageSender.send(output, message);
+				}
+			}, IGNOREDELETED);
+		}
+	}
+	
+	// a reaction on a message deleted meanwhile has nothing left to update
+	private static final ErrorHandler IGNOREDELETED = new ErrorHandler().ignore(ErrorResponse.UNKNOWN_MESSAGE);
+	
+	// applies the reaction and returns what to show on the message, or null if nothing changes
+	private static CommandOutput handleReaction(String userId, Emoji reaction, String messageId, Viewer viewer){
+		BotCommand cmd = BotCommand.getCommandFromEmoji(reaction.getFormatted());
+		if(cmd!=null){
+			return CommandLineInterface.execute(Constants.CMDPREFIXE+cmd.getName()+" "+messageId, userId, null);
+		}
+		if (viewer==null){
+			return null;
+		}
+		if (viewer.isActive() && viewer.getReactions().contains(reaction)){
+			viewer.addReactionOnMessage(userId, reaction, messageId);
+			if (viewer instanceof QuizBot && viewer.getCurrentIndex()>=0){
+				QuizBot quizBot = (QuizBot)viewer;
+				if (quizBot.useAutoNext() && quizBot.getPlayers().size()==1){
+					return ReactionListener.autoNext(userId, messageId, quizBot);
 				}
 			}
-			MessageSender.send(
-				new Output.Builder(viewer.current()).sendInOriginalMessage(true).build(),
-				message 
-			);
-		});
+		}
+		return new CommandOutput(new Output.Builder(viewer.current()).sendInOriginalMessage(true).build());
 	}
 	
 	public static void autoNext(String userId, Message message, QuizBot quizBot){
+		CommandOutput output = autoNext(userId, message.getId(), quizBot);
+		if (output!=null){
+			MessageSender.send(output, message);
+		}
+	}
+	
+	private static CommandOutput autoNext(String userId, String messageId, QuizBot quizBot){
 		if(!quizBot.useAutoNext()){
-			return;
+			return null;
 		}
 		Question oldQ = quizBot.getCurrQuestion();
-		MessageChannel channel = message.getChannel();
-		String messageId = message.getId();
 		if(oldQ.equals(quizBot.getCurrQuestion()) && !quizBot.isExplaining()){
 			BotCommand cmd = BotCommand.getCommandByName(quizBot.getCurrentIndex()<quizBot.getQuestionList().size()-1?NextCommand.CMDNAME:EndCommand.CMDNAME);
-			MessageSender.send(
-				cmd.execute(userId, List.of(messageId)),
-				message 
-			);
+			return cmd.execute(userId, List.of(messageId));
 		}
+		return null;
 	}
 	@Override
 	public void onMessageReactionRemove(MessageReactionRemoveEvent event){
@@ -1,6 +1,9 @@
 package com.linked.quizbot.utils;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -8,8 +11,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.linked.quizbot.Constants;
@@ -19,11 +24,21 @@ import net.dv8tion.jda.api.utils.Timestamp;
 
 public class Attempt {
 	private QuestionList questionList;
+	private String listVersion;
 	private String userId;
 	private Long timeStartedMillis;
 	private Long timeEndedMillis;
-	private Map<Integer, Awnser> awnsersByQuestion;
-	private Double score = null;
+	// bit j is set when the j-th option of the question was chosen, ANSWERED once the question was answered at all
+	private final int[] maskByQuestion;
+	private final long[] durationByQuestion;
+	// the answers a mask cannot hold: a question outside the list, an option the question does not have, or a null answer
+	private Map<Integer, Awnser> overflow = null;
+	private final Map<Integer, Awnser> awnsers = new AwnserView();
+	// the running score, kept in step by the answer mutators
+	private double score;
+	
+	private static final int ANSWERED = 1<<31;
+	private static final int MASKBITS = 31;
 	
 	public static class Parser {
 		public static List<Attempt> parseList(JsonParser jp, String original) throws IOException{
@@ -50,6 +65,8 @@ public class Attempt {
 				throw new IOException(String.format(Constants.ERROR+Constants.RED+"Attempt.parse, input is not a json: (%s, %s, %s) (%s, %s, %s) \n%s\n"+Constants.RESET,  jp.currentToken(), jp.currentName(), jp.getText(), jp.nextValue(), jp.nextFieldName(), jp.nextTextValue(), original));
 			}
 			QuestionList questionList = null;
+			String listId = null;
+			String listVersion = null;
 			String userId= null;
 			Long timeStartedMillis= null;
 			Long timeEndedMillis= null;
@@ -64,6 +81,12 @@ public class Attempt {
 						case "questionList", "list" -> {
 							questionList = QuestionList.Parser.parse(jp, original).build();
 						}
+						case "listId" -> {
+							listId = jp.getText();
+						}
+						case "listVersion" -> {
+							listVersion = jp.getText();
+						}
 						case "userId" -> {
 							userId = jp.getText();
 						}
@@ -89,6 +112,12 @@ public class Attempt {
 					/* parsing System.out.print("Attempt.Parser.parse("+jp.currentToken()+", "+jp.currentName()+") "); */
 				}
 			}
+			if (questionList==null && listId!=null && listVersion!=null){
+				questionList = ListSnapshots.get(listId, listVersion);
+				if (questionList==null){
+					System.err.println(String.format(Constants.ERROR + "Attempt.Parser.parse, missing list snapshot listId:%s, listVersion:%s", listId, listVersion));
+				}
+			}
 			Attempt att = null;
 			if (questionList!=null && userId!=null && timeStartedMillis!=null && timeEndedMillis!=null && awnsersByQuestion!=null){
 				att = new Attempt(userId, questionList, timeStartedMillis, timeEndedMillis, awnsersByQuestion);
@@ -123,20 +152,86 @@ public class Attempt {
 		}
 	}
 	
+	/**
+	 * Attempt.Writer streams {@link Attempt} objects as JSON, in the format read by {@link Parser}.
+	 * <p>The list is only referenced by its id and version, see {@link ListSnapshots}.</p>
+	 */
+	public static class Writer {
+		/**
+		 * Writes an attempt as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param att the attempt to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && att != null
+		 */
+		public static void write(JsonGenerator jg, Attempt att) throws IOException{
+			jg.writeStartObject();
+			jg.writeStringField("userId", att.getUserId());
+			jg.writeStringField("listId", att.getListId());
+			jg.writeStringField("listVersion", att.getListVersion());
+			jg.writeNumberField("timeStartedMillis", att.getStart());
+			jg.writeNumberField("timeEndedMillis", att.getEnd());
+			jg.writeObjectFieldStart("awnsersByQuestion");
+			for (Map.Entry<Integer, Awnser> e : att.getAwnsers().entrySet()){
+				if (e.getValue()==null){
+					continue;
+				}
+				jg.writeFieldName(String.valueOf(e.getKey()));
+				Awnser.Writer.write(jg, e.getValue());
+			}
+			jg.writeEndObject();
+			jg.writeEndObject();
+		}
+		
+		/**
+		 * @param att the attempt to write.
+		 * @return the attempt as single-line JSON.
+		 * @throws IOException if writing fails.
+		 */
+		public static String toJson(Attempt att) throws IOException{
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = Constants.MAPPER.getFactory().createGenerator(out)){
+				write(jg, att);
+			}
+			return out.toString();
+		}
+	}
+	
 	public Attempt(String userId, QuestionList list){
 		this(userId, list, System.currentTimeMillis(), 0L, new HashMap<>());
 	}
 	
+	/**
+	 * The list is not kept as is, the attempt holds the {@link ListSnapshots} snapshot
+	 * of its current version, shared with every other attempt on that version.
+	 * <p>The answers are copied into one bitmask per question, the map is not kept. Later changes
+	 * must go through {@link #setAwnser}, {@link #addAwnser} and {@link #removeAwnser}.</p>
+	 */
 	public Attempt(String userId, QuestionList questionList, Long timeStartedMillis, Long timeEndedMillis, Map<Integer, Awnser> awnsersByQuestion){
-		this.questionList = questionList;
+		this.listVersion = questionList.getContentVersion();
+		this.questionList = ListSnapshots.intern(questionList, listVersion);
 		this.userId = userId;
 		this.timeStartedMillis =timeStartedMillis;
 		this.timeEndedMillis =timeEndedMillis;
-		this.awnsersByQuestion = awnsersByQuestion;
+		this.maskByQuestion = new int[this.questionList.size()];
+		this.durationByQuestion = new long[this.questionList.size()];
+		for (Map.Entry<Integer, Awnser> e : awnsersByQuestion.entrySet()){
+			if (e.getKey()!=null){
+				put(e.getKey(), e.getValue());
+			}
+		}
+		this.score = computeScore();
 	}
 	
 	public QuestionList getQuestionList(){return questionList;}
 	
+	public String getListId(){return questionList.getId();}
+	
+	/**
+	 * @return the {@link ListSnapshots} version hash of the list this attempt was played on.
+	 */
+	public String getListVersion(){return listVersion;}
+	
 	public String getUserId(){return userId;}
 	
 	public Long getDuration(){return getEnd()-getStart();}
@@ -145,49 +240,270 @@ public class Attempt {
 	
 	public Long getEnd(){return timeEndedMillis;}
 	
+	/**
+	 * Returns a read-only view of the answers by question index, each {@link Awnser} is built
+	 * from the question's bitmask when it is read.
+	 * @return the answers of this attempt.
+	 */
 	public Map<Integer, Awnser> getAwnsers(){
-		return awnsersByQuestion;
+		return awnsers;
 	}
 	
 	public Attempt setAwnser(int questionIndex, Set<Option> responses, Long duration){
-		awnsersByQuestion.put(questionIndex, new Awnser(duration, responses));
+		double old = pointsAt(questionIndex);
+		put(questionIndex, new Awnser(duration, responses));
+		score += pointsAt(questionIndex)-old;
 		return this;
 	}
 	public Attempt addAwnser(int questionIndex, Option response, Long duration){
-		Set<Option> responses = awnsersByQuestion.getOrDefault(questionIndex, new Awnser(0L, new HashSet<>())).getResponses();
-		responses.add(response);
-		awnsersByQuestion.put(questionIndex, new Awnser(duration, responses));
+		int bit = bitOf(questionIndex, response);
+		if (bit<0 || isOverflow(questionIndex)){
+			Set<Option> responses = responsesAt(questionIndex);
+			responses.add(response);
+			return setAwnser(questionIndex, responses, duration);
+		}
+		double old = pointsAt(questionIndex);
+		maskByQuestion[questionIndex] |= ANSWERED|(1<<bit);
+		durationByQuestion[questionIndex] = duration;
+		score += pointsAt(questionIndex)-old;
 		return this;
 	}
 	public Attempt removeAwnser(int questionIndex, Option response, Long duration){
-		Set<Option> responses = awnsersByQuestion.getOrDefault(questionIndex, new Awnser(0L, new HashSet<>())).getResponses();
-		responses.remove(response);
-		awnsersByQuestion.put(questionIndex, new Awnser(duration, responses));
+		if (!inList(questionIndex) || isOverflow(questionIndex)){
+			Set<Option> responses = responsesAt(questionIndex);
+			responses.remove(response);
+			return setAwnser(questionIndex, responses, duration);
+		}
+		double old = pointsAt(questionIndex);
+		int bit = bitOf(questionIndex, response);
+		maskByQuestion[questionIndex] = (maskByQuestion[questionIndex]|ANSWERED) & ~(bit<0?0:1<<bit);
+		durationByQuestion[questionIndex] = duration;
+		score += pointsAt(questionIndex)-old;
 		return this;
 	}
 	
+	// stores an answer as a mask when every option it holds is one of the question's, in the overflow otherwise
+	private void put(int questionIndex, Awnser awnser){
+		int mask = awnser!=null?maskOf(questionIndex, awnser.getResponses()):0;
+		if (mask!=0){
+			maskByQuestion[questionIndex] = mask;
+			durationByQuestion[questionIndex] = awnser.getDuration();
+			if (overflow!=null){
+				overflow.remove(questionIndex);
+			}
+			return;
+		}
+		if (inList(questionIndex)){
+			maskByQuestion[questionIndex] = 0;
+		}
+		if (overflow==null){
+			overflow = new HashMap<>();
+		}
+		overflow.put(questionIndex, awnser);
+	}
+	
+	private boolean inList(int questionIndex){
+		return questionIndex>=0 && questionIndex<maskByQuestion.length;
+	}
+	
+	private boolean isOverflow(int questionIndex){
+		return overflow!=null && overflow.containsKey(questionIndex);
+	}
+	
+	private int bitOf(int questionIndex, Option opt){
+		if (!inList(questionIndex) || opt==null){
+			return -1;
+		}
+		Question q = questionList.get(questionIndex);
+		for (int j = 0; j<q.size() && j<MASKBITS; ++j){
+			if (q.get(j).equals(opt)){
+				return j;
+			}
+		}
+		return -1;
+	}
+	
+	private int maskOf(int questionIndex, Set<Option> responses){
+		if (!inList(questionIndex) || responses==null){
+			return 0;
+		}
+		int mask = ANSWERED, bit;
+		for (Option opt : responses){
+			bit = bitOf(questionIndex, opt);
+			if (bit<0){
+				return 0;
+			}
+			mask |= 1<<bit;
+		}
+		return mask;
+	}
+	
+	// a mutable copy of the options chosen on a question, empty if it was not answered
+	private Set<Option> responsesAt(int questionIndex){
+		Awnser awnser = awnsers.get(questionIndex);
+		return awnser!=null&&awnser.getResponses()!=null?new HashSet<>(awnser.getResponses()):new HashSet<>();
+	}
+	
+	private Awnser awnserAt(int questionIndex){
+		int mask = maskByQuestion[questionIndex];
+		Set<Option> responses = new HashSet<>();
+		Question q = questionList.get(questionIndex);
+		for (int j = 0; j<q.size() && j<MASKBITS; ++j){
+			if ((mask & (1<<j))!=0){
+				responses.add(q.get(j));
+			}
+		}
+		return new Awnser(durationByQuestion[questionIndex], responses);
+	}
+	
+	// the points a question adds to the score, only questions of the list count
+	private double pointsAt(int questionIndex){
+		if (!inList(questionIndex)){
+			return 0.0;
+		}
+		Question q = questionList.get(questionIndex);
+		if (isOverflow(questionIndex)){
+			Awnser awnser = overflow.get(questionIndex);
+			return awnser!=null?pointsOf(q, awnser.getResponses()):0.0;
+		}
+		int mask = maskByQuestion[questionIndex] & ~ANSWERED;
+		if (mask==0){
+			return 0.0;
+		}
+		int numberOfTrueOptions = q.getNumberTrue();
+		double points = 0.0;
+		for (int j = 0; j<q.size() && j<MASKBITS; ++j){
+			if ((mask & (1<<j))!=0){
+				points += (q.get(j).isCorrect()?QuestionList.pointsForCorrect/numberOfTrueOptions:QuestionList.pointsForIncorrect);
+			}
+		}
+		return points;
+	}
+	
+	private static double pointsOf(Question q, Set<Option> responses){
+		if (responses==null || responses.isEmpty()){
+			return 0.0;
+		}
+		int numberOfTrueOptions = q.getNumberTrue();
+		double points = 0.0;
+		for (Option opt : responses) {
+			points += (opt.isCorrect()?QuestionList.pointsForCorrect/numberOfTrueOptions:QuestionList.pointsForIncorrect);
+		}
+		return points;
+	}
+	
+	/**
+	 * The answers of the attempt seen as a map, the masks are read in question order and the overflow after them.
+	 */
+	private final class AwnserView extends AbstractMap<Integer, Awnser> {
+		@Override
+		public Awnser get(Object key){
+			if (!(key instanceof Integer)){
+				return null;
+			}
+			int i = (Integer) key;
+			if (isOverflow(i)){
+				return overflow.get(i);
+			}
+			return inList(i) && maskByQuestion[i]!=0?awnserAt(i):null;
+		}
+		
+		@Override
+		public boolean containsKey(Object key){
+			if (!(key instanceof Integer)){
+				return false;
+			}
+			int i = (Integer) key;
+			return isOverflow(i) || (inList(i) && maskByQuestion[i]!=0);
+		}
+		
+		@Override
+		public int size(){
+			int n = overflow!=null?overflow.size():0;
+			for (int mask : maskByQuestion){
+				if (mask!=0){
+					++n;
+				}
+			}
+			return n;
+		}
+		
+		@Override
+		public Set<Map.Entry<Integer, Awnser>> entrySet(){
+			return new AbstractSet<>(){
+				@Override
+				public int size(){
+					return AwnserView.this.size();
+				}
+				
+				@Override
+				public Iterator<Map.Entry<Integer, Awnser>> iterator(){
+					Iterator<Map.Entry<Integer, Awnser>> rest = overflow!=null?new HashMap<>(overflow).entrySet().iterator():null;
+					return new Iterator<>(){
+						private int next = advance(0);
+						
+						private int advance(int from){
+							while (from<maskByQuestion.length && maskByQuestion[from]==0){
+								++from;
+							}
+							return from;
+						}
+						
+						@Override
+						public boolean hasNext(){
+							return next<maskByQuestion.length || (rest!=null && rest.hasNext());
+						}
+						
+						@Override
+						public Map.Entry<Integer, Awnser> next(){
+							if (next<maskByQuestion.length){
+								int i = next;
+								next = advance(next+1);
+								return new AbstractMap.SimpleImmutableEntry<>(i, awnserAt(i));
+							}
+							if (rest!=null && rest.hasNext()){
+								return rest.next();
+							}
+							throw new NoSuchElementException();
+						}
+					};
+				}
+			};
+		}
+	}
+	
 	public Attempt end(){
 		timeEndedMillis = System.currentTimeMillis();
-		score = getScore();
 		return this;
 	}
 	
 	/**
-	 * Calculates and returns the exact final score for this user.
-	 * @return the final score of this user
+	 * Returns the score kept up to date by the answer mutators, without going over the questions.
+	 * @return the score of this user
+	 * @ensures \result == computeScore(), up to rounding
+	 * @pure
 	 */
 	public Double getScore(){
-		//if (this.score!=null && this.getEnd()!=null){return this.score;}
-		Double score=0.0;
+		return score;
+	}
+	
+	/**
+	 * Calculates the exact score from every answer, as {@link #getScore()} did before the score was kept running.
+	 * <p>Final as the constructor calls it.</p>
+	 * @return the score of this user
+	 * @pure
+	 */
+	public final double computeScore(){
+		double score=0.0;
 		int numberOfTrueOptions;
 		Awnser  awnser;
 		Set<Option> response;
 		for (int i =0; i<questionList.size(); ++i){
-			awnser = awnsersByQuestion.get(i);
+			awnser = awnsers.get(i);
 			if (awnser!=null){
 				response = awnser.getResponses();
 				if (response!=null){
-					numberOfTrueOptions = getQuestionList().get(i).trueOptions().size();
+					numberOfTrueOptions = questionList.get(i).trueOptions().size();
 					for (Option opt : response) {
 						score += (opt.isCorrect()?QuestionList.pointsForCorrect/numberOfTrueOptions:QuestionList.pointsForIncorrect);
 					}
@@ -224,26 +540,13 @@ public class Attempt {
 	}
 
 	public String toJson(){
-		/*try {
-			return Constants.MAPPER.writer(new DefaultPrettyPrinter()).writeValueAsString(this);
-		}catch(JsonProcessingException e){System.err.print(Constants.ERROR);e.printStackTrace();}*/
-		String res = "{", s;
-		Integer key;
-		res += String.format("\"%s\":%s,", "userId", getQuestionList().toJson());
-		res += String.format("\"%s\":%d,", "timeStartedMillis", getStart());
-		res += String.format("\"%s\":%d,", "timeEndedMillis", getEnd());
-		res += String.format("\"%s\":%s,", "questionList", getQuestionList().toJson());
-		s="{";
-		Iterator<Integer> iter =  awnsersByQuestion.keySet().iterator();
-		while (iter.hasNext()){
-			key = iter.next();
-			s += String.format("\"%d\":%s", key, awnsersByQuestion.get(key).toJson());
-			if (iter.hasNext()){s+= ", ";}
+		try {
+			return Writer.toJson(this);
+		} catch (IOException e){
+			System.err.print(Constants.ERROR);
+			e.printStackTrace();
 		}
-		s+= "}";
-		res += String.format("\"%s\":%s", "awnsersByQuestion", s);
-		res += "}";
-		return res;
+		return null;
 	}
 	
 	public static Comparator<Attempt> comparatorEnd(){
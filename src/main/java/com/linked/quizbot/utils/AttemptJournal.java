@@ -0,0 +1,240 @@
+package com.linked.quizbot.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.linked.quizbot.Constants;
+
+/**
+ * A per-user append-only journal of finished {@link Attempt}s.
+ * <p>
+ * Each line of {@code attempts.jsonl} holds one record, {@code {"listId":..., "attempt":{...}}},
+ * so finishing a quiz appends a single line instead of rewriting the whole history.
+ * The journal is replayed in order when a {@link User} is loaded, and rewritten from memory
+ * by {@link #compact(String, Map, Map)} to drop unreadable or duplicated records, to migrate
+ * attempts still embedded in an old {@code user-data.json} and to replace the attempts that are
+ * no longer retained by one {@code {"listId":..., "rollup":{...}}} record per list.
+ * </p>
+ * <p>All writes go through {@link Persistence#submit(String, Runnable)} so they keep their order.</p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see User#addAttempt(String, Attempt)
+ */
+public class AttemptJournal {
+	public static final String FILENAME = "attempts.jsonl";
+
+	/**
+	 * @param userId the owner of the journal.
+	 * @return the path of the user's journal file.
+	 * @ensures \result.endsWith(FILENAME)
+	 */
+	public static String pathToJournal(String userId){
+		return Constants.USERDATAPATH+Constants.SEPARATOR+userId+Constants.SEPARATOR+FILENAME;
+	}
+
+	/**
+	 * Serializes a journal record on the calling thread and appends it on the persistence thread.
+	 * @param userId the user who made the attempt.
+	 * @param listId the id of the list that was played.
+	 * @param att the finished attempt.
+	 */
+	public static void append(String userId, String listId, Attempt att){
+		String destFilePath = pathToJournal(userId);
+		String line;
+		try {
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = Constants.MAPPER.getFactory().createGenerator(out)){
+				writeRecord(jg, listId, att);
+			}
+			line = out.toString();
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while serializing an attempt. userId:"+userId+", listId:"+listId);
+			e.printStackTrace();
+			return;
+		}
+		Persistence.submit(userId, () -> {
+			try {
+				Path p = Paths.get(destFilePath);
+				Files.createDirectories(p.getParent());
+				Files.writeString(p, line+"\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				Checkpoint.logAttempt(userId, listId, att);
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while appending to the attempt journal."+destFilePath);
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Reads the journal in order and hands every readable record to {@code sink} or {@code rollups}.
+	 * <p>Unreadable lines, such as a line torn by a crash, are skipped and counted.</p>
+	 * @param userId the owner of the journal.
+	 * @param sink receives the list id and the attempt of each record, oldest first.
+	 * @param rollups receives the list id and the rollup of the attempts folded by the last compaction.
+	 * @return the number of lines that could not be read.
+	 */
+	public static int replay(String userId, BiConsumer<String, Attempt> sink, BiConsumer<String, AttemptRollup> rollups){
+		File f = new File(pathToJournal(userId));
+		int skipped = 0;
+		if (!f.exists()){
+			return skipped;
+		}
+		JsonFactory factory = new JsonFactory();
+		try (BufferedReader reader = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)){
+			String line;
+			while ((line = reader.readLine()) != null){
+				if (line.isBlank()) continue;
+				try (JsonParser jp = factory.createParser(line)){
+					if (!parseRecord(jp, line, sink, rollups)){
+						++skipped;
+					}
+				} catch (IOException e){
+					++skipped;
+				}
+			}
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while replaying the attempt journal."+f.getPath());
+			e.printStackTrace();
+		}
+		if (skipped > 0){
+			System.err.println(String.format(Constants.ERROR + "Skipped %d unreadable records in %s", skipped, f.getPath()));
+		}
+		return skipped;
+	}
+
+	/**
+	 * Rewrites the journal so it holds exactly the given rollups and attempts.
+	 * <p>The lists are copied on the calling thread, then written through {@link DurableWrites}
+	 * so the journal is replaced atomically once complete.</p>
+	 * @param userId the owner of the journal.
+	 * @param attemptsByListId the attempts to keep, newest first as in {@link User#getAttemptsByListId()}.
+	 * @param rollupsByListId the attempts that were folded, they are written before the attempts kept.
+	 */
+	public static void compact(String userId, Map<String, List<Attempt>> attemptsByListId, Map<String, AttemptRollup> rollupsByListId){
+		String destFilePath = pathToJournal(userId);
+		List<String> listIds = new ArrayList<>();
+		List<List<Attempt>> copies = new ArrayList<>();
+		for (Map.Entry<String, List<Attempt>> e : attemptsByListId.entrySet()){
+			listIds.add(e.getKey());
+			copies.add(new ArrayList<>(e.getValue()));
+		}
+		Map<String, AttemptRollup> rollups = new HashMap<>();
+		for (Map.Entry<String, AttemptRollup> e : rollupsByListId.entrySet()){
+			rollups.put(e.getKey(), e.getValue().copy());
+		}
+		Persistence.submit(userId, () -> {
+			try {
+				// records are streamed one per line, the history is never held as text
+				DurableWrites.write(destFilePath, out -> {
+					try (JsonGenerator jg = Constants.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)){
+						jg.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+						boolean empty = true;
+						for (Map.Entry<String, AttemptRollup> e : rollups.entrySet()){
+							writeRecord(jg, e.getKey(), e.getValue());
+							empty = false;
+						}
+						for (int i=0; i<listIds.size(); ++i){
+							List<Attempt> attempts = copies.get(i);
+							// oldest first so a replay rebuilds the newest-first order
+							for (int j=attempts.size()-1; j>=0; --j){
+								if (attempts.get(j)==null) continue;
+								writeRecord(jg, listIds.get(i), attempts.get(j));
+								empty = false;
+							}
+						}
+						if (!empty){
+							// appended records must start on a line of their own
+							jg.writeRaw("\n");
+						}
+					}
+				});
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while compacting the attempt journal."+destFilePath);
+				e.printStackTrace();
+			}
+		});
+	}
+
+	// the attempt only references its list, so the snapshot is queued for writing first
+	private static void writeRecord(JsonGenerator jg, String listId, Attempt att) throws IOException{
+		ListSnapshots.persist(att.getQuestionList(), att.getListVersion());
+		jg.writeStartObject();
+		jg.writeStringField("listId", listId);
+		jg.writeFieldName("attempt");
+		Attempt.Writer.write(jg, att);
+		jg.writeEndObject();
+	}
+
+	private static void writeRecord(JsonGenerator jg, String listId, AttemptRollup rollup) throws IOException{
+		jg.writeStartObject();
+		jg.writeStringField("listId", listId);
+		jg.writeFieldName("rollup");
+		AttemptRollup.Writer.write(jg, rollup);
+		jg.writeEndObject();
+	}
+
+	private static boolean parseRecord(JsonParser jp, String original, BiConsumer<String, Attempt> sink, BiConsumer<String, AttemptRollup> rollups) throws IOException{
+		if (jp.nextToken() != JsonToken.START_OBJECT){
+			return false;
+		}
+		String listId = null;
+		Attempt att = null;
+		AttemptRollup rollup = null;
+		String fieldName;
+		while (!jp.isClosed()){
+			if (jp.currentToken() == JsonToken.FIELD_NAME) {
+				fieldName = jp.currentName();
+				jp.nextToken();
+				switch (fieldName){
+					case "listId" -> {
+						listId = jp.getText();
+					}
+					case "attempt" -> {
+						att = Attempt.Parser.parse(jp, original);
+					}
+					case "rollup" -> {
+						rollup = AttemptRollup.Parser.parse(jp, original);
+					}
+					default -> {
+						jp.skipChildren();
+					}
+				}
+			} else if (jp.currentToken() == JsonToken.END_OBJECT){
+				jp.nextToken();
+				break;
+			} else {
+				jp.nextToken();
+			}
+		}
+		if (listId == null || (att == null && rollup == null)){
+			return false;
+		}
+		if (rollup != null){
+			rollups.accept(listId, rollup);
+		}
+		if (att != null){
+			sink.accept(listId, att);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,156 @@
+package com.linked.quizbot.utils;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.linked.quizbot.Constants;
+
+/**
+ * A pre-aggregated summary of the {@link Attempt}s a user made on one list.
+ * <p>
+ * Scores are kept as percentages of the list size at the time of the attempt, so attempts on
+ * different versions of a list can be summed. A {@link User} only keeps the last
+ * {@link Constants#ATTEMPTSKEPT} attempts of each list in full, older ones are folded into
+ * a rollup when the {@link AttemptJournal} is compacted.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see User#getRollup(String)
+ */
+public class AttemptRollup {
+	private int count = 0;
+	private double bestPercent = 0;
+	private double percentSum = 0;
+	private double lastPercent = 0;
+	private long lastStart = 0;
+	private long lastEnd = 0;
+	private long totalMillis = 0;
+
+	public static class Parser {
+		/**
+		 * Parses a rollup object, leaving the parser on the token following it.
+		 * @param jp the parser, on or before the opening of the object.
+		 * @param original the parsed text, for error messages.
+		 * @return the rollup.
+		 * @throws IOException if the input is not a rollup.
+		 */
+		public static AttemptRollup parse(JsonParser jp, String original) throws IOException{
+			if (jp.currentToken()!= JsonToken.START_OBJECT && jp.nextToken() != JsonToken.START_OBJECT){
+				throw new IOException(String.format(Constants.ERROR+"AttemptRollup.parse, input is not a json: (%s, %s) \n%s\n", jp.currentToken(), jp.currentName(), original));
+			}
+			AttemptRollup res = new AttemptRollup();
+			String fieldName;
+			jp.nextToken();
+			while (!jp.isClosed()){
+				if (jp.currentToken() == JsonToken.FIELD_NAME) {
+					fieldName = jp.currentName();
+					jp.nextToken();
+					switch (fieldName){
+						case "count" -> res.count = jp.getIntValue();
+						case "best" -> res.bestPercent = jp.getDoubleValue();
+						case "sum" -> res.percentSum = jp.getDoubleValue();
+						case "last" -> res.lastPercent = jp.getDoubleValue();
+						case "lastStart" -> res.lastStart = jp.getLongValue();
+						case "lastEnd" -> res.lastEnd = jp.getLongValue();
+						case "totalMillis" -> res.totalMillis = jp.getLongValue();
+						default -> jp.skipChildren();
+					}
+					jp.nextToken();
+				} else if (jp.currentToken() == JsonToken.END_OBJECT){
+					jp.nextToken();
+					break;
+				} else {
+					jp.nextToken();
+				}
+			}
+			return res;
+		}
+	}
+
+	public static class Writer {
+		/**
+		 * Writes the rollup as a json object.
+		 * @param jg the generator.
+		 * @param r the rollup.
+		 * @throws IOException if the generator fails.
+		 */
+		public static void write(JsonGenerator jg, AttemptRollup r) throws IOException{
+			jg.writeStartObject();
+			jg.writeNumberField("count", r.count);
+			jg.writeNumberField("best", r.bestPercent);
+			jg.writeNumberField("sum", r.percentSum);
+			jg.writeNumberField("last", r.lastPercent);
+			jg.writeNumberField("lastStart", r.lastStart);
+			jg.writeNumberField("lastEnd", r.lastEnd);
+			jg.writeNumberField("totalMillis", r.totalMillis);
+			jg.writeEndObject();
+		}
+	}
+
+	/**
+	 * @param att an attempt.
+	 * @return the score of {@code att} as a percentage of the size of its list.
+	 * @pure
+	 */
+	public static double percentOf(Attempt att){
+		int size = att.getQuestionList().size();
+		return size!=0?att.getScore()*100/size:0.00;
+	}
+
+	/**
+	 * Folds an attempt into the rollup.
+	 * @param att a finished attempt.
+	 * @return this rollup.
+	 * @requires att != null
+	 * @ensures getCount() == \old(getCount())+1
+	 */
+	public AttemptRollup add(Attempt att){
+		double percent = percentOf(att);
+		long start = att.getStart()!=null?att.getStart():0L;
+		long end = att.getEnd()!=null?att.getEnd():start;
+		bestPercent = count==0?percent:Math.max(bestPercent, percent);
+		percentSum += percent;
+		if (count==0 || start>=lastStart){
+			lastPercent = percent;
+			lastStart = start;
+			lastEnd = end;
+		}
+		totalMillis += Math.max(0L, end-start);
+		++count;
+		return this;
+	}
+
+	/**
+	 * @return an independent copy of this rollup.
+	 * @pure
+	 */
+	public AttemptRollup copy(){
+		AttemptRollup res = new AttemptRollup();
+		res.count = count;
+		res.bestPercent = bestPercent;
+		res.percentSum = percentSum;
+		res.lastPercent = lastPercent;
+		res.lastStart = lastStart;
+		res.lastEnd = lastEnd;
+		res.totalMillis = totalMillis;
+		return res;
+	}
+
+	public int getCount(){return count;}
+
+	public double getBestPercent(){return bestPercent;}
+
+	public double getMeanPercent(){return count!=0?percentSum/count:0.00;}
+
+	public double getLastPercent(){return lastPercent;}
+
+	public long getLastStart(){return lastStart;}
+
+	public long getLastEnd(){return lastEnd;}
+
+	public long getTotalMillis(){return totalMillis;}
+}
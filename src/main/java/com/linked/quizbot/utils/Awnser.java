@@ -1,14 +1,21 @@
 package com.linked.quizbot.utils;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Objects;
 import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.linked.quizbot.Constants;
 
+/**
+ * The options a user chose on one question and the time it took them.
+ * <p>An {@link Attempt} does not keep its answers as Awnsers, they are built from its bitmasks
+ * when read through {@link Attempt#getAwnsers()}.</p>
+ */
 public final class Awnser {
 	public final Long duration;
 	public final Set<Option> response;
@@ -54,6 +61,42 @@ public final class Awnser {
 		}
 	}
 	
+	/**
+	 * Awnser.Writer streams {@link Awnser} objects as JSON, in the format read by {@link Parser}.
+	 */
+	public static class Writer {
+		/**
+		 * Writes an answer as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param awnser the answer to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && awnser != null
+		 */
+		public static void write(JsonGenerator jg, Awnser awnser) throws IOException{
+			jg.writeStartObject();
+			jg.writeNumberField("duration", awnser.getDuration());
+			jg.writeArrayFieldStart("response");
+			for (Option opt : awnser.getResponses()){
+				Option.Writer.write(jg, opt);
+			}
+			jg.writeEndArray();
+			jg.writeEndObject();
+		}
+		
+		/**
+		 * @param awnser the answer to write.
+		 * @return the answer as compact JSON.
+		 * @throws IOException if writing fails.
+		 */
+		public static String toJson(Awnser awnser) throws IOException{
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = Constants.MAPPER.getFactory().createGenerator(out)){
+				write(jg, awnser);
+			}
+			return out.toString();
+		}
+	}
+	
 	public static Awnser of(final Long duration, Set<Option> response) {
 		return new Awnser(duration, response);
 	}
@@ -79,17 +122,20 @@ public final class Awnser {
 		Awnser p = (Awnser) o;
 		return getDuration().equals(p.getDuration()) && getResponses().equals(p.getResponses());
 	}
+	@Override
+	public int hashCode(){
+		return Objects.hash(getDuration(), getResponses());
+	}
 	public String toString(){
 		return toJson();
 	}
 	public String toJson(){
-		String s = "[";
-		Iterator<Option> iter  =getResponses().iterator();
-		while (iter.hasNext()){
-			s+= iter.next().toJson();
-			if (iter.hasNext()) s+= ",";
+		try {
+			return Writer.toJson(this);
+		} catch (IOException e){
+			System.err.print(Constants.ERROR);
+			e.printStackTrace();
 		}
-		s+= "]";
-		return String.format("{\"duration\":%d, \"response\":%s}", getDuration(), s);
+		return null;
 	}
 }
@@ -0,0 +1,680 @@
+package com.linked.quizbot.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.linked.quizbot.Constants;
+
+/**
+ * A snapshot of every user and list, plus a write-ahead log of what was flushed since, for fast restarts.
+ * <p>
+ * {@link #take()} writes the image of every user, with its lists and attempts, to a single Smile file under
+ * {@link Constants#CHECKPOINTPATH} and starts a new log generation. From then on {@link Constants#CHECKPOINT}
+ * is set and every object written by {@link Persistence}, every deleted list and every finished attempt is
+ * appended to the log as a full image, framed by its length and a CRC32.
+ * </p>
+ * <p>
+ * {@link #restore()} loads the snapshot, replays the log generations it does not cover and registers every
+ * user at once, instead of parsing each user's files. Replaying an image twice is harmless, so a crash while
+ * taking a snapshot only replays more of the log, and a record torn by a crash ends the replay.
+ * Once a snapshot exists, the next one is folded from it and the log without loading any user, and one is
+ * taken in the background whenever the log grows past {@link Constants#CHECKPOINTLOGBYTES}.
+ * </p>
+ * <p>The per-user files stay the reference, a user loaded later or evicted is read from and written to them.</p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see Persistence
+ */
+public class Checkpoint {
+	public static final String SNAPSHOTNAME = "registry.snapshot";
+	public static final String LOGPREFIX = "wal-";
+	public static final String LOGEXTENSION = ".log";
+	private static final String OP_USER = "user", OP_LIST = "list", OP_DELETELIST = "deleteList", OP_ATTEMPT = "attempt";
+
+	private static final Object logLock = new Object();
+	// guarded by logLock
+	private static FileChannel log;
+	private static long logGeneration = -1;
+	private static String logDirectory;
+	private static long logBytes = 0;
+	private static final AtomicBoolean snapshotScheduled = new AtomicBoolean(false);
+	private static final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "quizbot-checkpoint");
+		t.setDaemon(true);
+		return t;
+	});
+
+	@FunctionalInterface
+	private interface Body {
+		void write(JsonGenerator jg) throws IOException;
+	}
+
+	// what the snapshot and the log know of one user
+	private static final class Image {
+		User.Builder user;
+		final Map<String, QuestionList> lists = new LinkedHashMap<>();
+		final Map<String, List<Attempt>> attemptsByListId = new HashMap<>();
+		final Map<String, AttemptRollup> foldedByListId = new HashMap<>();
+
+		Image(String userId){
+			user = new User.Builder().id(userId);
+		}
+
+		User build(){
+			User.Builder b = user;
+			b.addAll(new ArrayList<>(lists.values()));
+			return User.restore(b, attemptsByListId, foldedByListId);
+		}
+	}
+
+	/**
+	 * @return the path of the snapshot file.
+	 */
+	public static String pathToSnapshot(){
+		return Constants.CHECKPOINTPATH+Constants.SEPARATOR+SNAPSHOTNAME;
+	}
+
+	private static Path pathToLog(long generation){
+		return Paths.get(Constants.CHECKPOINTPATH, String.format("%s%016d%s", LOGPREFIX, generation, LOGEXTENSION));
+	}
+
+	/**
+	 * Logs the current preferences and tags of a user, once they are written to its file.
+	 * @param user the flushed user.
+	 */
+	public static void logUser(User user){
+		if (!Constants.CHECKPOINT) return;
+		log(jg -> {
+			jg.writeStringField("op", OP_USER);
+			jg.writeStringField("userId", user.getId());
+			jg.writeFieldName("user");
+			User.Writer.write(jg, user);
+		}, true);
+	}
+
+	/**
+	 * Logs the current content of a list, once it is written to its file.
+	 * @param l the flushed list.
+	 */
+	public static void logList(QuestionList l){
+		if (!Constants.CHECKPOINT) return;
+		log(jg -> {
+			jg.writeStringField("op", OP_LIST);
+			jg.writeFieldName("list");
+			QuestionList.Writer.write(jg, l);
+		}, true);
+	}
+
+	/**
+	 * Logs the deletion of a list.
+	 * @param ownerId the owner of the list.
+	 * @param listId the id of the list.
+	 */
+	public static void logDeleteList(String ownerId, String listId){
+		if (!Constants.CHECKPOINT) return;
+		log(jg -> {
+			jg.writeStringField("op", OP_DELETELIST);
+			jg.writeStringField("ownerId", ownerId);
+			jg.writeStringField("listId", listId);
+		}, true);
+	}
+
+	/**
+	 * Logs a finished attempt, with the same durability as its {@link AttemptJournal} line.
+	 * @param userId the user who made the attempt.
+	 * @param listId the id of the list that was played.
+	 * @param att the attempt.
+	 */
+	public static void logAttempt(String userId, String listId, Attempt att){
+		if (!Constants.CHECKPOINT) return;
+		log(jg -> {
+			jg.writeStringField("op", OP_ATTEMPT);
+			jg.writeStringField("userId", userId);
+			jg.writeStringField("listId", listId);
+			jg.writeFieldName("attempt");
+			Attempt.Writer.write(jg, att);
+		}, false);
+	}
+
+	private static void log(Body body, boolean sync){
+		ByteBuffer record;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (JsonGenerator jg = StorageCodec.SMILE.createGenerator(out)){
+				jg.writeStartObject();
+				body.write(jg);
+				jg.writeEndObject();
+			}
+			record = frame(out.toByteArray());
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while serializing a checkpoint log record.");
+			e.printStackTrace();
+			return;
+		}
+		FileChannel written;
+		long size;
+		synchronized (logLock){
+			try {
+				if (log == null || !Constants.CHECKPOINTPATH.equals(logDirectory)){
+					openLog(currentGeneration());
+				}
+				while (record.hasRemaining()){
+					log.write(record);
+				}
+				written = log;
+				size = logBytes += record.limit();
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while appending to the checkpoint log."+Constants.CHECKPOINTPATH);
+				e.printStackTrace();
+				return;
+			}
+		}
+		if (sync){
+			DurableWrites.sync(written);
+		}
+		if (size > Constants.CHECKPOINTLOGBYTES && snapshotScheduled.compareAndSet(false, true)){
+			snapshotter.execute(() -> {
+				try {
+					take();
+				} finally {
+					snapshotScheduled.set(false);
+				}
+			});
+		}
+	}
+
+	// guarded by logLock
+	private static void openLog(long generation) throws IOException{
+		if (log != null){
+			log.close();
+		}
+		generation = Math.max(generation, 0);
+		Files.createDirectories(Paths.get(Constants.CHECKPOINTPATH));
+		log = FileChannel.open(pathToLog(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		logGeneration = generation;
+		logDirectory = Constants.CHECKPOINTPATH;
+		logBytes = log.size();
+	}
+
+	// guarded by logLock
+	private static long currentGeneration(){
+		long g = Constants.CHECKPOINTPATH.equals(logDirectory)?logGeneration:-1;
+		return Math.max(g, lastGeneration());
+	}
+
+	private static ByteBuffer frame(byte[] payload){
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer buf = ByteBuffer.allocate(8+payload.length);
+		buf.putInt(payload.length);
+		buf.putInt((int) crc.getValue());
+		buf.put(payload);
+		return buf.flip();
+	}
+
+	/**
+	 * Closes the log, it is reopened on the next record.
+	 */
+	public static void close(){
+		synchronized (logLock){
+			try {
+				if (log != null){
+					log.close();
+				}
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while closing the checkpoint log.");
+				e.printStackTrace();
+			}
+			log = null;
+			logGeneration = -1;
+			logDirectory = null;
+			logBytes = 0;
+		}
+	}
+
+	/**
+	 * Writes a new snapshot and drops the log it makes useless, then keeps logging from a new generation.
+	 * <p>The first snapshot loads every user found on disk, the next ones are folded from the previous
+	 * snapshot and the log without loading any user.</p>
+	 * @return the size of the snapshot in bytes, or {@code -1} if it could not be written.
+	 * @ensures Constants.CHECKPOINT
+	 */
+	public static synchronized long take(){
+		long start = System.nanoTime();
+		Persistence.drain();
+		Constants.CHECKPOINT = true;
+		long generation;
+		synchronized (logLock){
+			try {
+				// everything flushed from now on goes to a generation the new snapshot does not cover
+				generation = currentGeneration()+1;
+				openLog(generation);
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while starting a checkpoint log."+Constants.CHECKPOINTPATH);
+				e.printStackTrace();
+				return -1;
+			}
+		}
+		List<User> users = new ArrayList<>();
+		File previous = new File(pathToSnapshot());
+		if (previous.exists()){
+			Map<String, Image> images = load(generation);
+			if (images == null){
+				return -1;
+			}
+			for (Image img : images.values()){
+				users.add(img.build());
+			}
+		} else {
+			for (String userId : userIdsOnDisk()){
+				User u = Users.get(userId);
+				if (u != null) users.add(u);
+			}
+		}
+		final long covered = generation;
+		int[] nbLists = {0};
+		try {
+			DurableWrites.write(pathToSnapshot(), out -> {
+				try (JsonGenerator jg = StorageCodec.SMILE.createGenerator(out)){
+					jg.writeStartObject();
+					jg.writeNumberField("logGeneration", covered);
+					jg.writeNumberField("takenMillis", System.currentTimeMillis());
+					jg.writeArrayFieldStart("users");
+					for (User u : users){
+						writeImage(jg, u);
+						nbLists[0] += u.getLists().size();
+					}
+					jg.writeEndArray();
+					jg.writeEndObject();
+				}
+			});
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while writing the snapshot."+pathToSnapshot());
+			e.printStackTrace();
+			return -1;
+		}
+		for (long g : generations()){
+			if (g < generation){
+				try {
+					Files.deleteIfExists(pathToLog(g));
+				} catch (IOException e){
+					System.err.println(Constants.ERROR + "An error occurred while deleting a checkpoint log."+pathToLog(g));
+					e.printStackTrace();
+				}
+			}
+		}
+		long size = new File(pathToSnapshot()).length();
+		System.out.println(String.format(Constants.INFO + "Snapshot of %d users and %d lists written, %d bytes, in %.2f ms",
+			users.size(), nbLists[0], size, (System.nanoTime() - start) / 1000000.00));
+		return size;
+	}
+
+	/**
+	 * Registers the users of the snapshot, updated by the log, in place of reading their files.
+	 * <p>At most {@link Constants#USERCACHESIZE} users are registered, those changed last in the log first,
+	 * the others stay on disk and are loaded on first access. Does nothing if no snapshot was ever taken,
+	 * otherwise {@link Constants#CHECKPOINT} is set so the log keeps going.</p>
+	 * @return the number of restored users.
+	 */
+	public static int restore(){
+		long start = System.nanoTime();
+		if (!new File(pathToSnapshot()).exists()){
+			return 0;
+		}
+		Map<String, Image> images = load(Long.MAX_VALUE);
+		if (images == null){
+			return 0;
+		}
+		int nbUsers = 0, nbLists = 0;
+		// the users changed last come first, the others are read from their files on first access
+		for (Image img : new ArrayList<>(images.values()).reversed()){
+			if (nbUsers >= Constants.USERCACHESIZE) break;
+			Users.addRestoredUser(img.build());
+			nbLists += img.lists.size();
+			++nbUsers;
+		}
+		Constants.CHECKPOINT = true;
+		System.out.println(String.format(Constants.INFO + "Restored %d of %d users and %d lists from the snapshot in %.2f ms",
+			nbUsers, images.size(), nbLists, (System.nanoTime() - start) / 1000000.00));
+		return nbUsers;
+	}
+
+	// reads the snapshot then the log generations from the one it covers up to, excluding, the given one
+	private static Map<String, Image> load(long untilGeneration){
+		Map<String, Image> images = new LinkedHashMap<>();
+		long from;
+		String path = pathToSnapshot();
+		try (JsonParser jp = StorageCodec.SMILE.createParser(new File(path))){
+			from = readSnapshot(jp, path, images);
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while reading the snapshot."+path);
+			e.printStackTrace();
+			return null;
+		}
+		int records = 0;
+		for (long g : generations()){
+			if (g >= from && g < untilGeneration){
+				records += replay(g, images);
+			}
+		}
+		if (records > 0){
+			System.out.println(String.format(Constants.INFO + "Replayed %d checkpoint log records", records));
+		}
+		return images;
+	}
+
+	private static long readSnapshot(JsonParser jp, String original, Map<String, Image> images) throws IOException{
+		long generation = 0;
+		if (jp.nextToken() != JsonToken.START_OBJECT){
+			throw new IOException("Not a snapshot: "+original);
+		}
+		while (jp.nextToken() == JsonToken.FIELD_NAME){
+			String fieldName = jp.currentName();
+			jp.nextToken();
+			switch (fieldName){
+				case "logGeneration" -> {
+					generation = jp.getLongValue();
+				}
+				case "users" -> {
+					jp.nextToken();
+					while (jp.currentToken() == JsonToken.START_OBJECT){
+						readImage(jp, original, images);
+					}
+				}
+				default -> {
+					jp.skipChildren();
+				}
+			}
+		}
+		return generation;
+	}
+
+	private static void writeImage(JsonGenerator jg, User u) throws IOException{
+		jg.writeStartObject();
+		jg.writeStringField("userId", u.getId());
+		jg.writeFieldName("user");
+		User.Writer.write(jg, u);
+		jg.writeArrayFieldStart("lists");
+		for (QuestionList l : new ArrayList<>(u.getLists().values())){
+			QuestionList.Writer.write(jg, l);
+		}
+		jg.writeEndArray();
+		jg.writeObjectFieldStart("attemptsByListId");
+		for (Map.Entry<String, List<Attempt>> e : u.getAttemptsByListId().entrySet()){
+			jg.writeArrayFieldStart(e.getKey());
+			for (Attempt att : e.getValue()){
+				if (att == null) continue;
+				// the attempt only references its list version
+				ListSnapshots.persist(att.getQuestionList(), att.getListVersion());
+				Attempt.Writer.write(jg, att);
+			}
+			jg.writeEndArray();
+		}
+		jg.writeEndObject();
+		jg.writeObjectFieldStart("rollupsByListId");
+		for (Map.Entry<String, AttemptRollup> e : u.getFoldedRollups().entrySet()){
+			jg.writeFieldName(e.getKey());
+			AttemptRollup.Writer.write(jg, e.getValue());
+		}
+		jg.writeEndObject();
+		jg.writeEndObject();
+	}
+
+	// leaves the parser on the token following the image
+	private static void readImage(JsonParser jp, String original, Map<String, Image> images) throws IOException{
+		String userId = null;
+		User.Builder user = null;
+		List<QuestionList> lists = new ArrayList<>();
+		Map<String, List<Attempt>> attempts = Map.of();
+		Map<String, AttemptRollup> rollups = new HashMap<>();
+		jp.nextToken();
+		while (jp.currentToken() == JsonToken.FIELD_NAME){
+			String fieldName = jp.currentName();
+			jp.nextToken();
+			switch (fieldName){
+				case "userId" -> {
+					userId = jp.getText();
+					jp.nextToken();
+				}
+				case "user" -> {
+					user = User.Parser.parse(jp, original);
+				}
+				case "lists" -> {
+					jp.nextToken();
+					while (jp.currentToken() == JsonToken.START_OBJECT){
+						lists.add(QuestionList.Parser.parse(jp, original).build());
+					}
+					jp.nextToken();
+				}
+				case "attemptsByListId" -> {
+					attempts = User.Parser.parseAttempts(jp, original);
+				}
+				case "rollupsByListId" -> {
+					jp.nextToken();
+					while (jp.currentToken() == JsonToken.FIELD_NAME){
+						String listId = jp.currentName();
+						jp.nextToken();
+						rollups.put(listId, AttemptRollup.Parser.parse(jp, original));
+					}
+					jp.nextToken();
+				}
+				default -> {
+					jp.skipChildren();
+					jp.nextToken();
+				}
+			}
+		}
+		jp.nextToken();
+		if (userId == null){
+			return;
+		}
+		Image img = images.computeIfAbsent(userId, Image::new);
+		if (user != null){
+			img.user = user.id(userId);
+		}
+		for (QuestionList l : lists){
+			img.lists.put(l.getId(), l);
+		}
+		for (Map.Entry<String, List<Attempt>> e : attempts.entrySet()){
+			List<Attempt> kept = new ArrayList<>();
+			for (Attempt att : e.getValue()){
+				if (att != null) kept.add(att);
+			}
+			img.attemptsByListId.put(e.getKey(), kept);
+		}
+		img.foldedByListId.putAll(rollups);
+	}
+
+	// applies the readable records of a log generation, a torn record ends it
+	private static int replay(long generation, Map<String, Image> images){
+		Path path = pathToLog(generation);
+		int records = 0;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			long offset = 0, size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(8);
+			while (offset+8 <= size){
+				header.clear();
+				channel.read(header, offset);
+				int length = header.getInt(0);
+				int crcValue = header.getInt(4);
+				if (length < 0 || offset+8+length > size){
+					break;
+				}
+				ByteBuffer payload = ByteBuffer.allocate(length);
+				while (payload.hasRemaining() && channel.read(payload, offset+8+payload.position()) >= 0);
+				CRC32 crc = new CRC32();
+				crc.update(payload.array());
+				if ((int) crc.getValue() != crcValue){
+					break;
+				}
+				try (JsonParser jp = StorageCodec.SMILE.getFactory().createParser(payload.array())){
+					applyRecord(jp, path.toString(), images);
+				}
+				++records;
+				offset += 8+length;
+			}
+			if (offset < size){
+				// cut off so records appended later stay readable
+				System.err.println(String.format(Constants.ERROR + "Truncated %d unreadable bytes at the end of %s", size-offset, path));
+				try (FileChannel w = FileChannel.open(path, StandardOpenOption.WRITE)){
+					w.truncate(offset);
+				}
+			}
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while replaying the checkpoint log."+path);
+			e.printStackTrace();
+		}
+		return records;
+	}
+
+	private static void applyRecord(JsonParser jp, String original, Map<String, Image> images) throws IOException{
+		String op = null, userId = null, ownerId = null, listId = null;
+		User.Builder user = null;
+		QuestionList list = null;
+		Attempt att = null;
+		jp.nextToken();
+		jp.nextToken();
+		while (jp.currentToken() == JsonToken.FIELD_NAME){
+			String fieldName = jp.currentName();
+			jp.nextToken();
+			switch (fieldName){
+				case "op" -> {
+					op = jp.getText();
+					jp.nextToken();
+				}
+				case "userId" -> {
+					userId = jp.getText();
+					jp.nextToken();
+				}
+				case "ownerId" -> {
+					ownerId = jp.getText();
+					jp.nextToken();
+				}
+				case "listId" -> {
+					listId = jp.getText();
+					jp.nextToken();
+				}
+				case "user" -> {
+					user = User.Parser.parse(jp, original);
+				}
+				case "list" -> {
+					list = QuestionList.Parser.parse(jp, original).build();
+				}
+				case "attempt" -> {
+					att = Attempt.Parser.parse(jp, original);
+				}
+				default -> {
+					jp.skipChildren();
+					jp.nextToken();
+				}
+			}
+		}
+		if (op == null){
+			return;
+		}
+		switch (op){
+			case OP_USER -> {
+				if (userId != null && user != null){
+					imageOf(images, userId).user = user.id(userId);
+				}
+			}
+			case OP_LIST -> {
+				if (list != null && list.getOwnerId() != null){
+					// a list only moves between owners through a delete and a new list
+					imageOf(images, list.getOwnerId()).lists.put(list.getId(), list);
+				}
+			}
+			case OP_DELETELIST -> {
+				Image img = ownerId==null?null:images.get(ownerId);
+				if (img != null) img.lists.remove(listId);
+			}
+			case OP_ATTEMPT -> {
+				if (userId != null && listId != null && att != null){
+					List<Attempt> attempts = imageOf(images, userId).attemptsByListId.computeIfAbsent(listId, k -> new ArrayList<>());
+					for (Attempt a : attempts){
+						if (a.getStart().equals(att.getStart()) && a.getEnd().equals(att.getEnd())) return;
+					}
+					attempts.addFirst(att);
+				}
+			}
+			default -> {}
+		}
+	}
+
+	// moved to the end of the map, which is then ordered by last change
+	private static Image imageOf(Map<String, Image> images, String userId){
+		Image img = images.remove(userId);
+		if (img == null){
+			img = new Image(userId);
+		}
+		images.put(userId, img);
+		return img;
+	}
+
+	private static List<Long> generations(){
+		List<Long> res = new ArrayList<>();
+		if (!new File(Constants.CHECKPOINTPATH).isDirectory()){
+			return res;
+		}
+		try (Stream<Path> files = Files.list(Paths.get(Constants.CHECKPOINTPATH))){
+			files.map(p -> p.getFileName().toString())
+				.filter(n -> n.startsWith(LOGPREFIX) && n.endsWith(LOGEXTENSION))
+				.forEach(n -> res.add(Long.parseLong(n.substring(LOGPREFIX.length(), n.length()-LOGEXTENSION.length()))));
+		} catch (IOException | NumberFormatException e){
+			System.err.println(Constants.ERROR + "An error occurred while listing the checkpoint logs."+Constants.CHECKPOINTPATH);
+			e.printStackTrace();
+		}
+		res.sort(null);
+		return res;
+	}
+
+	private static long lastGeneration(){
+		List<Long> g = generations();
+		return g.isEmpty()?-1:g.getLast();
+	}
+
+	// every user with a folder of data or of lists, or with stored lists
+	private static Set<String> userIdsOnDisk(){
+		Set<String> res = new TreeSet<>();
+		for (User u : Users.getLoadedUsers()){
+			res.add(u.getId());
+		}
+		Set<String> skipped = new HashSet<>(List.of(ListSnapshots.FOLDERNAME, ListStore.FOLDERNAME));
+		for (String root : List.of(Constants.USERDATAPATH, Constants.LISTSPATH)){
+			File[] dirs = new File(root).listFiles(File::isDirectory);
+			if (dirs == null) continue;
+			for (File d : dirs){
+				if (!skipped.contains(d.getName())) res.add(d.getName());
+			}
+		}
+		if (Constants.LISTSTORE){
+			res.addAll(ListStore.ownerIdsByListId().values());
+		}
+		return res;
+	}
+}
@@ -81,13 +81,11 @@ public class CollectionManager {
 		}
 		
 		return list -> {
-			List<Attempt> attempts = user.getAttempts(list.getId());
-			Attempt lastAtt = attempts.isEmpty()?null:attempts.getFirst();
 			long listValue = switch (fieldPart) {
 				case "size" -> list.size();
 				case "date" -> list.getTimeCreatedMillis();
-				case "start" -> lastAtt==null?0L:lastAtt.getStart();
-				case "end" -> lastAtt==null?0L:lastAtt.getEnd();
+				case "start" -> user.getListStats(list.getId()).getLastStart();
+				case "end" -> user.getListStats(list.getId()).getLastEnd();
 				default -> -1;
 			};
 			
@@ -136,6 +134,19 @@ public class CollectionManager {
 						 .collect(Collectors.toList());
 	}
 	
+	// lists that were never played come first, the others are compared by their precomputed stats
+	private static Comparator<QuestionList> byStats(User user, Comparator<ListStats> comp) {
+		return (e, f) -> {
+			ListStats a, b;
+			a = user.getListStats(e.getId());
+			b = user.getListStats(f.getId());
+			if (!a.isPlayed() || !b.isPlayed()){
+				return Boolean.compare(a.isPlayed(), b.isPlayed());
+			}
+			return comp.compare(a, b);
+		};
+	}
+	
 	public static Comparator<QuestionList> parseComparator(User user, String sortToken) {
 		String field = sortToken.toLowerCase().replaceAll("o=+", "");
 		switch (field) {
@@ -148,39 +159,9 @@ public class CollectionManager {
 			case "size":
 				return QuestionList.comparatorBySize();
 			case "start":
-				return (e, f) -> {
-						List<Attempt> a, b;
-						Long u, v;
-						a = user.getAttempts(e.getId());
-						b = user.getAttempts(f.getId());
-						if (a.isEmpty() || b.isEmpty()){
-							if (a.isEmpty()){
-								if (b.isEmpty()) return 0;
-								return -1;
-							}
-							return 1;
-						}
-						u = a.getFirst().getStart();
-						v = b.getFirst().getStart();
-						return Long.compare(u, v);
-					};
+				return byStats(user, Comparator.comparingLong(ListStats::getLastStart));
 			case "score":
-				return (e, f) -> {
-						List<Attempt> a, b;
-						Double u, v;
-						a = user.getAttempts(e.getId());
-						b = user.getAttempts(f.getId());
-						if (a.isEmpty() || b.isEmpty()){
-							if (a.isEmpty()){
-								if (b.isEmpty()) return 0;
-								return -1;
-							}
-							return 1;
-						}
-						u = a.getFirst().getScore();
-						v = b.getFirst().getScore();
-						return Double.compare(u, v);
-					};
+				return byStats(user, Comparator.comparingDouble(ListStats::getLastPercent));
 			default:
 				return QuestionList.comparatorByDate();
 		}
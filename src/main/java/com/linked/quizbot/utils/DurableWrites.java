@@ -0,0 +1,359 @@
+package com.linked.quizbot.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.linked.quizbot.Constants;
+
+/**
+ * Crash-safe file writes shared by every export.
+ * <p>
+ * A file is never overwritten in place: its content is written to a sibling {@code .tmp} file
+ * of its own, so concurrent writes of one target never share it, forced to disk, then renamed over the target and the directory is forced, so after a crash
+ * the target holds either its old or its new content, never a truncated one.
+ * </p>
+ * <p>
+ * Writes made inside {@link #batch(Runnable)} are only written to their temporary files, the
+ * batch then forces all of them together, renames them, and forces each directory once.
+ * A flush of many files pays for one sync cycle instead of a full one per file.
+ * Work handed to other threads through {@link #inBatch(Runnable)} joins the caller's batch.
+ * A write that must know when its file is in place passes an {@link Outcome}, told once the
+ * batch renamed the file or failed to.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see Persistence#flush()
+ */
+public class DurableWrites {
+	public static final String TMPEXTENSION = ".tmp";
+
+	/**
+	 * Writes the content of a file.
+	 */
+	@FunctionalInterface
+	public interface Body {
+		/**
+		 * @param out the stream to write to, closed by the caller.
+		 * @throws IOException if the content cannot be written.
+		 */
+		void write(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Told whether a write that returned normally ended up in place.
+	 */
+	@FunctionalInterface
+	public interface Outcome {
+		/**
+		 * @param replaced {@code true} once the target durably holds the new content,
+		 * {@code false} if the target was left with its old content.
+		 */
+		void done(boolean replaced);
+	}
+
+	// guarded by itself, a batch may be shared by several threads
+	private static final class Batch {
+		// target -> temporary file, a target written twice keeps its last content
+		final Map<Path, Path> renames = new LinkedHashMap<>();
+		// target -> the outcomes of every write of it in this batch
+		final Map<Path, List<Outcome>> outcomes = new LinkedHashMap<>();
+		final Set<Path> deletions = new LinkedHashSet<>();
+		final Set<FileChannel> channels = new LinkedHashSet<>();
+		long bytes = 0;
+	}
+
+	private static final ThreadLocal<Batch> current = new ThreadLocal<>();
+
+	/**
+	 * Replaces the content of a file atomically, creating its directory if needed.
+	 * <p>Inside a batch the file is only replaced once the batch ends.</p>
+	 * @param destFilePath the file to write.
+	 * @param body writes the new content.
+	 * @throws IOException if the content cannot be written, the target is then left untouched.
+	 */
+	public static void write(String destFilePath, Body body) throws IOException{
+		write(destFilePath, body, null);
+	}
+
+	/**
+	 * Replaces the content of a file atomically, creating its directory if needed.
+	 * <p>Inside a batch the file is only replaced once the batch ends, {@code outcome} is then told
+	 * whether the rename succeeded. Outside of one it is told right away.</p>
+	 * @param destFilePath the file to write.
+	 * @param body writes the new content.
+	 * @param outcome told whether the file was replaced, only if this method returns normally, may be {@code null}.
+	 * @throws IOException if the content cannot be written, the target is then left untouched.
+	 */
+	public static void write(String destFilePath, Body body, Outcome outcome) throws IOException{
+		Path dest = Paths.get(destFilePath).toAbsolutePath();
+		Files.createDirectories(dest.getParent());
+		Path tmp = createTemporary(dest);
+		Batch batch = current.get();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)){
+			// the channel must outlive the body, which may close its stream
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel)){
+				@Override
+				public void close() throws IOException{
+					flush();
+				}
+			};
+			body.write(out);
+			out.flush();
+			if (batch == null){
+				channel.force(true);
+			} else {
+				synchronized (batch){
+					batch.bytes += channel.size();
+				}
+			}
+		} catch (IOException | RuntimeException e){
+			if (batch != null){
+				Path previous;
+				List<Outcome> dropped;
+				synchronized (batch){
+					previous = batch.renames.remove(dest);
+					dropped = batch.outcomes.remove(dest);
+				}
+				if (previous != null) Files.deleteIfExists(previous);
+				tell(dropped, false);
+			}
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		if (batch != null){
+			Path previous;
+			synchronized (batch){
+				batch.deletions.remove(dest);
+				previous = batch.renames.put(dest, tmp);
+				if (outcome != null){
+					batch.outcomes.computeIfAbsent(dest, k -> new ArrayList<>()).add(outcome);
+				}
+			}
+			// the target was already written in this batch, only the last content is kept
+			if (previous != null) Files.deleteIfExists(previous);
+			return;
+		}
+		Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(dest.getParent());
+		if (outcome != null) outcome.done(true);
+	}
+
+	// created with the default permissions, or those of the target if it exists, unlike Files.createTempFile which restricts them
+	private static Path createTemporary(Path dest) throws IOException{
+		while (true){
+			Path tmp = dest.resolveSibling(dest.getFileName()+"."+Long.toHexString(ThreadLocalRandom.current().nextLong())+TMPEXTENSION);
+			try {
+				Files.createFile(tmp);
+			} catch (FileAlreadyExistsException e){
+				continue;
+			}
+			try {
+				if (Files.isRegularFile(dest) && Files.getFileStore(dest).supportsFileAttributeView(PosixFileAttributeView.class)){
+					Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(dest));
+				}
+			} catch (IOException e){
+				Files.deleteIfExists(tmp);
+				throw e;
+			}
+			return tmp;
+		}
+	}
+
+	private static void tell(List<Outcome> outcomes, boolean replaced){
+		if (outcomes == null) return;
+		for (Outcome o : outcomes){
+			o.done(replaced);
+		}
+	}
+
+	/**
+	 * Deletes a file, after the files written in the same batch are in place.
+	 * @param filePath the file to delete.
+	 */
+	public static void delete(String filePath){
+		Path p = Paths.get(filePath).toAbsolutePath();
+		Batch batch = current.get();
+		if (batch != null){
+			synchronized (batch){
+				if (!batch.renames.containsKey(p)){
+					batch.deletions.add(p);
+				}
+			}
+			return;
+		}
+		try {
+			Files.deleteIfExists(p);
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while deleting "+p);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forces a channel written in place, such as a {@link ListStore} segment, once per batch.
+	 * @param channel the channel to force.
+	 */
+	public static void sync(FileChannel channel){
+		Batch batch = current.get();
+		if (batch != null){
+			synchronized (batch){
+				batch.channels.add(channel);
+			}
+			return;
+		}
+		force(channel);
+	}
+
+	/**
+	 * @return {@code true} if the calling thread is inside {@link #batch(Runnable)}.
+	 * @pure
+	 */
+	public static boolean inBatch(){
+		return current.get() != null;
+	}
+
+	/**
+	 * Wraps a task so that, run on any thread, its writes join the batch of the calling thread.
+	 * <p>The task must complete before that batch ends.</p>
+	 * @param task the writes to make on another thread.
+	 * @return the wrapped task, or {@code task} itself outside of a batch.
+	 */
+	public static Runnable inBatch(Runnable task){
+		Batch batch = current.get();
+		if (batch == null){
+			return task;
+		}
+		return () -> {
+			Batch previous = current.get();
+			current.set(batch);
+			try {
+				task.run();
+			} finally {
+				if (previous == null){
+					current.remove();
+				} else {
+					current.set(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Runs {@code task} and makes every write it did durable in one sync cycle.
+	 * <p>A nested batch is part of the outer one.</p>
+	 * @param task the writes to group.
+	 * @return the number of bytes written by the batch, {@code 0} for a nested one.
+	 */
+	public static long batch(Runnable task){
+		if (current.get() != null){
+			task.run();
+			return 0;
+		}
+		Batch batch = new Batch();
+		current.set(batch);
+		try {
+			task.run();
+		} finally {
+			current.remove();
+			commit(batch);
+		}
+		return batch.bytes;
+	}
+
+	/**
+	 * Forces and renames the files of a batch, then tells the outcome of every write.
+	 * @return the targets left with their old content.
+	 */
+	private static Set<Path> commit(Batch batch){
+		// the files are forced concurrently so the device can merge the flushes
+		Set<Path> unsynced = ConcurrentHashMap.newKeySet();
+		List<Path> tmps = new ArrayList<>(batch.renames.values());
+		tmps.parallelStream().forEach(tmp -> {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)){
+				channel.force(true);
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while syncing "+tmp);
+				e.printStackTrace();
+				unsynced.add(tmp);
+			}
+		});
+		batch.channels.parallelStream().forEach(DurableWrites::force);
+		Set<Path> failed = new LinkedHashSet<>();
+		Set<Path> directories = new LinkedHashSet<>();
+		for (Map.Entry<Path, Path> e : batch.renames.entrySet()){
+			try {
+				// a file that may not be on disk must not replace one that is
+				if (unsynced.contains(e.getValue())){
+					throw new IOException("not synced");
+				}
+				Files.move(e.getValue(), e.getKey(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				directories.add(e.getKey().getParent());
+			} catch (IOException ex){
+				System.err.println(Constants.ERROR + "An error occurred while replacing "+e.getKey());
+				ex.printStackTrace();
+				failed.add(e.getKey());
+				try {
+					Files.deleteIfExists(e.getValue());
+				} catch (IOException ignored){
+					// left behind, it is never read
+				}
+			}
+		}
+		for (Path p : batch.deletions){
+			try {
+				if (Files.deleteIfExists(p)){
+					directories.add(p.getParent());
+				}
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while deleting "+p);
+				e.printStackTrace();
+			}
+		}
+		directories.parallelStream().forEach(DurableWrites::syncDirectory);
+		for (Map.Entry<Path, List<Outcome>> e : batch.outcomes.entrySet()){
+			tell(e.getValue(), !failed.contains(e.getKey()));
+		}
+		return failed;
+	}
+
+	private static void force(FileChannel channel){
+		try {
+			channel.force(true);
+		} catch (ClosedChannelException e){
+			// a compacted segment, its records were forced with the new one
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while syncing a file.");
+			e.printStackTrace();
+		}
+	}
+
+	// makes the renames in the directory durable, not supported on every platform
+	private static void syncDirectory(Path dir){
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)){
+			channel.force(true);
+		} catch (IOException e){
+			// directories cannot be opened on Windows, the rename is then as durable as it gets
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.linked.quizbot.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A weak canonicalizing cache, objects with equal keys are replaced by one shared instance.
+ * <p>
+ * The shared instance is only weakly held, once no list, attempt or answer references it
+ * anymore it is collected and its entry is dropped on a later call. The key must describe
+ * the whole content of the object, and the object must not be modified once shared.
+ * </p>
+ *
+ * @param <K> the content key, with value-based {@code equals} and {@code hashCode}.
+ * @param <T> the type of the shared objects.
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see Option#intern(Option)
+ * @see Question#intern(Question)
+ * @see ListSnapshots
+ */
+public class Interner<K, T> {
+	private final Map<K, Entry<K, T>> instances = new ConcurrentHashMap<>();
+	private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+	private static final class Entry<K, T> extends WeakReference<T> {
+		private final K key;
+
+		private Entry(K key, T value, ReferenceQueue<T> queue){
+			super(value, queue);
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Returns the shared instance for {@code key}, {@code value} becomes it if there is none.
+	 * @param key the content of {@code value}.
+	 * @param value a candidate instance.
+	 * @return the shared instance, {@code value} itself if it was the first one.
+	 * @requires key != null && value != null
+	 */
+	public T intern(K key, T value){
+		expunge();
+		while (true){
+			Entry<K, T> e = instances.get(key);
+			if (e != null){
+				T shared = e.get();
+				if (shared != null){
+					return shared;
+				}
+			}
+			Entry<K, T> fresh = new Entry<>(key, value, collected);
+			// another thread may have interned the same content meanwhile
+			if (e == null ? instances.putIfAbsent(key, fresh) == null : instances.replace(key, e, fresh)){
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * @param key the content looked up.
+	 * @return the shared instance for {@code key}, {@code null} if there is none or it was collected.
+	 * @pure
+	 */
+	public T get(K key){
+		expunge();
+		Entry<K, T> e = instances.get(key);
+		return e!=null?e.get():null;
+	}
+
+	/**
+	 * @return the number of shared instances still held.
+	 */
+	public int size(){
+		expunge();
+		return instances.size();
+	}
+
+	/**
+	 * Forgets every shared instance, the instances already handed out stay valid.
+	 */
+	public void clear(){
+		instances.clear();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void expunge(){
+		Reference<? extends T> r;
+		while ((r = collected.poll()) != null){
+			Entry<K, T> e = (Entry<K, T>) r;
+			instances.remove(e.key, e);
+		}
+	}
+}
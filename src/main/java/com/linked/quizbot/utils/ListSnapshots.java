@@ -0,0 +1,181 @@
+package com.linked.quizbot.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.linked.quizbot.Constants;
+
+/**
+ * A content-addressed store of {@link QuestionList} versions referenced by {@link Attempt}s.
+ * <p>
+ * An attempt only keeps the id of the list it was played on and a version hash of the
+ * list's questions. Every attempt on the same version shares one in-memory snapshot,
+ * written once to {@code lists/snapshots/<listId>/<version>.json} (or {@code .smile}) the first time an
+ * attempt referencing it is persisted.
+ * </p>
+ * <p>
+ * Snapshots are only weakly held, through an {@link Interner}: a version stays in memory as long as
+ * an attempt references it, and is read back from disk by {@link #get(String, String)} once collected.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see Attempt
+ * @see AttemptJournal
+ */
+public class ListSnapshots {
+	public static final String FOLDERNAME = "snapshots";
+	public static final int VERSION_LENGTH = 16;
+	private static final Interner<String, QuestionList> snapshots = new Interner<>();
+	private static final Set<String> persisted = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Computes the version hash of a list from its questions, in order, and their options, in any order.
+	 * <p>The name, owner and tags are left out so renaming or tagging a list keeps its version.
+	 * Hashing goes over the whole list, {@link QuestionList#getContentVersion()} keeps the result until the list changes.</p>
+	 * @param l the list to hash.
+	 * @return a hexadecimal string of {@link #VERSION_LENGTH} characters.
+	 * @requires l != null
+	 * @ensures \result.length() == VERSION_LENGTH
+	 * @pure
+	 */
+	public static String versionOf(QuestionList l){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (Question q : l){
+				update(digest, "Q");
+				update(digest, q.getQuestion());
+				update(digest, explication(q.getExplication()));
+				update(digest, q.getImageSrc());
+				List<Option> opts = new ArrayList<>(q.getOptions());
+				opts.sort((a, b) -> a.getText().compareTo(b.getText()));
+				for (Option opt : opts){
+					update(digest, opt.isCorrect()?"T":"F");
+					update(digest, opt.getText());
+					update(digest, explication(opt.getExplication()));
+				}
+			}
+			return HexFormat.of().formatHex(digest.digest()).substring(0, VERSION_LENGTH);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 not available", e);
+		}
+	}
+
+	// the same "no explanation" is stored as null, "null" or Constants.NOEXPLICATION depending on its origin
+	private static String explication(String s){
+		if (s==null || s.equals("null") || s.equals(Constants.NOEXPLICATION)){
+			return null;
+		}
+		return s;
+	}
+
+	private static void update(MessageDigest digest, String s){
+		if (s != null){
+			digest.update(s.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Returns the shared snapshot of this version of the list, keeping a copy of {@code l} if it is the first one seen.
+	 * @param l the list an attempt is played on.
+	 * @param version the result of {@link #versionOf(QuestionList)} for {@code l}.
+	 * @return the shared snapshot, equal to {@code l}.
+	 * @requires l != null && version.equals(versionOf(l))
+	 */
+	public static QuestionList intern(QuestionList l, String version){
+		String key = key(l.getId(), version);
+		QuestionList res = snapshots.get(key);
+		if (res != null){
+			return res;
+		}
+		return snapshots.intern(key, new QuestionList.Builder().add(l).build());
+	}
+
+	/**
+	 * Looks a snapshot up in memory, then on disk.
+	 * @param listId the id of the list.
+	 * @param version the version hash of the list.
+	 * @return the shared snapshot, or {@code null} if it does not exist.
+	 */
+	public static QuestionList get(String listId, String version){
+		String key = key(listId, version);
+		QuestionList l = snapshots.get(key);
+		if (l != null){
+			return l;
+		}
+		String path = StorageCodec.find(pathToSnapshotWithoutExtension(listId, version));
+		if (path == null){
+			return null;
+		}
+		try {
+			l = QuestionList.Parser.fromJsonFile(path).build();
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while importing a list snapshot."+path);
+			e.printStackTrace();
+			return null;
+		}
+		persisted.add(key);
+		return snapshots.intern(key, l);
+	}
+
+	/**
+	 * Makes sure the snapshot is on disk, the write is queued on the persistence thread
+	 * so it lands before anything submitted after this call.
+	 * @param snapshot the snapshot to write.
+	 * @param version its version hash.
+	 */
+	public static void persist(QuestionList snapshot, String version){
+		String key = key(snapshot.getId(), version);
+		if (!persisted.add(key)){
+			return;
+		}
+		String path = pathToSnapshot(snapshot.getId(), version);
+		Persistence.submit(() -> {
+			if (StorageCodec.find(pathToSnapshotWithoutExtension(snapshot.getId(), version)) == null){
+				snapshot.exportListQuestionAsJson(path);
+			}
+		});
+	}
+
+	/**
+	 * @param listId the id of the list.
+	 * @param version the version hash of the list.
+	 * @return the path of the snapshot file, in the format of {@link Constants#STORAGECODEC}.
+	 */
+	public static String pathToSnapshot(String listId, String version){
+		return StorageCodec.path(pathToSnapshotWithoutExtension(listId, version));
+	}
+	
+	private static String pathToSnapshotWithoutExtension(String listId, String version){
+		return Constants.LISTSPATH+Constants.SEPARATOR+FOLDERNAME+Constants.SEPARATOR+listId+Constants.SEPARATOR+version;
+	}
+
+	/**
+	 * @return the number of snapshots held in memory, those no attempt references anymore may already be gone.
+	 */
+	public static int size(){
+		return snapshots.size();
+	}
+
+	/**
+	 * Forgets every snapshot held in memory.
+	 */
+	public static void clear(){
+		snapshots.clear();
+		persisted.clear();
+	}
+
+	private static String key(String listId, String version){
+		return listId+"@"+version;
+	}
+}
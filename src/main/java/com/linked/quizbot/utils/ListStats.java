@@ -0,0 +1,94 @@
+package com.linked.quizbot.utils;
+
+import net.dv8tion.jda.api.utils.TimeFormat;
+
+/**
+ * The figures a user's collection is sorted and filtered by, for one list they played.
+ * <p>
+ * Instances are immutable, {@link User#addAttempt(String, Attempt)} replaces the list's stats with
+ * {@link #with(Attempt)} so the attempt is scored once, and a comparator never sees a half updated value.
+ * Scores are percentages of the list size at the time of the attempt, as in {@link AttemptRollup}.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see User#getListStats(String)
+ * @see CollectionManager#parseComparator(User, String)
+ */
+public final class ListStats {
+	public static final ListStats NONE = new ListStats(0, 0, 0, 0L, 0L);
+
+	private final int playCount;
+	private final double lastPercent;
+	private final double bestPercent;
+	private final long lastStart;
+	private final long lastEnd;
+
+	private ListStats(int playCount, double lastPercent, double bestPercent, long lastStart, long lastEnd){
+		this.playCount = playCount;
+		this.lastPercent = lastPercent;
+		this.bestPercent = bestPercent;
+		this.lastStart = lastStart;
+		this.lastEnd = lastEnd;
+	}
+
+	/**
+	 * @param r the summary of every attempt made on a list.
+	 * @return the stats described by {@code r}, {@link #NONE} if it is empty.
+	 * @pure
+	 */
+	public static ListStats of(AttemptRollup r){
+		if (r.getCount()==0){
+			return NONE;
+		}
+		return new ListStats(r.getCount(), r.getLastPercent(), r.getBestPercent(), r.getLastStart(), r.getLastEnd());
+	}
+
+	/**
+	 * @param att a finished attempt on the list.
+	 * @return the stats once {@code att} is counted, the last values are only replaced by a more recent attempt.
+	 * @requires att != null
+	 * @ensures \result.getPlayCount() == getPlayCount()+1
+	 * @pure
+	 */
+	public ListStats with(Attempt att){
+		double percent = AttemptRollup.percentOf(att);
+		long start = att.getStart()!=null?att.getStart():0L;
+		long end = att.getEnd()!=null?att.getEnd():start;
+		double best = playCount==0?percent:Math.max(bestPercent, percent);
+		if (playCount!=0 && start<lastStart){
+			return new ListStats(playCount+1, lastPercent, best, lastStart, lastEnd);
+		}
+		return new ListStats(playCount+1, percent, best, start, end);
+	}
+
+	public int getPlayCount(){return playCount;}
+
+	public double getLastPercent(){return lastPercent;}
+
+	public double getBestPercent(){return bestPercent;}
+
+	public long getLastStart(){return lastStart;}
+
+	public long getLastEnd(){return lastEnd;}
+
+	public boolean isPlayed(){return playCount!=0;}
+
+	/**
+	 * Formats the last attempt the way {@link Attempt#getTextPoints()} does, followed by the best score and the number of plays.
+	 * @return the text, empty if the list was never played.
+	 * @pure
+	 */
+	public String getTextPoints(){
+		if (playCount==0){
+			return "";
+		}
+		long duration = lastEnd-lastStart;
+		String time = String.format("`%3d s`",Long.divideUnsigned(duration, 1000));
+		if (duration> 99*1000){
+			time = String.format("`%3dm`",Long.divideUnsigned(duration, 60000));
+		}
+		return String.format("`%3.0f%%` %s %s `best %3.0f%%` `x%d`", lastPercent, time, TimeFormat.RELATIVE.atTimestamp(lastStart), bestPercent, playCount);
+	}
+}
@@ -0,0 +1,673 @@
+package com.linked.quizbot.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.linked.quizbot.Constants;
+
+/**
+ * A single store holding every {@link QuestionList}, used instead of one file per list when {@link Constants#LISTSTORE} is set.
+ * <p>
+ * Lists are appended as records to segment files under {@code lists/store/}, a new segment is started once the
+ * current one reaches {@link Constants#LISTSTORESEGMENTBYTES}. Each record is
+ * {@code [crc32][kind][codec][id length][owner length][payload length][id][owner][payload]}, the payload being
+ * the list written by {@link QuestionList.Writer} in the format of {@link Constants#STORAGECODEC}.
+ * A deleted list gets a record without payload.
+ * </p>
+ * <p>
+ * The offset of the latest record of every list is kept in memory, so a list is read with a single positional
+ * read, or from a memory-mapped segment when {@link Constants#LISTSTOREMMAP} is set. The index is rebuilt on
+ * opening by replaying the segments in order, a record failing its checksum, such as one torn by a crash,
+ * ends its segment and is truncated away.
+ * </p>
+ * <p>
+ * Once the sealed segments hold more replaced records than live ones they are compacted in the background:
+ * live records are copied to a new segment, ordered between the old segments and the one being written,
+ * then the old segments are deleted. A crash at any point leaves a store that replays to the same lists.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see QuestionList#exportListQuestionAsJson()
+ */
+public class ListStore {
+	public static final String FOLDERNAME = "store";
+	public static final String EXTENSION = ".seg";
+	// crc, kind, codec, id length, owner length, payload length
+	private static final int HEADERSIZE = 4+1+1+2+2+4;
+	private static final byte DELETE = 0, PUT = 1;
+
+	private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private static final Map<String, Location> index = new ConcurrentHashMap<>();
+	private static final Map<String, Set<String>> idsByOwnerId = new ConcurrentHashMap<>();
+	// guarded by the write lock
+	private static final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private static Segment active;
+	private static volatile String openedPath;
+	private static final Object compactionLock = new Object();
+	private static final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "quizbot-compaction");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static final class Segment {
+		final long id;
+		final Path path;
+		final FileChannel channel;
+		// only grows, and only on the active segment, under the write lock
+		volatile long size;
+		final AtomicLong live = new AtomicLong();
+		private MappedByteBuffer mapped;
+
+		Segment(long id, Path path) throws IOException{
+			this.id = id;
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.size = channel.size();
+		}
+
+		ByteBuffer read(long offset, int length) throws IOException{
+			if (Constants.LISTSTOREMMAP && this != active){
+				synchronized (this){
+					// a sealed segment never changes, so it is mapped once
+					if (mapped == null){
+						mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+					}
+				}
+				return mapped.slice((int) offset, length);
+			}
+			return readFully(channel, offset, length);
+		}
+
+		void close(){
+			try {
+				channel.close();
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while closing a list store segment."+path);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private record Location(Segment segment, long offset, int length, String ownerId){}
+
+	private record Move(String id, Location from, Location to){}
+
+	private record Entry(byte kind, int codec, String id, String ownerId, int payloadOffset, int payloadLength){}
+
+	/**
+	 * @return the directory of the store under the current {@link Constants#LISTSPATH}.
+	 */
+	public static String pathToStore(){
+		return Constants.LISTSPATH+Constants.SEPARATOR+FOLDERNAME;
+	}
+
+	/**
+	 * Writes the current content of a list as its latest record.
+	 * @param l the list to store.
+	 * @requires l != null && l.getId() != null && l.getOwnerId() != null
+	 * @ensures get(l.getId()).toJson().equals(l.toJson())
+	 */
+	public static void put(QuestionList l){
+		byte[] payload;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (JsonGenerator jg = Constants.STORAGECODEC.createGenerator(out)){
+				QuestionList.Writer.write(jg, l);
+			}
+			payload = out.toByteArray();
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while serializing a list for the list store. listId:"+l.getId());
+			e.printStackTrace();
+			return;
+		}
+		append(PUT, l.getId(), l.getOwnerId(), payload);
+	}
+
+	/**
+	 * Marks a list as deleted.
+	 * @param listId the id of the list.
+	 * @ensures !contains(listId)
+	 */
+	public static void delete(String listId){
+		ensureOpen();
+		if (index.containsKey(listId)){
+			append(DELETE, listId, "", new byte[0]);
+		}
+	}
+
+	/**
+	 * @param listId the id of a list.
+	 * @return {@code true} if the store holds the list.
+	 * @pure
+	 */
+	public static boolean contains(String listId){
+		ensureOpen();
+		return index.containsKey(listId);
+	}
+
+	/**
+	 * Reads and parses the latest record of a list.
+	 * @param listId the id of the list.
+	 * @return the list, or {@code null} if it is not stored or cannot be read.
+	 */
+	public static QuestionList get(String listId){
+		ensureOpen();
+		byte[] payload;
+		int codec;
+		lock.readLock().lock();
+		try {
+			Location loc = index.get(listId);
+			if (loc == null){
+				return null;
+			}
+			ByteBuffer buf = loc.segment().read(loc.offset(), loc.length());
+			Entry e = decode(buf);
+			if (e == null || e.kind() != PUT){
+				System.err.println(Constants.ERROR + "Corrupted record in the list store. listId:"+listId);
+				return null;
+			}
+			payload = new byte[e.payloadLength()];
+			buf.get(e.payloadOffset(), payload);
+			codec = e.codec();
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while reading the list store. listId:"+listId);
+			e.printStackTrace();
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+		// parsed outside the lock, the payload is a private copy
+		try (JsonParser jp = StorageCodec.all().get(codec).getFactory().createParser(payload)){
+			return QuestionList.Parser.parse(jp, listId).build();
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while parsing a stored list. listId:"+listId);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Reads every list of a user, in parallel.
+	 * @param ownerId the owner of the lists.
+	 * @return the lists by id.
+	 */
+	public static Map<String, QuestionList> getAll(String ownerId){
+		ensureOpen();
+		Set<String> ids = idsByOwnerId.get(ownerId);
+		Map<String, QuestionList> res = new ConcurrentHashMap<>();
+		if (ids != null){
+			new ArrayList<>(ids).parallelStream().forEach(id -> {
+				QuestionList l = get(id);
+				if (l != null){
+					res.put(id, l);
+				}
+			});
+		}
+		return new HashMap<>(res);
+	}
+
+	/**
+	 * @param ownerId the id of a user.
+	 * @return {@code true} if the store holds at least one list of that user.
+	 * @pure
+	 */
+	public static boolean hasOwner(String ownerId){
+		ensureOpen();
+		Set<String> ids = idsByOwnerId.get(ownerId);
+		return ids != null && !ids.isEmpty();
+	}
+
+	/**
+	 * @return the owner of every stored list, by list id, read from the index without parsing any list.
+	 */
+	public static Map<String, String> ownerIdsByListId(){
+		ensureOpen();
+		Map<String, String> res = new HashMap<>();
+		for (Map.Entry<String, Location> e : index.entrySet()){
+			res.put(e.getKey(), e.getValue().ownerId());
+		}
+		return res;
+	}
+
+	/**
+	 * @return the number of stored lists.
+	 * @pure
+	 */
+	public static int size(){
+		ensureOpen();
+		return index.size();
+	}
+
+	/**
+	 * @return the total size of the segments, in bytes.
+	 * @pure
+	 */
+	public static long sizeOnDisk(){
+		ensureOpen();
+		lock.readLock().lock();
+		try {
+			long res = 0;
+			for (Segment s : segments.values()){
+				res += s.size;
+			}
+			return res;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrites the live records of every sealed segment into a new segment and deletes the sealed ones.
+	 * <p>Lists keep being read and written while the records are copied, only the final swap blocks them.
+	 * A call made while another compaction runs waits for it to end first.</p>
+	 * @return the number of bytes reclaimed.
+	 */
+	public static long compact(){
+		ensureOpen();
+		synchronized (compactionLock){
+			return compactSealed();
+		}
+	}
+
+	private static long compactSealed(){
+		long start = System.nanoTime();
+		try {
+			List<Segment> sealed;
+			Segment target;
+			lock.writeLock().lock();
+			try {
+				sealed = new ArrayList<>(segments.values());
+				// the copies are ordered after every sealed record and before any new one
+				target = newSegment(active.id+1);
+				active = newSegment(active.id+2);
+				segments.put(active.id, active);
+			} finally {
+				lock.writeLock().unlock();
+			}
+			long before = 0;
+			List<Move> moved = new ArrayList<>();
+			for (Segment s : sealed){
+				before += s.size;
+				long offset = 0;
+				while (offset < s.size){
+					int length = recordLength(s.channel, offset);
+					if (length < 0) break;
+					ByteBuffer buf = readFully(s.channel, offset, length);
+					Entry e = decode(buf.duplicate());
+					Location loc = e==null?null:index.get(e.id());
+					if (loc != null && loc.segment() == s && loc.offset() == offset){
+						Location copy = new Location(target, target.size, length, loc.ownerId());
+						writeFully(target.channel, buf, target.size);
+						target.size += length;
+						moved.add(new Move(e.id(), loc, copy));
+					}
+					offset += length;
+				}
+			}
+			target.channel.force(true);
+			lock.writeLock().lock();
+			try {
+				for (Move m : moved){
+					// a list written or deleted during the copy keeps its newer record
+					if (index.replace(m.id(), m.from(), m.to())){
+						target.live.addAndGet(m.to().length());
+					}
+				}
+				segments.put(target.id, target);
+				for (Segment s : sealed){
+					segments.remove(s.id);
+					s.close();
+					Files.deleteIfExists(s.path);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			long reclaimed = before - target.size;
+			System.out.println(String.format(Constants.INFO + "Compacted %d list store segments, %d bytes -> %d bytes, in %.2f ms",
+				sealed.size(), before, target.size, (System.nanoTime() - start) / 1000000.00));
+			return reclaimed;
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while compacting the list store."+pathToStore());
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Moves every list from the one-file-per-list layout into the store and makes the store the current layout.
+	 * @return the number of lists moved.
+	 * @ensures Constants.LISTSTORE
+	 */
+	public static int importFromFiles(){
+		long start = System.nanoTime();
+		Persistence.drain();
+		Constants.LISTSTORE = true;
+		AtomicInteger count = new AtomicInteger();
+		File[] owners = new File(Constants.LISTSPATH).listFiles(File::isDirectory);
+		if (owners != null){
+			// the files are only deleted once the store is synced
+			DurableWrites.batch(() -> {
+				for (File owner : owners){
+					if (owner.getName().equals(ListSnapshots.FOLDERNAME) || owner.getName().equals(FOLDERNAME)) continue;
+					File[] files = owner.listFiles(f -> f.isFile() && StorageCodec.stripExtension(f.getName()) != null);
+					if (files == null) continue;
+					for (File f : files){
+						try {
+							QuestionList l = QuestionList.Parser.fromJsonFile(f.getPath()).build();
+							put(l);
+							DurableWrites.delete(f.getPath());
+							count.incrementAndGet();
+						} catch (IOException e){
+							System.err.println(Constants.ERROR + "An error occurred while moving a list into the list store."+f.getPath());
+							e.printStackTrace();
+						}
+					}
+				}
+			});
+		}
+		System.out.println(String.format(Constants.INFO + "Moved %d lists into the list store in %.2f ms", count.get(), (System.nanoTime() - start) / 1000000.00));
+		return count.get();
+	}
+
+	/**
+	 * Writes every stored list back to its own file, deletes the store and makes one file per list the current layout.
+	 * @return the number of lists written.
+	 * @ensures !Constants.LISTSTORE
+	 */
+	public static int exportToFiles(){
+		long start = System.nanoTime();
+		Persistence.drain();
+		Constants.LISTSTORE = false;
+		AtomicInteger count = new AtomicInteger();
+		DurableWrites.batch(() -> {
+			for (String listId : ownerIdsByListId().keySet()){
+				QuestionList l = get(listId);
+				if (l == null) continue;
+				l.exportListQuestionAsJson();
+				count.incrementAndGet();
+			}
+		});
+		lock.writeLock().lock();
+		try {
+			for (Segment s : segments.values()){
+				s.close();
+				Files.deleteIfExists(s.path);
+			}
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while deleting the list store."+pathToStore());
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		close();
+		System.out.println(String.format(Constants.INFO + "Wrote %d lists out of the list store in %.2f ms", count.get(), (System.nanoTime() - start) / 1000000.00));
+		return count.get();
+	}
+
+	/**
+	 * Closes the segments and forgets the index, the store is reopened from disk on next use.
+	 */
+	public static void close(){
+		lock.writeLock().lock();
+		try {
+			for (Segment s : segments.values()){
+				s.close();
+			}
+			segments.clear();
+			index.clear();
+			idsByOwnerId.clear();
+			active = null;
+			openedPath = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// reopens the store whenever Constants.LISTSPATH has changed since it was opened
+	private static void ensureOpen(){
+		String path = pathToStore();
+		if (path.equals(openedPath)){
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (!path.equals(openedPath)){
+				open(path);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static void open(String path){
+		close();
+		long start = System.nanoTime();
+		try {
+			Files.createDirectories(Paths.get(path));
+			List<Long> ids = new ArrayList<>();
+			try (Stream<Path> files = Files.list(Paths.get(path))){
+				files.map(p -> p.getFileName().toString())
+					.filter(n -> n.endsWith(EXTENSION))
+					.forEach(n -> ids.add(Long.parseLong(n.substring(0, n.length()-EXTENSION.length()))));
+			}
+			ids.sort(null);
+			for (long id : ids){
+				Segment s = newSegment(id);
+				replay(s);
+				segments.put(id, s);
+			}
+			active = segments.isEmpty()?newSegment(0):segments.lastEntry().getValue();
+			segments.put(active.id, active);
+		} catch (IOException | NumberFormatException e){
+			System.err.println(Constants.ERROR + "An error occurred while opening the list store."+path);
+			e.printStackTrace();
+		}
+		openedPath = path;
+		if (!index.isEmpty()){
+			System.out.println(String.format(Constants.INFO + "Indexed %d stored lists in %d segments in %.2f ms",
+				index.size(), segments.size(), (System.nanoTime() - start) / 1000000.00));
+		}
+	}
+
+	private static Segment newSegment(long id) throws IOException{
+		return new Segment(id, Paths.get(pathToStore(), String.format("%016d%s", id, EXTENSION)));
+	}
+
+	// rebuilds the index from a segment, anything after the first unreadable record is cut off
+	private static void replay(Segment s) throws IOException{
+		long offset = 0;
+		while (offset < s.size){
+			int length = recordLength(s.channel, offset);
+			if (length < 0 || offset+length > s.size){
+				break;
+			}
+			Entry e = decode(readFully(s.channel, offset, length));
+			if (e == null){
+				break;
+			}
+			apply(e, new Location(s, offset, length, e.ownerId()));
+			offset += length;
+		}
+		if (offset < s.size){
+			System.err.println(String.format(Constants.ERROR + "Truncated %d unreadable bytes at the end of %s", s.size-offset, s.path));
+			s.channel.truncate(offset);
+			s.size = offset;
+		}
+	}
+
+	private static void append(byte kind, String id, String ownerId, byte[] payload){
+		ensureOpen();
+		ByteBuffer record = encode(kind, id, ownerId, payload);
+		FileChannel written;
+		lock.writeLock().lock();
+		try {
+			if (active.size > 0 && active.size+record.remaining() > Constants.LISTSTORESEGMENTBYTES){
+				active = newSegment(active.id+1);
+				segments.put(active.id, active);
+			}
+			Location loc = new Location(active, active.size, record.remaining(), ownerId);
+			writeFully(active.channel, record, active.size);
+			written = active.channel;
+			active.size += loc.length();
+			apply(new Entry(kind, 0, id, ownerId, 0, 0), loc);
+		} catch (IOException e){
+			System.err.println(Constants.ERROR + "An error occurred while writing to the list store. listId:"+id);
+			e.printStackTrace();
+			return;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		DurableWrites.sync(written);
+		maybeCompact();
+	}
+
+	private static void apply(Entry e, Location loc){
+		Location old;
+		if (e.kind() == PUT){
+			old = index.put(e.id(), loc);
+			loc.segment().live.addAndGet(loc.length());
+			idsByOwnerId.computeIfAbsent(loc.ownerId(), k -> ConcurrentHashMap.newKeySet()).add(e.id());
+		} else {
+			old = index.remove(e.id());
+		}
+		if (old != null){
+			old.segment().live.addAndGet(-old.length());
+			if (e.kind() != PUT || !old.ownerId().equals(loc.ownerId())){
+				Set<String> ids = idsByOwnerId.get(old.ownerId());
+				if (ids != null) ids.remove(e.id());
+			}
+		}
+	}
+
+	// compacts once the sealed segments hold at least a segment of replaced records, and more of them than live ones
+	private static void maybeCompact(){
+		if (compactionScheduled.get()){
+			return;
+		}
+		long total = 0, live = 0;
+		lock.readLock().lock();
+		try {
+			for (Segment s : segments.values()){
+				if (s == active) continue;
+				total += s.size;
+				live += s.live.get();
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		long garbage = total - live;
+		if (garbage >= Constants.LISTSTORESEGMENTBYTES && garbage > live && compactionScheduled.compareAndSet(false, true)){
+			compactor.execute(() -> {
+				try {
+					compact();
+				} finally {
+					compactionScheduled.set(false);
+				}
+			});
+		}
+	}
+
+	private static ByteBuffer encode(byte kind, String id, String ownerId, byte[] payload){
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		byte[] ownerBytes = ownerId.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocate(HEADERSIZE+idBytes.length+ownerBytes.length+payload.length);
+		buf.putInt(0);
+		buf.put(kind);
+		buf.put((byte) StorageCodec.all().indexOf(Constants.STORAGECODEC));
+		buf.putShort((short) idBytes.length);
+		buf.putShort((short) ownerBytes.length);
+		buf.putInt(payload.length);
+		buf.put(idBytes).put(ownerBytes).put(payload);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 4, buf.capacity()-4);
+		buf.putInt(0, (int) crc.getValue());
+		return buf.flip();
+	}
+
+	// returns null if the checksum does not match
+	private static Entry decode(ByteBuffer buf){
+		int start = buf.position();
+		int length = buf.remaining();
+		if (length < HEADERSIZE){
+			return null;
+		}
+		int crcValue = buf.getInt(start);
+		CRC32 crc = new CRC32();
+		crc.update(buf.duplicate().position(start+4));
+		if ((int) crc.getValue() != crcValue){
+			return null;
+		}
+		byte kind = buf.get(start+4);
+		int codec = buf.get(start+5);
+		int idLength = buf.getShort(start+6) & 0xffff;
+		int ownerLength = buf.getShort(start+8) & 0xffff;
+		int payloadLength = buf.getInt(start+10);
+		if (codec < 0 || codec >= StorageCodec.all().size() || HEADERSIZE+idLength+ownerLength+payloadLength != length){
+			return null;
+		}
+		byte[] idBytes = new byte[idLength];
+		byte[] ownerBytes = new byte[ownerLength];
+		buf.get(start+HEADERSIZE, idBytes);
+		buf.get(start+HEADERSIZE+idLength, ownerBytes);
+		return new Entry(kind, codec, new String(idBytes, StandardCharsets.UTF_8), new String(ownerBytes, StandardCharsets.UTF_8),
+			start+HEADERSIZE+idLength+ownerLength, payloadLength);
+	}
+
+	// the length of the record starting at offset, or -1 if its header is incomplete
+	private static int recordLength(FileChannel channel, long offset) throws IOException{
+		if (offset+HEADERSIZE > channel.size()){
+			return -1;
+		}
+		ByteBuffer header = readFully(channel, offset, HEADERSIZE);
+		long length = HEADERSIZE + (header.getShort(6) & 0xffff) + (header.getShort(8) & 0xffff) + (long) header.getInt(10);
+		return length < HEADERSIZE || length > Integer.MAX_VALUE ? -1 : (int) length;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException{
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()){
+			if (channel.read(buf, offset+buf.position()) < 0){
+				throw new EOFException();
+			}
+		}
+		return buf.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long offset) throws IOException{
+		ByteBuffer src = buf.duplicate();
+		while (src.hasRemaining()){
+			channel.write(src, offset+src.position());
+		}
+	}
+}
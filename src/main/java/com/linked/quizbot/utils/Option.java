@@ -4,11 +4,14 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -21,11 +24,14 @@ import com.linked.quizbot.Constants;
  * The toString will return a Json representation of this Option.
  *
  * The option will not contain its own validity.
+ *
+ * Options are immutable, the parser shares one instance between every equal option, see {@link #intern(Option)}.
  */
 public class Option {
-	private String txt;
-	private String explication;
-	private boolean isCorrect;
+	private static final Interner<List<Object>, Option> interner = new Interner<>();
+	private final String txt;
+	private final String explication;
+	private final boolean isCorrect;
 	
 	public static class Parser {
 		
@@ -67,11 +73,7 @@ public class Option {
 				}
 			};
 			if (optTxt!=null && isCorr!= null){
-				if (optExpl!=null){
-					res = new Option(optTxt, isCorr, optExpl);
-				} else {
-					res = new Option(optTxt, isCorr);
-				}
+				res = intern(new Option(optTxt, isCorr, optExpl));
 			}
 			return res;
 		}
@@ -97,6 +99,53 @@ public class Option {
 			return opts;
 		}
 	}
+	
+	/**
+	 * Option.Writer streams {@link Option} objects as JSON, in the format read by {@link Parser}.
+	 */
+	public static class Writer {
+		/**
+		 * Writes an option as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param opt the option to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && opt != null
+		 */
+		public static void write(JsonGenerator jg, Option opt) throws IOException{
+			jg.writeStartObject();
+			jg.writeStringField("option", opt.getText());
+			jg.writeBooleanField("isCorrect", opt.isCorrect());
+			writeExplication(jg, opt.getExplication());
+			jg.writeEndObject();
+		}
+		
+		/**
+		 * Writes an {@code "explication"} field, {@code null} for every form of "no explanation".
+		 * @param jg the generator to write to.
+		 * @param explication the explanation, possibly {@code null}, {@code "null"} or {@link Constants#NOEXPLICATION}.
+		 * @throws IOException if the generator fails to write.
+		 */
+		public static void writeExplication(JsonGenerator jg, String explication) throws IOException{
+			if(explication==null || explication.equals("null") || explication.equals(Constants.NOEXPLICATION)){
+				jg.writeNullField("explication");
+			}else {
+				jg.writeStringField("explication", explication);
+			}
+		}
+		
+		/**
+		 * @param opt the option to write.
+		 * @return the option as compact JSON.
+		 * @throws IOException if writing fails.
+		 */
+		public static String toJson(Option opt) throws IOException{
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = Constants.MAPPER.getFactory().createGenerator(out)){
+				write(jg, opt);
+			}
+			return out.toString();
+		}
+	}
 	/**
 	 * Constructs an Option with only text.
 	 *
@@ -105,9 +154,7 @@ public class Option {
 	 * @ensures getText().equals(text)
 	 */
 	public Option(@NotNull String text, boolean isCorrect){
-		txt = text;
-		explication = null;
-		this.isCorrect = isCorrect;
+		this(text, isCorrect, null);
 	}
 	
 	/**
@@ -119,10 +166,37 @@ public class Option {
 	 * @ensures getText().equals(text) && getExplication().equals(explication)
 	 */
 	public Option(@Nullable String text, boolean isCorrect, @Nullable String explication){
-		this(text, isCorrect);
+		this.txt = text;
+		this.isCorrect = isCorrect;
 		this.explication = explication;
 	}
 	
+	/**
+	 * Returns the instance shared by every option with the same text, validity and explanation.
+	 * <p>Does nothing when {@link Constants#INTERNING} is not set.</p>
+	 * @param opt the option to share.
+	 * @return the shared option, equal in content to {@code opt}.
+	 * @requires opt != null
+	 */
+	public static Option intern(Option opt){
+		if (!Constants.INTERNING){
+			return opt;
+		}
+		return interner.intern(opt.key(), opt);
+	}
+	
+	/**
+	 * @return the number of options currently shared.
+	 */
+	public static int internedCount(){
+		return interner.size();
+	}
+	
+	// the whole content, unlike equals which only compares the text
+	List<Object> key(){
+		return Arrays.asList(txt, isCorrect, explication);
+	}
+	
 	/**
 	 * Gets the text of the option.
 	 *
@@ -159,19 +233,11 @@ public class Option {
 	 */
 	@Override
 	public String toString() {
-		return toJson().replace("\n\t\"" ,"\"");
+		return toJson();
 	}
 	public String toJson() {
-		
 		try {
-			String s = "{\n\t\"option\":"+Constants.MAPPER.writeValueAsString(getText());
-			s+= ",\n\t\"isCorrect\":"+isCorrect();
-			s+= ",\n\t\"explication\":";
-			if(getExplication()==null || getExplication().equals("null") || getExplication().equals(Constants.NOEXPLICATION)){
-				s+=null;
-			}else {s += Constants.MAPPER.writeValueAsString(getExplication());}
-			s+="\n}";
-			return s;
+			return Writer.toJson(this);
 		} catch (Exception e){
 			System.err.println(String.format(Constants.ERROR + "[%s.toJson() failed]%s", getClass(), e.getMessage()));
 		}
@@ -204,6 +270,14 @@ public class Option {
 		}
 		return getText().equals(p.getText());
 	}
+	/**
+	 * Hashes the text only, as {@link #equals(Object)} compares it, so equal options land in the same bucket of a set.
+	 * @return the hash of the text of this option
+	 */
+	@Override
+	public int hashCode() {
+		return getText()!=null?getText().hashCode():0;
+	}
 	public static List<Option> getExampleOption(){
 		List<Option> opts = new ArrayList<>();
 		opts.add(new Option("Water", true, "Correct! H2O is the chemical formula for water"));
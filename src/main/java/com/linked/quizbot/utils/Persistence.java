@@ -0,0 +1,343 @@
+package com.linked.quizbot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.linked.quizbot.Constants;
+
+/**
+ * A write-behind persistence service for {@link User} and {@link QuestionList} objects.
+ * <p>
+ * Mutations no longer write to disk on the calling thread, instead a copy of the mutated object is
+ * taken and a flush is scheduled {@link Constants#FLUSHDELAYMILLIS} milliseconds later. Every mutation
+ * made during that window is coalesced into one write per object, so a burst of edits or a quiz ending
+ * for many players costs one export per user rather than one per mutation.
+ * </p>
+ * <p>
+ * Two executors do the work:
+ * </p>
+ * <ul>
+ * <li>The scheduler is one daemon thread. It runs the scheduled flushes and the tasks given to
+ * {@link #submit(Runnable)} in submission order, so two submitted tasks never overlap. The
+ * {@link AttemptJournal} relies on that for appends and compactions of the same file, and
+ * {@link ListSnapshots} writes its snapshot files there.</li>
+ * <li>The export pool has {@link Constants#EXPORTTHREADS} daemon threads. The exports of one flush run
+ * there concurrently, one object per task, and a flush with a single export runs it on its own thread.
+ * They write distinct files, or append to the thread-safe
+ * {@link ListStore} and {@link Checkpoint} log, and only read the copies.</li>
+ * </ul>
+ * <p>
+ * Flushes never overlap, as {@link #flush()} is synchronized, and {@link #callExclusive(Supplier)} holds them off. It may also be called on any other thread,
+ * on shutdown or by tests, and may then run next to a submitted task. Those tasks write journals and
+ * snapshot files, which a flush never touches.
+ * </p>
+ * <p>
+ * Every written object is also appended to the {@link Checkpoint} log when {@link Constants#CHECKPOINT} is set.
+ * </p>
+ * <p>
+ * {@link #flush()} writes everything pending right away and is called on shutdown.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see User#exportUserData()
+ * @see QuestionList#exportListQuestionAsJson()
+ */
+public class Persistence {
+	// runs the scheduled flushes and the submitted tasks one at a time, in order
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "quizbot-persistence");
+		t.setDaemon(true);
+		return t;
+	});
+	// runs the exports of one flush concurrently, bounded so a large flush does not compete with the bot for every core
+	private static final ExecutorService exporters = Executors.newFixedThreadPool(Math.max(1, Constants.EXPORTTHREADS), r -> {
+		Thread t = new Thread(r, "quizbot-export");
+		t.setDaemon(true);
+		return t;
+	});
+	// what is written of each dirty object, copied on the thread that changed it
+	private record Image<T>(T live, T copy, long version){}
+	private static final Map<String, Image<User>> dirtyUsers = new ConcurrentHashMap<>();
+	private static final Map<String, Image<QuestionList>> dirtyLists = new ConcurrentHashMap<>();
+	private static final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+	// the writes of each user queued or running, by user id, so Users does not evict a user mid-write
+	private static final Map<String, Integer> inFlightByUserId = new ConcurrentHashMap<>();
+
+	/**
+	 * Marks a user's data as needing to be exported and schedules a flush.
+	 * <p>The data is copied right away, so it must be called by the thread that changed the user,
+	 * once the change is complete. The flush writes that copy and never reads the user itself.</p>
+	 * @param user the mutated user.
+	 * @requires user != null
+	 * @ensures isDirty(user)
+	 */
+	public static void markDirty(User user){
+		Users.readmit(user);
+		long v = user.getVersion();
+		dirtyUsers.put(user.getId(), new Image<>(user, user.copy(), v));
+		scheduleFlush();
+	}
+
+	/**
+	 * Marks a question list as needing to be exported and schedules a flush.
+	 * <p>The list is copied right away, so it must be called by the thread that changed the list,
+	 * once the change is complete. The flush writes that copy and never reads the list itself.</p>
+	 * @param l the mutated list.
+	 * @requires l != null && l.getId() != null
+	 * @ensures isDirty(l)
+	 */
+	public static void markDirty(QuestionList l){
+		User owner = l.getEvictedOwner();
+		if (owner != null){
+			Users.readmit(owner);
+		}
+		long v = l.getVersion();
+		dirtyLists.put(l.getId(), new Image<>(l, l.copy(), v));
+		scheduleFlush();
+	}
+
+	/**
+	 * Drops any pending write for this list, used when the list is deleted
+	 * so that a later flush does not recreate its file.
+	 * @param l the list to forget.
+	 * @ensures !isDirty(l)
+	 */
+	public static void forget(QuestionList l){
+		dirtyLists.remove(l.getId());
+	}
+
+	/**
+	 * @param user the user to check.
+	 * @return {@code true} if the user has changes that are not yet on disk.
+	 * @pure
+	 */
+	public static boolean isDirty(User user){
+		return dirtyUsers.containsKey(user.getId());
+	}
+
+	/**
+	 * @param l the list to check.
+	 * @return {@code true} if the list has changes that are not yet on disk.
+	 * @pure
+	 */
+	public static boolean isDirty(QuestionList l){
+		return dirtyLists.containsKey(l.getId());
+	}
+
+	/**
+	 * @param userId the id of a user.
+	 * @return {@code true} if the user or one of its lists is dirty, or a write of the user is queued or running.
+	 * @pure
+	 */
+	public static boolean isBusy(String userId){
+		if (dirtyUsers.containsKey(userId) || inFlightByUserId.containsKey(userId)){
+			return true;
+		}
+		for (Image<QuestionList> img : dirtyLists.values()){
+			if (userId.equals(img.copy().getOwnerId())) return true;
+		}
+		return false;
+	}
+
+	private static void begin(String userId){
+		if (userId != null) inFlightByUserId.merge(userId, 1, Integer::sum);
+	}
+
+	private static void end(String userId){
+		if (userId != null) inFlightByUserId.computeIfPresent(userId, (k, n) -> n==1?null:n-1);
+	}
+
+	/**
+	 * @return the number of users and lists waiting to be written.
+	 * @pure
+	 */
+	public static int pendingCount(){
+		return dirtyUsers.size() + dirtyLists.size();
+	}
+
+	/**
+	 * Runs a task on the persistence thread, after every task submitted before it.
+	 * @param task the task to run.
+	 */
+	public static void submit(Runnable task){
+		scheduler.execute(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e){
+				System.err.println(Constants.ERROR + "A persistence task failed.");
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Runs a task writing a user's files on the persistence thread, the user counts as busy until it completes.
+	 * @param userId the id of the user whose files the task writes.
+	 * @param task the task to run.
+	 * @see #isBusy(String)
+	 */
+	public static void submit(String userId, Runnable task){
+		begin(userId);
+		submit(() -> {
+			try {
+				task.run();
+			} finally {
+				end(userId);
+			}
+		});
+	}
+
+	private static void scheduleFlush(){
+		if (flushScheduled.compareAndSet(false, true)){
+			scheduler.schedule(() -> {
+				flushScheduled.set(false);
+				flush();
+			}, Constants.FLUSHDELAYMILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes every dirty list and user to disk on the calling thread, in one {@link DurableWrites#batch(Runnable)}.
+	 * <p>Only the copies taken by {@link #markDirty(User)} and {@link #markDirty(QuestionList)} are written, an object
+	 * changed meanwhile is marked dirty again with a newer copy, picked up by the next flush.</p>
+	 * @return the number of bytes written.
+	 * @ensures \old(pendingCount()) objects were exported
+	 */
+	public static synchronized long flush(){
+		return DurableWrites.batch(Persistence::flushAll);
+	}
+
+	/**
+	 * Computes a value while no flush can run, a flush scheduled meanwhile waits for it to return.
+	 * <p>Used to move files a flush could write at the same time. {@code action} may call {@link #flush()}
+	 * but must not wait for submitted tasks, a scheduled flush may be waiting for the lock on the persistence thread.</p>
+	 * @param <T> the type of the result.
+	 * @param action what runs without concurrent flushes.
+	 * @return the value computed by {@code action}.
+	 */
+	public static synchronized <T> T callExclusive(Supplier<T> action){
+		return action.get();
+	}
+
+	private static void flushAll(){
+		List<Runnable> exports = new ArrayList<>();
+		for (Map.Entry<String, Image<QuestionList>> e : dirtyLists.entrySet()){
+			Image<QuestionList> img = e.getValue();
+			String ownerId = img.copy().getOwnerId();
+			// counted in flight before it stops being dirty, so its owner is never seen as saved in between
+			begin(ownerId);
+			if (!dirtyLists.remove(e.getKey(), img)){
+				end(ownerId);
+				continue;
+			}
+			exports.add(() -> {
+				try {
+					if (img.live().exportCopy(img.copy(), img.version(), () -> retry(dirtyLists, e.getKey(), img))){
+						Checkpoint.logList(img.copy());
+					}
+				} finally {
+					end(ownerId);
+				}
+			});
+		}
+		for (Map.Entry<String, Image<User>> e : dirtyUsers.entrySet()){
+			String userId = e.getKey();
+			Image<User> img = e.getValue();
+			begin(userId);
+			if (!dirtyUsers.remove(userId, img)){
+				end(userId);
+				continue;
+			}
+			exports.add(() -> {
+				try {
+					if (img.live().exportCopy(img.copy(), img.version(), () -> retry(dirtyUsers, userId, img))){
+						Checkpoint.logUser(img.copy());
+					}
+				} finally {
+					end(userId);
+				}
+			});
+		}
+		runAll(exports);
+	}
+
+	// a copy the batch failed to put in place is written again by the next flush, unless a newer one is pending
+	private static <T> void retry(Map<String, Image<T>> dirty, String key, Image<T> img){
+		dirty.putIfAbsent(key, img);
+		scheduleFlush();
+	}
+
+	// runs the exports on the export pool, in the batch of the calling thread, and waits for all of them
+	private static void runAll(List<Runnable> exports){
+		if (exports.size() < 2){
+			exports.forEach(Runnable::run);
+			return;
+		}
+		List<Future<?>> futures = new ArrayList<>(exports.size());
+		for (Runnable export : exports){
+			futures.add(exporters.submit(DurableWrites.inBatch(export)));
+		}
+		// the batch commits once this returns, so every export is waited for even when interrupted
+		boolean interrupted = false;
+		for (Future<?> f : futures){
+			while (true){
+				try {
+					f.get();
+					break;
+				} catch (InterruptedException e){
+					interrupted = true;
+				} catch (ExecutionException e){
+					System.err.println(Constants.ERROR + "An export did not complete.");
+					e.printStackTrace();
+					break;
+				}
+			}
+		}
+		if (interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for every task submitted so far to complete, without flushing dirty objects.
+	 */
+	public static void awaitSubmitted(){
+		try {
+			scheduler.submit(() -> {}).get();
+		} catch (InterruptedException e){
+			System.err.println(Constants.ERROR + "Interrupted while draining the persistence queue.");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Waits for submitted tasks to complete, then flushes all pending writes.
+	 * Further calls to {@link #submit(Runnable)} are still accepted.
+	 */
+	public static void drain(){
+		awaitSubmitted();
+		flush();
+	}
+
+	/**
+	 * Drops every pending write without exporting it.
+	 */
+	public static void clear(){
+		dirtyUsers.clear();
+		dirtyLists.clear();
+	}
+}
@@ -9,9 +9,11 @@ import javax.management.InvalidAttributeValueException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
@@ -22,6 +24,11 @@ import com.linked.quizbot.core.BotCore;
  * The Question class represents a question in a quiz, along with its possible answer options.
  * A question includes the text of the question, a number of correct options,
  * an optional explanation, and a list of possible answers, called options.
+ * <p>
+ * Parsed questions are shared between every list, list snapshot and attempt that holds an
+ * equal question, see {@link #intern(Question)}. A shared question cannot be modified,
+ * {@link #rearrageOptions(Comparator)} then returns a reordered copy.
+ * </p>
  * 
  * @author alinked0
  * @version 1.0
@@ -30,9 +37,11 @@ import com.linked.quizbot.core.BotCore;
  * @see Question.Builder
  */
 public class Question{
+	private static final Interner<List<Object>, Question> interner = new Interner<>();
 	private final String question;
 	private String explication;
 	private List<Option> options = new LinkedList<>();
+	private volatile boolean shared = false;
 	
 	
 	private String imageSrc = null;// TODO impl a way to attach images
@@ -183,7 +192,34 @@ public class Question{
 			outputBuilder = new Question(q, opts);
 			outputBuilder.setExplication(expl);
 			outputBuilder.setImageSrc(imgSrc);
-			return outputBuilder;
+			return intern(outputBuilder);
+		}
+	}
+	
+	/**
+	 * Question.Writer streams {@link Question} objects as JSON, in the format read by {@link Parser}.
+	 * <p>Correct options are written first, as {@link #toJson()} does.</p>
+	 */
+	public static class Writer {
+		/**
+		 * Writes a question and its options as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param q the question to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && q != null
+		 */
+		public static void write(JsonGenerator jg, Question q) throws IOException{
+			jg.writeStartObject();
+			jg.writeStringField("question", q.getQuestion());
+			Option.Writer.writeExplication(jg, q.getExplication());
+			jg.writeStringField("imageSrc", q.getImageSrc());
+			jg.writeArrayFieldStart("options");
+			List<Option> opts = q.getOptions(); opts.sort((a,b)->(a.isCorrect()?-1:1));
+			for (Option opt : opts){
+				Option.Writer.write(jg, opt);
+			}
+			jg.writeEndArray();
+			jg.writeEndObject();
 		}
 	}
 	/**
@@ -212,8 +248,8 @@ public class Question{
 	public Question(String question){
 		this.question = question;
 		explication = null;
-		add(new Option("True", true));
-		add(new Option("False", false));
+		addOption(Option.intern(new Option("True", true)));
+		addOption(Option.intern(new Option("False", false)));
 	}
 	/**
 	 * Create a multiple choice question from a collection of answers.
@@ -246,8 +282,7 @@ public class Question{
 	public Question(String question, int numberTrue, String... optionsForAnswer) {
 		int i = 1;
 		for (String s : optionsForAnswer){
-			add(new Option(s, ((i++)<=numberTrue)));
-			get(0);
+			addOption(new Option(s, ((i++)<=numberTrue)));
 		}
 		this.question = question;
 	}
@@ -266,7 +301,7 @@ public class Question{
 	public Question(String question, Option... optionsForAnswer) {
 		this.question = question;
 		for (Option option : optionsForAnswer){
-			add(option);
+			addOption(option);
 		}
 	}
 	
@@ -279,9 +314,15 @@ public class Question{
 	 * @ensures options.size() == \old(options.size()) + 1
 	 */
 	public boolean add(Option opt) {
+		checkNotShared();
+		addOption(opt);
+		return true;
+	}
+	
+	// the constructors add their options here, a question being built is never shared
+	private void addOption(Option opt){
 		if (opt==null) throw new NullPointerException();
 		options.add(opt);
-		return true;
 	}
 	
 	/**
@@ -293,6 +334,7 @@ public class Question{
 	 */
 	public boolean addAll(Collection<? extends Option> opt) {
 		if (opt==null) throw new NullPointerException();
+		checkNotShared();
 		options.addAll(opt);
 		return true;
 	}
@@ -339,7 +381,7 @@ public class Question{
 	 */
 	public int getNumberTrue() {
 		int t = 0;
-		for (Option opt:getOptions()) {
+		for (Option opt:options) {
 			if (opt!=null && opt.isCorrect()) {
 				++t;
 			}
@@ -365,7 +407,7 @@ public class Question{
 	 * @param explication The new explanation text.
 	 * @ensures this.explication == explication
 	 */
-	public void setExplication(String explication) { this.explication = explication;}
+	public void setExplication(String explication) { checkNotShared(); this.explication = explication;}
 	
 	/**
 	 * Returns a new {@code List} containing all options for the question.
@@ -392,16 +434,55 @@ public class Question{
 	
 	/**
 	 * Rearranges the internal list of options using the specified {@link Comparator}.
+	 * <p>A shared question is left as is and a reordered copy is returned instead.</p>
 	 * @param comp The comparator to determine the new order of options.
-	 * @return The current Question object, with options sorted according to {@code comp}.
+	 * @return This question, or a copy if it is shared, with options sorted according to {@code comp}.
 	 * @requires comp != null
-	 * @ensures this.options is sorted according to comp.
+	 * @ensures \result.getOptions() is sorted according to comp.
 	 */
 	public Question rearrageOptions(Comparator<? super Option> comp){
+		if (shared){
+			Question copy = new Question(question, options);
+			copy.explication = explication;
+			copy.imageSrc = imageSrc;
+			return copy.rearrageOptions(comp);
+		}
 		options.sort(comp);
 		return this;
 	}
 	
+	/**
+	 * Returns the instance shared by every question with the same text, explanation, image and options.
+	 * <p>The returned question can no longer be modified. Does nothing when {@link Constants#INTERNING} is not set.</p>
+	 * @param q the question to share, with interned options.
+	 * @return the shared question, equal in content to {@code q}.
+	 * @requires q != null
+	 */
+	public static Question intern(Question q){
+		if (!Constants.INTERNING){
+			return q;
+		}
+		List<Object> optionKeys = new ArrayList<>(q.options.size());
+		for (Option opt : q.options){
+			optionKeys.add(opt.key());
+		}
+		q.shared = true;
+		return interner.intern(Arrays.asList(q.question, q.explication, q.imageSrc, optionKeys), q);
+	}
+	
+	/**
+	 * @return the number of questions currently shared.
+	 */
+	public static int internedCount(){
+		return interner.size();
+	}
+	
+	private void checkNotShared(){
+		if (shared){
+			throw new UnsupportedOperationException("A shared question cannot be modified, build a new one with Question.Builder");
+		}
+	}
+	
 	/**
 	 * Returns the optional image source URL or path associated with the question.
 	 * @return The image source string, or {@code null} if not set.
@@ -415,7 +496,7 @@ public class Question{
 	 * @param imageSrc The image source string.
 	 * @ensures this.imageSrc == imageSrc
 	 */
-	public void setImageSrc(String imageSrc){ this.imageSrc = imageSrc;}
+	public void setImageSrc(String imageSrc){ checkNotShared(); this.imageSrc = imageSrc;}
 	
 	/**
 	 * Returns the text of the question.
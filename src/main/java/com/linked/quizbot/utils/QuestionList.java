@@ -1,19 +1,13 @@
 package com.linked.quizbot.utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -25,15 +19,20 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.InvalidAttributeValueException;
 
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.Separators;
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.core.BotCore;
 
@@ -83,6 +82,23 @@ public class QuestionList implements Iterable<Question>{
 	public static double pointsForIncorrect = -0.25;
 	private long timeCreatedMillis;
 	private String id; //TODO the id should be made final
+	// bumped by every mutation, compared with the version last written to disk
+	private final AtomicLong version = new AtomicLong();
+	private volatile long exportedVersion = 0;
+	// the content hash of the list and the mutation it was computed at, replaced once the list changes
+	private volatile ContentVersion contentVersion = null;
+	// the owner this list was evicted with, a change made meanwhile takes it back into Users first
+	private volatile User evictedOwner = null;
+	
+	private static final class ContentVersion {
+		private final long at;
+		private final String hash;
+		
+		private ContentVersion(long at, String hash){
+			this.at = at;
+			this.hash = hash;
+		}
+	}
 	
 	static {
 		getExampleQuestionList().exportListQuestionAsJson();
@@ -237,18 +253,21 @@ public class QuestionList implements Iterable<Question>{
 	}
 	
 	/**
-	 * QuestionList.Hasher is a utility class for generating unique, short, alphanumeric codes
-	 * based on an input string and a timestamp. It uses SHA-256 hashing and Base-36 encoding
-	 * to create a code that is guaranteed to be unique for the same input and timestamp.
+	 * QuestionList.Hasher is a utility class for allocating unique, short, alphanumeric list ids.
 	 * <p>
-	 * Most of this code was written by chatgpt.
+	 * An id is a letter followed by {@link #DEFAULT_LENGTH}-1 base-36 characters, drawn from a
+	 * {@link ThreadLocalRandom} so threads never contend on a shared generator. The ids in use are
+	 * kept in a concurrent set, and an id is only handed out once it was atomically added to it.
 	 * </p>
 	 */
 	public static class Hasher {
 		
 		public static final char[] BASE36_ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
 		public static final int DEFAULT_LENGTH = 7;
-		public static final Set<String> generatedCodes = new HashSet<>();
+		// users are imported on several threads at once
+		public static final Set<String> generatedCodes = ConcurrentHashMap.newKeySet();
+		// 26 first letters times 36 for each following character
+		private static final long CODESPACE = 26L * (long) Math.pow(36, DEFAULT_LENGTH-1);
 		
 		/**
 		 * Adds a newly generated code to the set of codes currently in use.
@@ -270,132 +289,53 @@ public class QuestionList implements Iterable<Question>{
 		
 		
 		/**
-		 * Generates a unique, short hash code based on a string input and a timestamp.
-		 * <p>The method ensures the code is not already in {@link #generatedCodes} using random components and retries.</p>
-		 * @param input The base string input for hashing (e.g., list name).
-		 * @param timestamp The creation time or other timestamp to ensure entropy.
-		 * @return A unique alphanumeric hash code of {@link #DEFAULT_LENGTH}.
-		 * @throws RuntimeException if too many hash collisions occur (10,000 attempts).
-		 * @requires input != null
+		 * Allocates a unique, short code.
+		 * <p>The code is random, the arguments are kept for callers that describe what the code is for.</p>
+		 * @param input The base string input (e.g., list name), not used.
+		 * @param timestamp The creation time, not used.
+		 * @return A unique alphanumeric code of {@link #DEFAULT_LENGTH}.
+		 * @throws RuntimeException if too many collisions occur (10,000 attempts).
 		 * @ensures \result != null && \result.length() == DEFAULT_LENGTH
 		 * @ensures generatedCodes.contains(\result)
 		 */
 		public static String generate(String input, long timestamp) {
-			String code;
-			int attempts = 0;
-			
-			do {
-				String randomComponent = UUID.randomUUID().toString();
-				String combined = input + "|" + timestamp + "|" + randomComponent;
-				code = createCode(combined);
-				attempts++;
-				
-				// Just in case something goes wrong
-				if (attempts > 10_000) {
-					throw new RuntimeException("Too many hash collisions. Aborting.");
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int attempts = 0; attempts < 10_000; ++attempts) {
+				String code = createCode(random.nextLong(CODESPACE));
+				// add is atomic, two threads cannot both get the same code
+				if (generatedCodes.add(code)) {
+					return code;
 				}
-			} while (generatedCodes.contains(code));
-			
-			Hasher.addGeneratedCode(code);
-			return code;
+			}
+			throw new RuntimeException("Too many id collisions. Aborting.");
 		}
 		
 		/**
-		 * Generates a unique, short hash code for a given {@link QuestionList} object.
-		 * <p>The hash is primarily based on the list's author ID and name, combined with the creation timestamp.</p>
-		 * @param l The QuestionList object for which to generate the hash.
-		 * @return A unique alphanumeric hash code of {@link #DEFAULT_LENGTH}.
-		 * @throws RuntimeException if too many hash collisions occur (10,000 attempts).
+		 * Allocates a unique, short code for a given {@link QuestionList} object.
+		 * @param l The QuestionList object for which to generate the code.
+		 * @return A unique alphanumeric code of {@link #DEFAULT_LENGTH}.
+		 * @throws RuntimeException if too many collisions occur (10,000 attempts).
 		 * @requires l != null
 		 * @ensures \result != null && \result.length() == DEFAULT_LENGTH
 		 * @ensures generatedCodes.contains(\result)
 		 */
 		public static String generate(QuestionList l) {
-			String code, input = l.getOwnerId() + l.getName();
-			long timestamp = l.getTimeCreatedMillis();
-			int attempts = 0;
-			
-			do {
-				String randomComponent = UUID.randomUUID().toString();
-				String combined = input + "|" + timestamp + "|" + randomComponent;
-				code = createCode(combined);
-				attempts++;
-				
-				// Just in case something goes wrong
-				if (attempts > 10_000) {
-					throw new RuntimeException("Too many hash collisions. Aborting.");
-				}
-			} while (generatedCodes.contains(code));
-			
-			Hasher.addGeneratedCode(code);
-			return code;
-		}
-		
-		/**
-		 * Internal method to create a Base-36 encoded, truncated code from a combined string input.
-		 * <p>Uses SHA-256 hashing on the input, converts the hash to Base-36, prepends 'a' if necessary, and truncates/pads to {@link #DEFAULT_LENGTH}.</p>
-		 * @param combinedInput The input string (including random elements) to be hashed.
-		 * @return A Base-36 encoded string based on the hash.
-		 * @throws RuntimeException if SHA-256 algorithm is not available.
-		 * @requires combinedInput != null
-		 */
-		private static String createCode(String combinedInput) {
-			try {
-				// SHA-256 hashing
-				MessageDigest digest = MessageDigest.getInstance("SHA-256");
-				byte[] hashBytes = digest.digest(combinedInput.getBytes(StandardCharsets.UTF_8));
-				BigInteger hashInt = new BigInteger(1, hashBytes);
-				
-				// Base-36 encoding
-				String base36 = toBase36(hashInt);
-				
-				// Ensure it starts with a letter
-				if (base36.length() > 0 && Character.isDigit(base36.charAt(0))) {
-					base36 = "a" + base36;
-				}
-				
-				// Truncate or pad the code
-				return base36.length() >= DEFAULT_LENGTH ? base36.substring(0, DEFAULT_LENGTH) : padToLength(base36, DEFAULT_LENGTH);
-			
-			} catch (NoSuchAlgorithmException e) {
-				throw new RuntimeException("SHA-256 not available", e);
-			}
+			return generate(l.getOwnerId() + l.getName(), l.getTimeCreatedMillis());
 		}
 		
 		/**
-		 * Internal method to convert a {@link BigInteger} into a Base-36 encoded string.
-		 * @param value The BigInteger value to encode.
-		 * @return The Base-36 string representation.
-		 * @requires value.compareTo(BigInteger.ZERO) > 0
+		 * Internal method to write a number of the code space as a code.
+		 * @param value a number in [0, CODESPACE).
+		 * @return a letter followed by the base-36 digits of the rest of {@code value}.
 		 */
-		private static String toBase36(BigInteger value) {
-			StringBuilder sb = new StringBuilder();
-			BigInteger base = BigInteger.valueOf(36);
-			
-			while (value.compareTo(BigInteger.ZERO) > 0) {
-				BigInteger[] divmod = value.divideAndRemainder(base);
-				sb.insert(0, BASE36_ALPHABET[divmod[1].intValue()]);
-				value = divmod[0];
+		private static String createCode(long value) {
+			char[] code = new char[DEFAULT_LENGTH];
+			for (int i = DEFAULT_LENGTH-1; i > 0; --i) {
+				code[i] = BASE36_ALPHABET[(int) (value % 36)];
+				value /= 36;
 			}
-			
-			return sb.toString();
-		}
-		
-		/**
-		 * Internal method to pad an input string with the character 'a' until it reaches the specified length.
-		 * @param input The string to pad.
-		 * @param length The target length.
-		 * @return The padded string.
-		 * @requires input != null
-		 * @requires length >= input.length()
-		 * @ensures \result.length() == length
-		 */
-		private static String padToLength(String input, int length) {
-			StringBuilder sb = new StringBuilder(input);
-			while (sb.length() < length) {
-				sb.append('a');
-			}
-			return sb.toString();
+			code[0] = BASE36_ALPHABET[10 + (int) value];
+			return new String(code);
 		}
 		
 		/**
@@ -418,12 +358,13 @@ public class QuestionList implements Iterable<Question>{
 	public static class Parser {
 		
 		/**
-		 * Parses a {@link QuestionList} from a JSON file specified by the file path.
-		 * @param filePathToJson The absolute or relative path to the JSON file.
+		 * Parses a {@link QuestionList} from a file specified by the file path.
+		 * <p>The format is picked from the file extension, see {@link StorageCodec#forPath(String)}.</p>
+		 * @param filePathToJson The absolute or relative path to the JSON or Smile file.
 		 * @return A {@link QuestionList.Builder} pre-populated with data from the file, or {@code null} if the file is not found.
 		 * @throws IOExceptionif an I/O error occurs during file reading or JSON parsing.
 		 * @requires filePathToJson != null
-		 * @ensures \result == parse(new JsonFactory().createParser(f), filePathToJson) if file exists.
+		 * @ensures \result == parse(StorageCodec.forPath(filePathToJson).createParser(f), filePathToJson) if file exists.
 		 */
 		public static QuestionList.Builder fromJsonFile(String filePathToJson) throws IOException{
 			File f = new File(filePathToJson);
@@ -431,7 +372,7 @@ public class QuestionList implements Iterable<Question>{
 				System.err.println(Constants.ERROR + "File not found"+ f.getAbsoluteFile());
 				return null;
 			}
-			JsonParser jp =  new JsonFactory().createParser(new File(filePathToJson));
+			JsonParser jp =  StorageCodec.forPath(filePathToJson).createParser(new File(filePathToJson));
 			return parse(jp, filePathToJson);
 		}
 		
@@ -545,6 +486,80 @@ public class QuestionList implements Iterable<Question>{
 		}
 	}
 	
+	/**
+	 * QuestionList.Writer streams {@link QuestionList} objects as JSON, in the format read by {@link Parser}.
+	 * <p>Fields are written one by one to a {@link JsonGenerator}, so exporting a list never builds
+	 * its whole JSON text in memory.</p>
+	 */
+	public static class Writer {
+		/**
+		 * Writes a list and all its questions as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param l the list to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && l != null
+		 */
+		public static void write(JsonGenerator jg, QuestionList l) throws IOException{
+			jg.writeStartObject();
+			jg.writeStringField("ownerId", l.getOwnerId());
+			jg.writeStringField("name", l.getName());
+			jg.writeStringField("id", l.getId());
+			jg.writeNumberField("timeCreatedMillis", l.getTimeCreatedMillis());
+			jg.writeObjectFieldStart("emojiPerTagName");
+			for (Entry<String, String> entry : l.emojiPerTagName.entrySet()){
+				jg.writeStringField(entry.getKey(), entry.getValue());
+			}
+			jg.writeEndObject();
+			jg.writeArrayFieldStart("questions");
+			for (Question q : l){
+				Question.Writer.write(jg, q);
+			}
+			jg.writeEndArray();
+			jg.writeEndObject();
+		}
+		
+		/**
+		 * Writes a list as indented UTF-8 JSON to a stream, the stream is left open.
+		 * @param l the list to write.
+		 * @param out the destination.
+		 * @throws IOException if writing fails.
+		 */
+		public static void write(QuestionList l, OutputStream out) throws IOException{
+			try (JsonGenerator jg = prettyPrint(Constants.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8))){
+				write(jg, l);
+			}
+		}
+		
+		/**
+		 * @param l the list to write.
+		 * @return the list as indented JSON.
+		 * @throws IOException if writing fails.
+		 */
+		public static String toJson(QuestionList l) throws IOException{
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = prettyPrint(Constants.MAPPER.getFactory().createGenerator(out))){
+				write(jg, l);
+			}
+			return out.toString();
+		}
+		
+		/**
+		 * Sets up a generator the way every exported file is indented: with tabs and
+		 * without the spaces Jackson puts around ':' by default.
+		 * @param jg the generator to set up, its target is left open on close.
+		 * @return {@code jg}.
+		 */
+		static JsonGenerator prettyPrint(JsonGenerator jg){
+			DefaultIndenter indenter = new DefaultIndenter("\t", "\n");
+			jg.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			Separators separators = Separators.createDefaultInstance()
+				.withObjectFieldValueSpacing(Separators.Spacing.NONE);
+			return jg.setPrettyPrinter(new DefaultPrettyPrinter(separators)
+				.withObjectIndenter(indenter)
+				.withArrayIndenter(indenter));
+		}
+	}
+	
 	/**
 	 * Default constructor for QuestionList.
 	 * Initializes the list with default values for ownerId, name, and emojiPerTagName.
@@ -644,6 +659,7 @@ public class QuestionList implements Iterable<Question>{
 	 */
 	public boolean addAll(QuestionList q) {
 		this.emojiPerTagName.putAll(q.emojiPerTagName);
+		changed();
 		return addAll(q.getQuestions());
 	}
 	
@@ -665,7 +681,7 @@ public class QuestionList implements Iterable<Question>{
 			return true;
 		}
 		questions.add(e);
-		
+		changed();
 		return true;
 	}
 	
@@ -683,6 +699,7 @@ public class QuestionList implements Iterable<Question>{
 			return ;
 		}
 		questions.add(index, element);
+		changed();
 	}
 	
 	/** 
@@ -717,6 +734,7 @@ public class QuestionList implements Iterable<Question>{
 	 */
 	public void setOwnerId(String ownerId) {
 		this.ownerId= ownerId;
+		changed();
 	}
 	
 	/**
@@ -727,6 +745,7 @@ public class QuestionList implements Iterable<Question>{
 	 */
 	public void setName(String name) {
 		this.name= name;
+		changed();
 	}
 	
 	/**
@@ -735,6 +754,7 @@ public class QuestionList implements Iterable<Question>{
 	 */
 	public void setId(String id){
 		this.id = id;
+		changed();
 	}
 	
 	/**
@@ -793,9 +813,11 @@ public class QuestionList implements Iterable<Question>{
 	
 	public void addTag(String tagName, String emoji) {
 		emojiPerTagName.put(tagName, emoji);
+		changed();
 	}
 	public void setTags(Map<? extends String,? extends String> m) {
 		emojiPerTagName = new HashMap<>(m);
+		changed();
 	}
 	
 	/** 
@@ -806,7 +828,52 @@ public class QuestionList implements Iterable<Question>{
 	public void removeTag(String tagName) {
 		if (emojiPerTagName.containsKey(tagName)) {
 			emojiPerTagName.remove(tagName);
+			changed();
+		}
+	}
+	
+	// every mutation goes through here
+	private void changed(){
+		User owner = evictedOwner;
+		if (owner != null){
+			Users.readmit(owner);
+		}
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * @return the evicted instance of the owner this list belongs to, {@code null} while the owner is resident.
+	 * @pure
+	 */
+	User getEvictedOwner(){
+		return evictedOwner;
+	}
+	
+	void setEvictedOwner(User owner){
+		this.evictedOwner = owner;
+	}
+	
+	/**
+	 * Returns the {@link ListSnapshots#versionOf(QuestionList)} hash of this list, only computed again after a change.
+	 * @return the version hash of the questions of this list.
+	 * @ensures \result.equals(ListSnapshots.versionOf(this))
+	 */
+	public String getContentVersion(){
+		long v = version.get();
+		ContentVersion cached = contentVersion;
+		if (cached == null || cached.at != v){
+			cached = new ContentVersion(v, ListSnapshots.versionOf(this));
+			contentVersion = cached;
 		}
+		return cached.hash;
+	}
+	
+	/**
+	 * @return {@code true} if this list changed since it was last exported by {@link #exportListQuestionAsJson()}.
+	 * @pure
+	 */
+	public boolean isModified(){
+		return version.get() != exportedVersion;
 	}
 	
 	/**
@@ -825,9 +892,16 @@ public class QuestionList implements Iterable<Question>{
 	 * @return the default file path as a string
 	 */
 	public String pathToList(){
-		String p = Constants.LISTSPATH+Constants.SEPARATOR+getOwnerId()+Constants.SEPARATOR;
-		p+=getId()+".json";
-		return p;
+		return StorageCodec.path(pathToListWithoutExtension());
+	}
+	
+	/**
+	 * Returns the default path to the file for this QuestionList, without the extension of its format.
+	 *
+	 * @return the file path as a string
+	 */
+	public String pathToListWithoutExtension(){
+		return Constants.LISTSPATH+Constants.SEPARATOR+getOwnerId()+Constants.SEPARATOR+getId();
 	}
 	
 	/**
@@ -841,28 +915,87 @@ public class QuestionList implements Iterable<Question>{
 	/**
 	 * Exports this QuestionList as a JSON file.
 	 * Creates the file if it does not already exist.
+	 * <p>When {@link Constants#LISTSTORE} is set the list is appended to the {@link ListStore} instead.</p>
+	 * @ensures !isModified() unless the export failed or the list changed meanwhile
 	 */
 	public void exportListQuestionAsJson(){
-		exportListQuestionAsJson(pathToList());
+		long v = version.get();
+		write(replaced -> {
+			if (replaced) exportedVersion = v;
+		});
+	}
+	
+	/**
+	 * Exports a copy taken by {@link #copy()}, this list then counts as exported up to the version the copy was taken at.
+	 * <p>Inside a {@link DurableWrites#batch(Runnable)} that version is only recorded once the batch put the file in place.</p>
+	 * @param copy the copy of this list.
+	 * @param v the result of {@link #getVersion()} when the copy was taken.
+	 * @param onNotReplaced run if the copy was written but the batch failed to put it in place.
+	 * @return {@code true} if the copy was written.
+	 * @requires copy.getId().equals(getId())
+	 */
+	boolean exportCopy(QuestionList copy, long v, Runnable onNotReplaced){
+		return copy.write(replaced -> {
+			if (replaced){
+				exportedVersion = v;
+			} else {
+				onNotReplaced.run();
+			}
+		});
+	}
+	
+	// writes to the ListStore, or to the file in the current format and, once it is in place, deletes the one left in another format
+	private boolean write(DurableWrites.Outcome outcome){
+		if (Constants.LISTSTORE){
+			ListStore.put(this);
+			outcome.done(true);
+			return true;
+		}
+		return exportListQuestionAsJson(pathToList(), replaced -> {
+			if (replaced) StorageCodec.removeStale(pathToListWithoutExtension());
+			outcome.done(replaced);
+		});
+	}
+	
+	/**
+	 * @return a copy of this list as it is now, for {@link Persistence} to write while this list keeps changing.
+	 * @ensures \result.equals(this)
+	 */
+	QuestionList copy(){
+		return new QuestionList.Builder().add(this).build();
+	}
+	
+	/**
+	 * @return a counter incremented by every change of this list.
+	 * @pure
+	 */
+	long getVersion(){
+		return version.get();
 	}
 	
 	/** 
-	 * Exports this QuestionList as a JSON file to the specified destination file path.
+	 * Exports this QuestionList to the specified destination file path.
+	 * <p>The list is streamed by {@link Writer}, in the format of the path's extension, and replaces
+	 * the file atomically through {@link DurableWrites}.</p>
+	 * @return {@code true} if the file was written.
 	 */
-	public void exportListQuestionAsJson(String destFilePath){
+	public boolean exportListQuestionAsJson(String destFilePath){
+		return exportListQuestionAsJson(destFilePath, null);
+	}
+	
+	private boolean exportListQuestionAsJson(String destFilePath, DurableWrites.Outcome outcome){
 		try {
-			File myJson = new File(destFilePath);
-			File folder = myJson.getParentFile();
-			if(folder != null && !myJson.getParentFile().exists()) {
-				folder.mkdirs();
-			}
-			BufferedWriter buff = Files.newBufferedWriter(Paths.get(destFilePath));
-			buff.write(this.toJson());
-			buff.close();
+			DurableWrites.write(destFilePath, out -> {
+				try (JsonGenerator jg = StorageCodec.forPath(destFilePath).createGenerator(out)){
+					Writer.write(jg, this);
+				}
+			}, outcome);
+			return true;
 		} catch (Exception e) {
 			System.err.println(Constants.ERROR + "An error occurred while exporting a List of questions.");
 			e.printStackTrace();
 		}
+		return false;
 	}
 	
 	
@@ -908,91 +1041,9 @@ public class QuestionList implements Iterable<Question>{
 	 * Returns a string representation of this QuestionList in JSON format.
 	 */
 	public String toJson(){
-		/*try {
-			return Constants.MAPPER.writer(new DefaultPrettyPrinter()).writeValueAsString(this);
-		}catch(JsonProcessingException e){System.err.print(Constants.ERROR);e.printStackTrace();}*/
-		return toJsonUsingMapper();//Constants.MAPPER.writer(new DefaultPrettyPrinter()).writeValueAsString(this);
-	}
-	/** 
-	 * Converts this QuestionList to a JSON string using the Jackson ObjectMapper.
-	 */
-	private String toJsonUsingMapper() {
 		try {
-			
-			String res="",
-			tab="",
-			spc1 = "  ",
-			spc2 = spc1+spc1,
-			spc3 = spc2+spc1,
-			seperatorParamOpt = "\n";
-			
-			
-			
-			res += "{\n";
-			tab = "\t";
-			res += tab+"\"ownerId\":"+Constants.MAPPER.writeValueAsString(getOwnerId())+",\n";
-			res += tab + "\"name\":"+Constants.MAPPER.writeValueAsString(getName())+",\n";
-			res += tab + "\"id\":"+Constants.MAPPER.writeValueAsString(getId())+",\n";
-			res += tab + "\"timeCreatedMillis\":"+getTimeCreatedMillis()+",\n";
-			
-			res += tab + "\"emojiPerTagName\":{";
-			Iterator<Entry<String, String>> iter = emojiPerTagName.entrySet().iterator();
-			Entry<String, String> entry;
-			while (iter.hasNext()) {
-				entry = iter.next();
-				res += Constants.MAPPER.writeValueAsString(entry.getKey())+" : "+Constants.MAPPER.writeValueAsString(entry.getValue());
-				if(iter.hasNext()){
-					res += ", ";
-				}
-			}
-			res += "},\n";
-			
-			res += tab + "\"questions\": \n";
-			res += "\t[\n";
-			Iterator<Question> iterQuestion = this.iterator();
-			while (iterQuestion.hasNext()){
-				Question q = iterQuestion.next();
-				tab = "\t\t";
-				res += "\t{\n" + spc2 + "\"question\":"+Constants.MAPPER.writeValueAsString(q.getQuestion())+",\n";
-				res += spc2 + "\"explication\":";
-				if(q.getExplication()==null || q.getExplication().equals("null") || q.getExplication().equals(Constants.NOEXPLICATION)){
-					res +=null;
-				}else {
-					res += Constants.MAPPER.writeValueAsString(q.getExplication());
-				}
-				res += ",\n";
-				res +=spc2 + "\"imageSrc\":"+(q.getImageSrc()==null?null:Constants.MAPPER.writeValueAsString(q.getImageSrc()))+",\n";
-				res +=spc2 + "\"options\": [\n";
-				List<Option> opts = q.getOptions(); opts.sort((a,b)->(a.isCorrect()?-1:1));
-				Iterator<Option> iterOpt = opts.iterator();
-				while (iterOpt.hasNext()){
-					Option opt = iterOpt.next();
-					res += spc2+"{\n";
-					res += spc3+"\"option\":"+Constants.MAPPER.writeValueAsString(opt.getText())+","+seperatorParamOpt;
-					res += spc3+"\"isCorrect\":"+opt.isCorrect()+","+seperatorParamOpt;
-					res += spc3+"\"explication\":";
-					if(opt.getExplication()==null || opt.getExplication().equals("null") || opt.getExplication().equals(Constants.NOEXPLICATION)){
-						res +=null+seperatorParamOpt;
-					}else {
-						res += Constants.MAPPER.writeValueAsString(opt.getExplication())+seperatorParamOpt;
-					}
-					res += spc2+"}";
-					if (iterOpt.hasNext()){
-						res += ",";
-					}
-					res += "\n";
-				}
-				res += spc2+"]\n";
-				res += spc1+"}";
-				if(iterQuestion.hasNext()) {
-					res+= ",";
-				}
-				res += "\n";
-			}
-			res += spc1+"]\n";
-			res +="}";
-			return res;
-		} catch(Exception e){
+			return Writer.toJson(this);
+		} catch(IOException e){
 			e.printStackTrace();
 		}
 		return null;
@@ -1045,6 +1096,7 @@ public class QuestionList implements Iterable<Question>{
 	public QuestionList rearrageQuestions(){
 		Random r = BotCore.getRandom();
 		questions.sort((a,b)->r.nextBoolean()?-1:1);
+		changed();
 		return this;
 	}
 	
@@ -1168,7 +1220,8 @@ public class QuestionList implements Iterable<Question>{
 	
 	/** TODO docs */
 	public static int myBinarySearchIndexOf(List<QuestionList> tab, int start, int end, String listName){
-		QuestionList searched = new QuestionList.Builder().name(listName).build();
+		// a fixed id, generated ids start with a letter, so the probe does not allocate one
+		QuestionList searched = new QuestionList.Builder().name(listName).id("0000000").build();
 		return Users.myBinarySearchIndexOf(tab, 0, end, searched, QuestionList.comparatorByName());
 	}
 	
@@ -1183,7 +1236,7 @@ public class QuestionList implements Iterable<Question>{
 	}
 	
 	/** TODO docs */
-	public static QuestionList getByName(String listName) {
-		return Users.getByName(listName);
+	public static QuestionList getByName(String ownerId, String listName) {
+		return Users.getByName(ownerId, listName);
 	}
 }
@@ -0,0 +1,186 @@
+package com.linked.quizbot.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.linked.quizbot.Constants;
+
+/**
+ * The on-disk format of lists, list snapshots and user data.
+ * <p>
+ * A codec only provides the Jackson factory of its format, so the streaming {@code Parser}
+ * and {@code Writer} classes read and write every format with the same token logic.
+ * Files are told apart by their extension, files of another format than
+ * {@link Constants#STORAGECODEC} are still read and are replaced on their next export,
+ * {@link StorageMigration} converts them all at once.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see StorageMigration
+ */
+public interface StorageCodec {
+	/** The indented text JSON format, the default. */
+	StorageCodec JSON = new Json();
+	/** Jackson's binary Smile format, smaller and faster to parse. */
+	StorageCodec SMILE = new Smile();
+
+	/**
+	 * @return the name of the format, as typed in the command line.
+	 * @pure
+	 */
+	String getName();
+
+	/**
+	 * @return the file extension of the format, including the dot.
+	 * @pure
+	 */
+	String getExtension();
+
+	/**
+	 * @return the factory creating parsers and generators of the format.
+	 * @pure
+	 */
+	JsonFactory getFactory();
+
+	/**
+	 * @param f the file to read.
+	 * @return a parser over the file.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	default JsonParser createParser(File f) throws IOException{
+		return getFactory().createParser(f);
+	}
+
+	/**
+	 * @param out the destination, left open when the generator is closed.
+	 * @return a generator writing to {@code out}.
+	 * @throws IOException if the generator cannot be created.
+	 */
+	default JsonGenerator createGenerator(OutputStream out) throws IOException{
+		JsonGenerator jg = getFactory().createGenerator(out, JsonEncoding.UTF8);
+		jg.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		return jg;
+	}
+
+	/**
+	 * @return every known codec.
+	 */
+	static List<StorageCodec> all(){
+		return List.of(JSON, SMILE);
+	}
+
+	/**
+	 * @param name the name of a format.
+	 * @return the codec of that name, or {@code null} if it is unknown.
+	 */
+	static StorageCodec forName(String name){
+		for (StorageCodec codec : all()){
+			if (codec.getName().equalsIgnoreCase(name)) return codec;
+		}
+		return null;
+	}
+
+	/**
+	 * @param path a file path.
+	 * @return the codec matching the extension of the path, {@link #JSON} when none matches.
+	 */
+	static StorageCodec forPath(String path){
+		for (StorageCodec codec : all()){
+			if (path.endsWith(codec.getExtension())) return codec;
+		}
+		return JSON;
+	}
+
+	/**
+	 * @param fileName the name of a file.
+	 * @return the name without its codec extension, or {@code null} if it is not a storage file.
+	 */
+	static String stripExtension(String fileName){
+		for (StorageCodec codec : all()){
+			if (fileName.endsWith(codec.getExtension())){
+				return fileName.substring(0, fileName.length()-codec.getExtension().length());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param base a path without extension.
+	 * @return the path the current codec writes to.
+	 */
+	static String path(String base){
+		return base+Constants.STORAGECODEC.getExtension();
+	}
+
+	/**
+	 * Looks for an existing file in the current format first, then in the others.
+	 * @param base a path without extension.
+	 * @return the path of the existing file, or {@code null} if there is none.
+	 */
+	static String find(String base){
+		if (new File(path(base)).exists()){
+			return path(base);
+		}
+		for (StorageCodec codec : all()){
+			if (new File(base+codec.getExtension()).exists()) return base+codec.getExtension();
+		}
+		return null;
+	}
+
+	/**
+	 * Deletes the copies of a file in formats other than the current one, once it has been exported.
+	 * @param base a path without extension.
+	 */
+	static void removeStale(String base){
+		for (StorageCodec codec : all()){
+			if (codec != Constants.STORAGECODEC){
+				DurableWrites.delete(base+codec.getExtension());
+			}
+		}
+	}
+
+	/**
+	 * Text JSON, indented with tabs as the files have always been.
+	 */
+	final class Json implements StorageCodec {
+		private final JsonFactory factory = new JsonFactory();
+
+		private Json(){}
+
+		@Override
+		public String getName(){ return "json";}
+		@Override
+		public String getExtension(){ return ".json";}
+		@Override
+		public JsonFactory getFactory(){ return factory;}
+		@Override
+		public JsonGenerator createGenerator(OutputStream out) throws IOException{
+			return QuestionList.Writer.prettyPrint(factory.createGenerator(out, JsonEncoding.UTF8));
+		}
+	}
+
+	/**
+	 * Binary Smile, repeated property names are written once and referenced after.
+	 */
+	final class Smile implements StorageCodec {
+		private final SmileFactory factory = new SmileFactory();
+
+		private Smile(){}
+
+		@Override
+		public String getName(){ return "smile";}
+		@Override
+		public String getExtension(){ return ".smile";}
+		@Override
+		public JsonFactory getFactory(){ return factory;}
+	}
+}
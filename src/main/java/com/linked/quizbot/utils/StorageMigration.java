@@ -0,0 +1,108 @@
+package com.linked.quizbot.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.linked.quizbot.Constants;
+
+/**
+ * Converts every stored list, list snapshot and user data file to one {@link StorageCodec}.
+ * <p>
+ * Files are copied token by token from their current format to the target one, so the
+ * conversion does not depend on the content of the files, then the source file is deleted.
+ * The attempt journals stay in JSON lines and are left untouched.
+ * </p>
+ *
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see StorageCodec
+ */
+public class StorageMigration {
+
+	/**
+	 * Makes {@code target} the current codec and converts every file stored in another format.
+	 * @param target the format to convert to.
+	 * @return the number of converted files.
+	 * @requires target != null
+	 * @ensures Constants.STORAGECODEC == target
+	 */
+	public static int migrate(StorageCodec target){
+		long start = System.nanoTime();
+		// pending writes land in the old format first, then get converted with the rest
+		Persistence.drain();
+		// a flush between the listing and a conversion would have its newer file replaced by the stale copy,
+		// so flushes wait for the whole conversion and what changed since the drain is converted too
+		return Persistence.callExclusive(() -> {
+			Persistence.flush();
+			Constants.STORAGECODEC = target;
+			return convertAll(target, start);
+		});
+	}
+
+	private static int convertAll(StorageCodec target, long start){
+		int converted = 0;
+		long bytesBefore = 0, bytesAfter = 0;
+		for (String root : List.of(Constants.LISTSPATH, Constants.USERDATAPATH)){
+			if (!new File(root).isDirectory()) continue;
+			List<Path> files;
+			try (Stream<Path> walk = Files.walk(Paths.get(root))){
+				files = walk.filter(Files::isRegularFile)
+					.filter(p -> {
+						String base = StorageCodec.stripExtension(p.getFileName().toString());
+						return base != null && StorageCodec.forPath(p.toString()) != target;
+					}).toList();
+			} catch (IOException e){
+				System.err.println(Constants.ERROR + "An error occurred while listing the files of "+root);
+				e.printStackTrace();
+				continue;
+			}
+			for (Path source : files){
+				String base = source.toString();
+				base = base.substring(0, base.length()-StorageCodec.forPath(base).getExtension().length());
+				Path dest = Paths.get(base+target.getExtension());
+				try {
+					long size = Files.size(source);
+					convert(source, dest, target);
+					bytesBefore += size;
+					bytesAfter += Files.size(dest);
+					Files.delete(source);
+					++converted;
+				} catch (IOException e){
+					System.err.println(Constants.ERROR + "An error occurred while converting "+source);
+					e.printStackTrace();
+				}
+			}
+		}
+		System.out.println(String.format(Constants.INFO + "Migrated %d files to %s, %d bytes -> %d bytes, in %.2f ms",
+			converted, target.getName(), bytesBefore, bytesAfter, (System.nanoTime() - start) / 1000000.00));
+		return converted;
+	}
+
+	/**
+	 * Copies the structure of {@code source} into {@code dest}, written with {@code target}.
+	 * @param source a file of any known format.
+	 * @param dest the file to write, replaced if it exists.
+	 * @param target the format of {@code dest}.
+	 * @throws IOException if either file cannot be read or written.
+	 */
+	public static void convert(Path source, Path dest, StorageCodec target) throws IOException{
+		StorageCodec from = StorageCodec.forPath(source.toString());
+		try (JsonParser jp = from.createParser(source.toFile())){
+			DurableWrites.write(dest.toString(), out -> {
+				try (JsonGenerator jg = target.createGenerator(out)){
+					while (jp.nextToken() != null){
+						jg.copyCurrentStructure(jp);
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.linked.quizbot.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel, deadlines are hashed into a ring of slots by the tick they fall on.
+ * <p>
+ * Scheduling is O(1) and advancing the wheel only visits the slots of the elapsed ticks, whatever
+ * the number of pending deadlines. A deadline further away than one turn of the wheel stays in its
+ * slot and is skipped until the turn it belongs to. The wheel keeps no clock of its own, the caller
+ * passes the current time, so a timer thread or a test can drive it.
+ * </p>
+ *
+ * @param <T> the type of the values whose deadlines are tracked.
+ * @author alinked0
+ * @version 1.0
+ * @since 2025-02-01
+ * @see com.linked.quizbot.core.SessionRegistry#expireIdle(long)
+ */
+public class TimerWheel<T> {
+	private final List<ArrayDeque<Entry<T>>> slots;
+	private final int mask;
+	private final long tickMillis;
+	private long currentTick;
+	private int size = 0;
+
+	private static final class Entry<T> {
+		private final T value;
+		private final long deadlineTick;
+
+		private Entry(T value, long deadlineTick){
+			this.value = value;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	/**
+	 * @param wheelSize the number of slots, rounded up to a power of two.
+	 * @param tickMillis the duration of one tick, the precision of the deadlines.
+	 * @param nowMillis the current time.
+	 * @requires wheelSize > 0 && tickMillis > 0
+	 */
+	public TimerWheel(int wheelSize, long tickMillis, long nowMillis){
+		int n = Integer.highestOneBit(Math.max(1, wheelSize-1))<<1;
+		this.slots = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i){
+			slots.add(new ArrayDeque<>());
+		}
+		this.mask = n-1;
+		this.tickMillis = tickMillis;
+		this.currentTick = nowMillis/tickMillis;
+	}
+
+	/**
+	 * Adds a deadline, a deadline already passed fires on the next tick.
+	 * @param value the value handed back by {@link #advance(long)} once the deadline is reached.
+	 * @param deadlineMillis the time the deadline is reached.
+	 */
+	public synchronized void schedule(T value, long deadlineMillis){
+		long tick = Math.max(currentTick+1, (deadlineMillis+tickMillis-1)/tickMillis);
+		slots.get((int)(tick & mask)).add(new Entry<>(value, tick));
+		++size;
+	}
+
+	/**
+	 * Moves the wheel to {@code nowMillis} and removes every deadline reached meanwhile.
+	 * @param nowMillis the current time.
+	 * @return the values whose deadline is reached, in no particular order.
+	 */
+	public synchronized List<T> advance(long nowMillis){
+		List<T> res = new ArrayList<>();
+		long target = nowMillis/tickMillis;
+		if (target-currentTick > mask){
+			// a whole turn or more elapsed, every slot is visited once
+			for (ArrayDeque<Entry<T>> slot : slots){
+				expire(slot, target, res);
+			}
+			currentTick = target;
+		}
+		while (currentTick < target){
+			++currentTick;
+			expire(slots.get((int)(currentTick & mask)), currentTick, res);
+		}
+		size -= res.size();
+		return res;
+	}
+
+	private static <T> void expire(ArrayDeque<Entry<T>> slot, long tick, List<T> res){
+		Iterator<Entry<T>> it = slot.iterator();
+		while (it.hasNext()){
+			Entry<T> e = it.next();
+			if (e.deadlineTick <= tick){
+				res.add(e.value);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of pending deadlines.
+	 */
+	public synchronized int size(){
+		return size;
+	}
+
+	/**
+	 * Drops every pending deadline.
+	 */
+	public synchronized void clear(){
+		for (ArrayDeque<Entry<T>> slot : slots){
+			slot.clear();
+		}
+		size = 0;
+	}
+}
@@ -1,25 +1,30 @@
 package com.linked.quizbot.utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jetbrains.annotations.NotNull;
 
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
 import com.linked.quizbot.Constants;
 
@@ -43,12 +48,24 @@ import com.linked.quizbot.Constants;
 public class User implements Iterable<QuestionList>{
 	private final String userId;
 	private final Map<String, QuestionList> lists= new HashMap<>();
+	// lower-cased name -> keys in lists, kept in step with lists by putList and removeList
+	private final NavigableMap<String, Set<String>> listKeysByLowerName= new TreeMap<>();
 	private final Map<String, String> tagEmojiByTagName= new HashMap<>();
 	private final Map<String, Set<String>> questionListPerTags= new HashMap<>();
 	private final Map<String, List<Attempt>> attemptsByListId= new HashMap<>();
+	// the attempts no longer held in attemptsByListId, folded by compactAttemptJournal
+	private final Map<String, AttemptRollup> foldedByListId= new HashMap<>();
+	// built on first read from the attempts, then kept up to date by addAttempt
+	private final Map<String, ListStats> statsByListId= new ConcurrentHashMap<>();
 	private String prefix;
 	private Boolean useButtons;
 	private Boolean useAutoNext;
+	private int journalAppends = 0;
+	// bumped by every mutation, compared with the version last written to disk
+	private final AtomicLong version = new AtomicLong();
+	private volatile long exportedVersion = 0;
+	// set while Users no longer holds this instance, a change made through it must not be written over a reloaded copy
+	private volatile boolean evicted = false;
 	
 	/**
 	 * Inner class implementing the Builder pattern for creating and initializing {@link User} objects.
@@ -222,7 +239,7 @@ public class User implements Iterable<QuestionList>{
 			if (!f.exists()){
 				throw new FileNotFoundException(filePathToJson);
 			}
-			JsonParser jp =  new JsonFactory().createParser(f);
+			JsonParser jp =  StorageCodec.forPath(filePathToJson).createParser(f);
 			return parse(jp, filePathToJson);
 		}
 		
@@ -331,6 +348,58 @@ public class User implements Iterable<QuestionList>{
 		}
 	}
 	
+	/**
+	 * User.Writer streams {@link User} objects as JSON, in the format read by {@link Parser}.
+	 * <p>Attempts are not part of it, they are kept in the user's {@link AttemptJournal}.</p>
+	 */
+	public static class Writer {
+		/**
+		 * Writes a user's data as a JSON object at the generator's current position.
+		 * @param jg the generator to write to.
+		 * @param user the user to write.
+		 * @throws IOException if the generator fails to write.
+		 * @requires jg != null && user != null
+		 */
+		public static void write(JsonGenerator jg, User user) throws IOException{
+			jg.writeStartObject();
+			jg.writeStringField("id", user.getId());
+			jg.writeObjectFieldStart("tagEmojiByTagName");
+			for (Map.Entry<String, String> e : user.tagEmojiByTagName.entrySet()){
+				jg.writeStringField(e.getKey(), e.getValue());
+			}
+			jg.writeEndObject();
+			if (user.getPrefix()!=null) jg.writeStringField("prefix", user.getPrefix());
+			jg.writeBooleanField("useButtons", user.useButtons());
+			jg.writeBooleanField("useAutoNext", user.useAutoNext());
+			jg.writeEndObject();
+		}
+		
+		/**
+		 * Writes a user's data as indented UTF-8 JSON to a stream, the stream is left open.
+		 * @param user the user to write.
+		 * @param out the destination.
+		 * @throws IOException if writing fails.
+		 */
+		public static void write(User user, OutputStream out) throws IOException{
+			try (JsonGenerator jg = QuestionList.Writer.prettyPrint(Constants.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8))){
+				write(jg, user);
+			}
+		}
+		
+		/**
+		 * @param user the user to write.
+		 * @return the user's data as indented JSON.
+		 * @throws IOException if writing fails.
+		 */
+		public static String toJson(User user) throws IOException{
+			StringWriter out = new StringWriter();
+			try (JsonGenerator jg = QuestionList.Writer.prettyPrint(Constants.MAPPER.getFactory().createGenerator(out))){
+				write(jg, user);
+			}
+			return out.toString();
+		}
+	}
+	
 	
 	/**
 	 * Constructs a {@code User} object from a {@link Builder}.
@@ -349,9 +418,10 @@ public class User implements Iterable<QuestionList>{
 			throw new NullPointerException();
 		}
 		this.userId = builder.userId;
-		if (new File(getPathToUserData()).exists()){
+		String pathToUserData = StorageCodec.find(pathToUserDataWithoutExtension(userId));
+		if (pathToUserData != null){
 			try {
-				User.Builder builder0 = User.Parser.fromJsonFile(getPathToUserData());
+				User.Builder builder0 = User.Parser.fromJsonFile(pathToUserData);
 				this.prefix = builder0.prefix;
 				this.tagEmojiByTagName.putAll(builder0.tagEmojiByTagName);
 				this.questionListPerTags.putAll(builder0.questionListPerTags);
@@ -359,7 +429,7 @@ public class User implements Iterable<QuestionList>{
 				this.useButtons = builder0.useButtons;
 				this.useAutoNext = builder0.useAutoNext;
 			} catch (IOException e){
-				System.err.printf(Constants.ERROR + Constants.RED+"Import failed: %s", getPathToUserData());
+				System.err.printf(Constants.ERROR + Constants.RED+"Import failed: %s", pathToUserData);
 				e.printStackTrace();
 				System.err.print(Constants.RESET);
 			}
@@ -368,28 +438,13 @@ public class User implements Iterable<QuestionList>{
 		this.tagEmojiByTagName.putAll(builder.tagEmojiByTagName);
 		this.questionListPerTags.putAll(builder.questionListPerTags);
 		this.attemptsByListId.putAll(builder.attemptsByListId);
+		replayAttemptJournal();
 		for (QuestionList q : builder.list){
-			this.lists.put(q.getId(), q);
+			putList(q.getId(), q);
 		}
 		this.useButtons = builder.useButtons;
 		this.useAutoNext = builder.useAutoNext;
-		Map<String, String> tags;
-		for(String l: lists.keySet()){
-			QuestionList.Hasher.addGeneratedCode(l);
-		}
-		for(QuestionList l: importLists().values()){
-			addList(l);
-		}
-		for(QuestionList l: lists.values()){
-			tags = l.getEmojiPerTagName();
-			tagEmojiByTagName.putAll(tags);
-			for (String tagName : tags.keySet()){
-				if (questionListPerTags.get(tagName)==null){
-					questionListPerTags.put(tagName, new HashSet<>());
-				}
-				questionListPerTags.get(tagName).add(l.getId());
-			}
-		}
+		loadLists();
 	}
 	
 	/**
@@ -405,8 +460,8 @@ public class User implements Iterable<QuestionList>{
 	 */
 	public User(@NotNull String userId){
 		this.userId = userId;
-		String pathToUserData = Constants.USERDATAPATH+Constants.SEPARATOR+userId+Constants.SEPARATOR+"user-data.json";
-		if (new File(pathToUserData).exists()){
+		String pathToUserData = StorageCodec.find(pathToUserDataWithoutExtension(userId));
+		if (pathToUserData != null){
 			try {
 				User.Builder builder0 = User.Parser.fromJsonFile(pathToUserData);
 				this.prefix = builder0.prefix;
@@ -416,33 +471,84 @@ public class User implements Iterable<QuestionList>{
 				this.useButtons = builder0.useButtons;
 				this.useAutoNext = builder0.useAutoNext;
 				for (QuestionList q : builder0.list){
-					this.lists.put(q.getId(), q);
+					putList(q.getId(), q);
 				}
 			} catch (IOException e){
-				System.err.printf(Constants.ERROR + Constants.RED+"Import failed: %s", getPathToUserData());
+				System.err.printf(Constants.ERROR + Constants.RED+"Import failed: %s", pathToUserData);
 				e.printStackTrace();
 				System.err.print(Constants.RESET);
 			}
+		} else {
+			// a user with lists only, the preferences are the defaults of the Builder
+			this.useButtons = true;
+			this.useAutoNext = false;
+		}
+		replayAttemptJournal();
+		loadLists();
+	}
+	
+	/**
+	 * Adds the lists stored on disk for this user to the ones already held, then indexes every list
+	 * by id, name and tag. Unlike {@link #addList(QuestionList)} nothing is marked dirty, as what was
+	 * just read is already on disk.
+	 * @ensures Users.importLists(userId).keySet().forall(id -> lists.containsKey(id))
+	 * @ensures Persistence.pendingCount() unchanged
+	 */
+	private void loadLists(){
+		for (QuestionList l : Users.importLists(userId).values()){
+			QuestionList k = lists.get(l.getId());
+			if (k == null){
+				putList(l.getId(), l);
+			} else {
+				k.addAll(l);
+			}
 		}
 		Map<String, String> tags;
-		for(String l: lists.keySet()){
-			QuestionList.Hasher.addGeneratedCode(l);
+		for (QuestionList l : lists.values()){
+			QuestionList.Hasher.addGeneratedCode(l.getId());
+			Users.indexList(l.getId(), userId);
+			tags = l.getEmojiPerTagName();
+			tagEmojiByTagName.putAll(tags);
+			for (String tagName : tags.keySet()){
+				indexTag(l.getId(), tagName);
+			}
 		}
-		for(QuestionList l: importLists().values()){
-			addList(l);
+	}
+	
+	/**
+	 * Rebuilds a user from the image held by a {@link Checkpoint}, without reading any file.
+	 * @param builder the user's preferences and tags, with all of its lists.
+	 * @param attemptsByListId the user's attempts by list id, newest first.
+	 * @return the user, not yet registered in {@link Users}.
+	 * @requires builder.userId != null
+	 */
+	static User restore(User.Builder builder, Map<String, List<Attempt>> attemptsByListId, Map<String, AttemptRollup> foldedByListId){
+		return new User(builder, attemptsByListId, foldedByListId);
+	}
+
+	private User(User.Builder builder, Map<String, List<Attempt>> attemptsByListId, Map<String, AttemptRollup> foldedByListId){
+		this.userId = builder.userId;
+		this.prefix = builder.prefix;
+		this.useButtons = builder.useButtons;
+		this.useAutoNext = builder.useAutoNext;
+		this.tagEmojiByTagName.putAll(builder.tagEmojiByTagName);
+		for (Map.Entry<String, List<Attempt>> e : attemptsByListId.entrySet()){
+			this.attemptsByListId.put(e.getKey(), new ArrayList<>(e.getValue()));
 		}
-		for(QuestionList l: lists.values()){
+		this.foldedByListId.putAll(foldedByListId);
+		Map<String, String> tags;
+		for (QuestionList l : builder.list){
+			putList(l.getId(), l);
+			QuestionList.Hasher.addGeneratedCode(l.getId());
+			Users.indexList(l.getId(), userId);
 			tags = l.getEmojiPerTagName();
 			tagEmojiByTagName.putAll(tags);
 			for (String tagName : tags.keySet()){
-				if (questionListPerTags.get(tagName)==null){
-					questionListPerTags.put(tagName, new HashSet<>());
-				}
-				questionListPerTags.get(tagName).add(l.getId());
+				indexTag(l.getId(), tagName);
 			}
 		}
 	}
-	
+
 	/**
 	 * Checks if the user has enabled the use of buttons for interaction.
 	 * @return {@code true} if buttons are enabled, {@code false} otherwise.
@@ -456,7 +562,7 @@ public class User implements Iterable<QuestionList>{
 	 * @param b {@code true} to enable buttons.
 	 * @ensures this.useButtons == b
 	 */
-	public void useButtons(Boolean b){ useButtons = b;}
+	public void useButtons(Boolean b){ useButtons = b; changed();}
 	
 	/**
 	 * Checks if the user has enabled the auto-next feature.
@@ -471,7 +577,46 @@ public class User implements Iterable<QuestionList>{
 	 * @param b {@code true} to enable auto-next.
 	 * @ensures this.useAutoNext == b
 	 */
-	public void useAutoNext(Boolean b){ useAutoNext = b;}
+	public void useAutoNext(Boolean b){ useAutoNext = b; changed();}
+	
+	/**
+	 * @return {@code true} if the user's data changed since it was last exported by {@link #exportUserData()}.
+	 * @pure
+	 */
+	public boolean isModified(){
+		return version.get() != exportedVersion;
+	}
+	
+	// every mutation of the user data goes through here
+	private void modified(){
+		changed();
+		Persistence.markDirty(this);
+	}
+	
+	// an evicted instance is taken back by Users, or the change fails if the user was loaded again meanwhile
+	private void changed(){
+		Users.readmit(this);
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * @return {@code true} if {@link Users} dropped this instance from memory.
+	 * @pure
+	 */
+	boolean isEvicted(){
+		return evicted;
+	}
+	
+	/**
+	 * Flags this instance and its lists as dropped from, or taken back into, {@link Users}.
+	 * @param evicted {@code true} once the instance is no longer resident.
+	 */
+	void setEvicted(boolean evicted){
+		this.evicted = evicted;
+		for (QuestionList l : lists.values()){
+			l.setEvictedOwner(evicted?this:null);
+		}
+	}
 	
 	/**
 	 * Gets the custom command prefix for the user.
@@ -482,14 +627,14 @@ public class User implements Iterable<QuestionList>{
 	public String getPrefix(){return prefix;}
 	
 	/**
-	 * Sets a new custom command prefix for the user and immediately exports the user data.
+	 * Sets a new custom command prefix for the user and schedules an export of the user data.
 	 * @param prefix The new command prefix.
 	 * @ensures this.prefix == prefix
-	 * @ensures exportUserData() is called
+	 * @ensures Persistence.isDirty(this)
 	 */
 	public void setPrefix(String prefix){
 		this.prefix= prefix;
-		exportUserData();
+		modified();
 	}
 	
 	/**
@@ -512,13 +657,21 @@ public class User implements Iterable<QuestionList>{
 	public String getId(){ return userId;}
 	
 	/**
-	 * Gets the absolute file path to the user's data JSON file.
+	 * Gets the absolute file path to the user's data file, in the format of {@link Constants#STORAGECODEC}.
 	 * @return The file path string.
-	 * @ensures \result.endsWith("user-data.json")
+	 * @ensures \result.endsWith("user-data"+Constants.STORAGECODEC.getExtension())
 	 * @ensures \result.contains(getId())
 	 */
 	public String getPathToUserData(){
-		return Constants.USERDATAPATH+Constants.SEPARATOR+getId()+Constants.SEPARATOR+"user-data.json";
+		return StorageCodec.path(pathToUserDataWithoutExtension(getId()));
+	}
+	
+	/**
+	 * @param userId the id of a user.
+	 * @return the path to the user's data file, without the extension of its format.
+	 */
+	public static String pathToUserDataWithoutExtension(String userId){
+		return Constants.USERDATAPATH+Constants.SEPARATOR+userId+Constants.SEPARATOR+"user-data";
 	}
 	
 	/**
@@ -572,18 +725,84 @@ public class User implements Iterable<QuestionList>{
 	}
 	
 	/**
-	 * Retrieves a {@link QuestionList} by its name.
-	 * <p>Temporarily sorts a copy of the list by name to perform a binary search.</p>
+	 * Retrieves a {@link QuestionList} by its exact name.
+	 * <p>Looks the name up in the user's name index instead of sorting the lists.</p>
 	 * @param listName The name of the quiz list.
 	 * @return The matching {@link QuestionList}, or {@code null} if not found.
 	 * @ensures (\result == null) || (\result.getName().equals(listName))
 	 */
 	public QuestionList getByName(String listName){
-		List<QuestionList> listsSortedByName = new ArrayList<>(lists.values());
-		listsSortedByName.sort(QuestionList.comparatorByName());
-		int index = QuestionList.myBinarySearchIndexOf(listsSortedByName, listName);
-		if (index<0) return null;
-		return listsSortedByName.get(index);
+		if (listName == null) return null;
+		for (QuestionList l : listsInBucket(listKeysByLowerName.get(lowerName(listName)))){
+			if (listName.equals(l.getName())){
+				return l;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Retrieves a {@link QuestionList} by its name, ignoring case.
+	 * <p>An exact match is preferred when several lists only differ by case.</p>
+	 * @param listName The name of the quiz list.
+	 * @return The matching {@link QuestionList}, or {@code null} if not found.
+	 * @ensures (\result == null) || (\result.getName().equalsIgnoreCase(listName))
+	 */
+	public QuestionList getByNameIgnoreCase(String listName){
+		QuestionList exact = getByName(listName);
+		if (exact != null || listName == null) return exact;
+		List<QuestionList> res = listsInBucket(listKeysByLowerName.get(lowerName(listName)));
+		return res.isEmpty()?null:res.getFirst();
+	}
+	
+	/**
+	 * Retrieves every {@link QuestionList} whose name starts with the given prefix, ignoring case.
+	 * @param prefix The start of the names.
+	 * @return The matching lists, sorted by lower-cased name.
+	 * @ensures (\forall QuestionList l; \result.contains(l); l.getName().toLowerCase().startsWith(prefix.toLowerCase()))
+	 */
+	public List<QuestionList> getByNamePrefix(String prefix){
+		String from = lowerName(prefix);
+		List<QuestionList> res = new ArrayList<>();
+		for (Set<String> keys : listKeysByLowerName.subMap(from, true, from+Character.MAX_VALUE, true).values()){
+			res.addAll(listsInBucket(keys));
+		}
+		return res;
+	}
+	
+	private static String lowerName(String name){
+		return name.toLowerCase(Locale.ROOT);
+	}
+	
+	private List<QuestionList> listsInBucket(Set<String> keys){
+		List<QuestionList> res = new ArrayList<>();
+		if (keys != null){
+			for (String key : keys){
+				res.add(lists.get(key));
+			}
+		}
+		return res;
+	}
+	
+	private void putList(String key, QuestionList l){
+		QuestionList prev = lists.put(key, l);
+		if (prev != null) unindexName(key, prev.getName());
+		if (l.getName() != null){
+			listKeysByLowerName.computeIfAbsent(lowerName(l.getName()), k -> new HashSet<>()).add(key);
+		}
+	}
+	
+	private void removeList(String key){
+		QuestionList prev = lists.remove(key);
+		if (prev != null) unindexName(key, prev.getName());
+	}
+	
+	private void unindexName(String key, String name){
+		if (name == null) return;
+		Set<String> keys = listKeysByLowerName.get(lowerName(name));
+		if (keys != null && keys.remove(key) && keys.isEmpty()){
+			listKeysByLowerName.remove(lowerName(name));
+		}
 	}
 	
 	/**
@@ -599,14 +818,14 @@ public class User implements Iterable<QuestionList>{
 	/**
 	 * Adds a new {@link QuestionList} to the user's collection or updates an existing one.
 	 * <p>If a list with the same ID or name exists, the questions from the new list are **merged** into the existing one.
-	 * The list is sorted by ID, its options are rearranged, and the list is exported to its local JSON file.
+	 * The list is sorted by ID, its options are rearranged, and the list is scheduled for export to its local JSON file.
 	 * </p>
 	 * @param l The {@link QuestionList} to add or merge.
 	 * @return {@code true} upon successful addition/update.
 	 * @requires l != null
 	 * @ensures lists.keys().contains(l.getId())
 	 * @ensures importLists(this.getId()).keys().contains(l.getId())
-	 * @ensures Users.get(this.getId())!=null
+	 * @ensures Persistence.isDirty(this)
 	 */
 	public Boolean addList(@NotNull QuestionList l){
 		QuestionList k = getById(l.getId());
@@ -621,15 +840,21 @@ public class User implements Iterable<QuestionList>{
 		k.addAll(l);
 		k.rearrageOptions((e, f) -> e.isCorrect()?-1:1);
 		k.setOwnerId(userId);
-		lists.put(l.getId(), k);
-		k.exportListQuestionAsJson();
+		putList(l.getId(), k);
+		Users.indexList(l.getId(), userId);
+		boolean tagged = false;
 		for(String tagName : k.getEmojiPerTagName().keySet()){
 			if (getEmojiFomTagName(tagName)==null){
-				this.createTag(tagName, k.getEmoji(tagName));;
+				defineTag(tagName, k.getEmoji(tagName));
 			}
-			this.addTagToList(l, tagName);
+			tagged |= tagList(l, tagName);
+		}
+		// copied once each, with every tag in place
+		Persistence.markDirty(k);
+		if (tagged && l != k){
+			Persistence.markDirty(l);
 		}
-		Users.update(this);
+		modified();
 		return true;
 	}
 	
@@ -640,7 +865,7 @@ public class User implements Iterable<QuestionList>{
 	 * @return {@code true} if the tag was deleted, {@code false} if the tag did not exist.
 	 * @requires tagName != null
 	 * @ensures \result == tagEmojiByTagName.containsKey(tagName)
-	 * @ensures (\result == true) ==> getEmojiFomTagName(tagName)==null && getListsByTag(tagName)==null && exportUserData() is called.
+	 * @ensures (\result == true) ==> getEmojiFomTagName(tagName)==null && getListsByTag(tagName)==null && Persistence.isDirty(this).
 	 */
 	public Boolean deleteTag(String tagName) {
 		if (!tagEmojiByTagName.containsKey(tagName)) {
@@ -648,7 +873,7 @@ public class User implements Iterable<QuestionList>{
 		}
 		tagEmojiByTagName.remove(tagName);
 		questionListPerTags.remove(tagName);
-		exportUserData();
+		modified();
 		return true;
 	}
 	
@@ -666,33 +891,53 @@ public class User implements Iterable<QuestionList>{
 		if (k!=null){
 			return false;
 		}
+		// the name index is keyed by the old name
+		unindexName(l.getId(), l.getName());
 		l.setName(newName);
 		return addList(l);
 	}
 	
 	/**
-	 * Creates a new tag with an associated emoji and exports the user data.
+	 * Creates a new tag with an associated emoji and schedules an export of the user data.
 	 * @param tagName The name of the new tag.
 	 * @param emoji The emoji to associate with the tag.
 	 * @return {@code true} if the tag was created, {@code false} if a tag with that name already exists.
 	 * @requires tagName != null && emoji != null
 	 * @ensures \result == !tagEmojiByTagName.containsKey(tagName)
-	 * @ensures (\result == true) ==> tagEmojiByTagName.containsKey(tagName) && questionListPerTags.containsKey(tagName) && exportUserData() is called.
+	 * @ensures (\result == true) ==> tagEmojiByTagName.containsKey(tagName) && questionListPerTags.containsKey(tagName) && Persistence.isDirty(this).
 	 */
 	public Boolean createTag(@NotNull String tagName, @NotNull String emoji) {
-	        if (tagEmojiByTagName.containsKey(tagName)) {
+	        if (!defineTag(tagName, emoji)) {
 	                return false; // Tag already exists
 	        }
-	        tagEmojiByTagName.put(tagName, emoji);
-	        questionListPerTags.put(tagName, new HashSet<>());
-	        exportUserData();
-	        Users.update(this);
+	        modified();
 	        return true;
 	}
+	
+	// the steps of createTag and addTagToList, the caller marks the user and the list dirty once it is done
+	private boolean defineTag(String tagName, String emoji) {
+		if (tagEmojiByTagName.containsKey(tagName)) {
+			return false;
+		}
+		tagEmojiByTagName.put(tagName, emoji);
+		questionListPerTags.put(tagName, new HashSet<>());
+		return true;
+	}
+	
+	private boolean tagList(QuestionList l, String tagName) {
+		if (!tagNames().contains(tagName)) {
+			return false;
+		}
+		l.addTag(tagName, tagEmojiByTagName.get(tagName));
+		indexTag(l.getId(), tagName);
+		putList(l.getId(), l);
+		Users.indexList(l.getId(), userId);
+		return true;
+	}
 
 	/**
 	 * Adds an existing user-level tag to a specific {@link QuestionList}.
-	 * <p>Updates the list, exports it, updates the internal {@code questionListPerTags} map, and exports the user data.</p>
+	 * <p>Updates the list, updates the internal {@code questionListPerTags} map, and marks both the list and the user dirty.</p>
 	 * @param l The {@link QuestionList} to tag.
 	 * @param tagName The name of the tag to add.
 	 * @return {@code true} if the tag was successfully added to the list, {@code false} if the list is not in the user's collection or the tag is not defined at the user level.
@@ -701,83 +946,107 @@ public class User implements Iterable<QuestionList>{
 	 * @ensures (\result == true) ==> l.tagNames().contains(tagName)
 	 */
 	public Boolean addTagToList(QuestionList l, String tagName) {
-		String emoji;
-		Set<String> listsTagged;
-		if (!tagNames().contains(tagName)) {
+		if (!tagList(l, tagName)) {
 			return false;
 		}
-		emoji = tagEmojiByTagName.get(tagName);
-		l.addTag(tagName, emoji);
-		listsTagged = questionListPerTags.get(tagName);
-		if (listsTagged==null){
-			listsTagged = new HashSet<>();
-		}
-		listsTagged.add(l.getId());
-		questionListPerTags.put(tagName, listsTagged);
-		lists.put(l.getId(), l);
-		l.exportListQuestionAsJson();
-		exportUserData();
-		Users.update(this);
+		Persistence.markDirty(l);
+		modified();
 		return true;
 	}
 	
 	/**
 	 * Removes a tag from a specific {@link QuestionList}.
-	 * <p>Updates the list, exports it, and then attempts to delete the tag from the *user-level* master maps.
-	 * This may lead to the unintended removal of the master tag definition even if other lists still use it.
+	 * <p>Updates the list and the tag index then marks both the list and the user dirty.
+	 * The user-level tag definition is kept, other lists may still use it.
 	 * </p>
 	 * @param l The {@link QuestionList} to remove the tag from.
 	 * @param tagName The name of the tag to remove.
 	 * @return {@code true} if the tag was successfully removed, {@code false} if the list did not have the tag.
 	 * @requires l != null && tagName != null
 	 * @ensures \result == l.tagNames().contains(tagName)
-	 * @ensures (\result == true) ==> !l.tagNames().contains(tagName) && tagEmojiByTagName.remove(tagName) is called.
+	 * @ensures (\result == true) ==> !l.tagNames().contains(tagName) && !getListsByTag(tagName).contains(l)
 	 */
 	public Boolean removeTagFromList(QuestionList l, String tagName) {
 		if (!l.tagNames().contains(tagName)) {
 			return false; // Tag does not exist in the list
 		}
 		l.removeTag(tagName);
-		l.exportListQuestionAsJson();
-		tagEmojiByTagName.remove(tagName);
-		questionListPerTags.remove(tagName);
-		exportUserData();
+		unindexTag(l.getId(), tagName);
+		Persistence.markDirty(l);
+		modified();
 		return true;
 	}
 
+	/**
+	 * Renames a tag on the user and on every list carrying it.
+	 * <p>Only the lists in the tag's index entry are visited, each of them and the user are marked dirty once.
+	 * If {@code newTagName} is not defined yet it takes the emoji of {@code oldTagName}.</p>
+	 * @param oldTagName The current name of the tag.
+	 * @param newTagName The new name of the tag.
+	 * @return {@code true} if the tag was renamed, {@code false} if {@code oldTagName} is not defined.
+	 * @ensures (\result == true) ==> getEmojiFomTagName(oldTagName)==null && getEmojiFomTagName(newTagName)!=null
+	 */
 	public Boolean renameTag(String oldTagName, String newTagName) {
-		for (QuestionList l : this.getListsByTag(oldTagName)){
-			removeTagFromList(l, oldTagName);
-			addTagToList(l, newTagName);
+		if (!tagEmojiByTagName.containsKey(oldTagName)) {
+			return false;
+		}
+		if (oldTagName.equals(newTagName)) {
+			return true;
+		}
+		String emoji = tagEmojiByTagName.remove(oldTagName);
+		tagEmojiByTagName.putIfAbsent(newTagName, emoji);
+		emoji = tagEmojiByTagName.get(newTagName);
+		Set<String> listIds = questionListPerTags.remove(oldTagName);
+		questionListPerTags.putIfAbsent(newTagName, new HashSet<>());
+		if (listIds != null){
+			for (String listId : listIds){
+				QuestionList l = lists.get(listId);
+				if (l == null) continue;
+				l.removeTag(oldTagName);
+				l.addTag(newTagName, emoji);
+				indexTag(listId, newTagName);
+				Persistence.markDirty(l);
+			}
 		}
-		tagEmojiByTagName.remove(oldTagName);
-		questionListPerTags.remove(oldTagName);
-		exportUserData();
+		modified();
 		return true;
 	}
 	
+	private void indexTag(String listId, String tagName){
+		questionListPerTags.computeIfAbsent(tagName, k -> new HashSet<>()).add(listId);
+	}
+	
+	private void unindexTag(String listId, String tagName){
+		Set<String> listIds = questionListPerTags.get(tagName);
+		if (listIds != null){
+			listIds.remove(listId);
+		}
+	}
+	
 	/**
 	 * Deletes a {@link QuestionList} from the user's collection and attempts to delete its local file.
 	 * <p>
-	 * The method rebuilds the internal tag association maps (O(n^2) complexity) after removal to ensure accuracy.
+	 * Only the tag index entries of the list's own tags are updated, tag definitions are kept.
 	 * </p>
 	 * @param l The {@link QuestionList} to delete.
 	 * @return {@code true} if the list was removed from the collection and its file was deleted, {@code false} otherwise.
 	 * @requires l != null
-	 * @ensures (\result == true) ==> !listsSortedById.contains(l) && the file at l.pathToList() is deleted.
-	 * @ensures tag and list maps are rebuilt.
+	 * @ensures (\result == true) ==> getById(l.getId())==null && the file at l.pathToList() is deleted.
+	 * @ensures (\forall String tagName; !getListsByTag(tagName).contains(l))
 	 */
-	public Boolean deleteList(QuestionList l){ // TODO one deletion really shouldnt be O(n^2) operation
-		this.lists.remove(l.getId());
-		tagEmojiByTagName.clear();
-		questionListPerTags.clear();
-		for(QuestionList l1: lists.values()){
-			Map<String, String> tags = l1.getEmojiPerTagName();
-			tagEmojiByTagName.putAll(l1.getEmojiPerTagName());
-			for (String tagName : tags.keySet()){
-				questionListPerTags.putIfAbsent(tagName, new HashSet<>());
-				questionListPerTags.get(tagName).add(l1.getId());
-			}
+	public Boolean deleteList(QuestionList l){
+		QuestionList k = getById(l.getId());
+		removeList(l.getId());
+		Users.unindexList(l.getId());
+		for (String tagName : (k!=null?k:l).tagNames()){
+			unindexTag(l.getId(), tagName);
+		}
+		Persistence.forget(l);
+		modified();
+		Checkpoint.logDeleteList(getId(), l.getId());
+		if (Constants.LISTSTORE){
+			ListStore.delete(l.getId());
+			return true;
 		}
 		File f = new File(l.pathToList());
 		File dest = new File(f.getParentFile().getAbsolutePath()+Constants.SEPARATOR+"tmp"+Constants.SEPARATOR+f.getName());
@@ -786,26 +1055,151 @@ public class User implements Iterable<QuestionList>{
 		f.renameTo(dest);
 		int t = 0;
 		while(!f.delete()){if (++t>20){return false;}};
+		StorageCodec.removeStale(l.pathToListWithoutExtension());
 		return true;
 	}
 	
-	/*TODO add docs */
-	public void addAttempt(String listId, Attempt att){
+	/**
+	 * Records a finished attempt as the most recent one for its list.
+	 * <p>The attempt is appended to the user's {@link AttemptJournal} rather than rewriting
+	 * the whole history, the journal is compacted every {@link Constants#JOURNALCOMPACTEVERY} appends.
+	 * The list's {@link ListStats} are updated here, the attempt is scored once.
+	 * Games ending together on different session threads may record attempts of the same player,
+	 * the attempts of a user are only read and changed while holding its lock.</p>
+	 * @param listId The id of the list that was played.
+	 * @param att The finished attempt.
+	 * @requires listId != null && att != null
+	 * @ensures getAttempts(listId).getFirst() == att
+	 */
+	public synchronized void addAttempt(String listId, Attempt att){
+		Users.readmit(this);
 		List<Attempt> last = attemptsByListId.getOrDefault(listId, new ArrayList<>());
 		last.addFirst(att);
 		attemptsByListId.put(listId, last);
-		
-		Users.update(this);
+		statsByListId.computeIfPresent(listId, (k, stats) -> stats.with(att));
+		AttemptJournal.append(userId, listId, att);
+		if (++journalAppends >= Constants.JOURNALCOMPACTEVERY){
+			compactAttemptJournal();
+		}
+	}
+	
+	/**
+	 * Applies the retention policy and rewrites the user's {@link AttemptJournal} from memory.
+	 * <p>Only the last {@link Constants#ATTEMPTSKEPT} attempts of each list are kept in full,
+	 * older ones are folded into the list's {@link AttemptRollup}.</p>
+	 * @ensures \forall listId; getAttempts(listId).size() <= Constants.ATTEMPTSKEPT
+	 * @ensures the journal holds the folded rollups and one record per attempt in getAttemptsByListId()
+	 */
+	public synchronized void compactAttemptJournal(){
+		Users.readmit(this);
+		compactJournal();
+	}
+	
+	// also called by the constructors, so it must not hand this user out
+	private void compactJournal(){
+		journalAppends = 0;
+		int kept = Math.max(1, Constants.ATTEMPTSKEPT);
+		for (Map.Entry<String, List<Attempt>> e : attemptsByListId.entrySet()){
+			List<Attempt> attempts = e.getValue();
+			if (attempts.size() <= kept){
+				continue;
+			}
+			List<Attempt> older = attempts.subList(kept, attempts.size());
+			AttemptRollup folded = foldedByListId.computeIfAbsent(e.getKey(), k -> new AttemptRollup());
+			for (Attempt att : older){
+				if (att!=null) folded.add(att);
+			}
+			older.clear();
+		}
+		AttemptJournal.compact(userId, attemptsByListId, foldedByListId);
+	}
+	
+	/**
+	 * Replays the {@link AttemptJournal} on top of the attempts already loaded, which can only
+	 * come from an older {@code user-data.json} or the builder. Those are migrated into the journal,
+	 * and the journal is compacted whenever it held unreadable or duplicated records.
+	 */
+	private void replayAttemptJournal(){
+		boolean legacy = !attemptsByListId.isEmpty();
+		Set<String> seen = new HashSet<>();
+		int[] duplicates = {0};
+		for (Map.Entry<String, List<Attempt>> e : attemptsByListId.entrySet()){
+			e.setValue(new ArrayList<>(e.getValue()));
+			for (Attempt att : e.getValue()){
+				if (att!=null) seen.add(e.getKey()+":"+att.getStart()+":"+att.getEnd());
+			}
+		}
+		int skipped = AttemptJournal.replay(userId, (listId, att) -> {
+			if (!seen.add(listId+":"+att.getStart()+":"+att.getEnd())){
+				++duplicates[0];
+				return;
+			}
+			attemptsByListId.computeIfAbsent(listId, k -> new ArrayList<>()).addFirst(att);
+		}, foldedByListId::put);
+		if (legacy || skipped>0 || duplicates[0]>0){
+			compactJournal();
+		}
+		if (legacy){
+			// drops the attempts still embedded in user-data.json, marked dirty by Users once registered
+			version.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @param listId the id of a list.
+	 * @return a copy of the attempts kept in full for the list, newest first.
+	 */
+	public synchronized List<Attempt> getAttempts(String listId){
+		List<Attempt> attempts = attemptsByListId.get(listId);
+		return attempts!=null?new ArrayList<>(attempts):new ArrayList<>();
+	}
+	
+	/**
+	 * @return a copy of the attempts kept in full, by list id, each newest first.
+	 */
+	public synchronized Map<String, List<Attempt>> getAttemptsByListId(){
+		Map<String, List<Attempt>> res = new HashMap<>();
+		for (Map.Entry<String, List<Attempt>> e : attemptsByListId.entrySet()){
+			res.put(e.getKey(), new ArrayList<>(e.getValue()));
+		}
+		return res;
 	}
 	
-	/*TODO add docs */
-	public List<Attempt> getAttempts(String listId){
-		return attemptsByListId.getOrDefault(listId, List.of());
+	/**
+	 * Summarizes every attempt ever made on a list, those kept in full and those already folded.
+	 * <p>At most {@link Constants#ATTEMPTSKEPT} attempts are scored, plus the ones added since the last compaction.</p>
+	 * @param listId the id of a list.
+	 * @return a new rollup, empty if the list was never played.
+	 * @pure
+	 */
+	public synchronized AttemptRollup getRollup(String listId){
+		AttemptRollup folded = foldedByListId.get(listId);
+		AttemptRollup res = folded!=null?folded.copy():new AttemptRollup();
+		for (Attempt att : attemptsByListId.getOrDefault(listId, List.of())){
+			if (att!=null) res.add(att);
+		}
+		return res;
 	}
 	
-	/*TODO add docs */
-	public Map<String, List<Attempt>> getAttemptsByListId(){
-		return attemptsByListId;
+	/**
+	 * Returns the precomputed figures of a list, for sorting and filtering without scoring any attempt.
+	 * @param listId the id of a list.
+	 * @return the list's stats, {@link ListStats#NONE} if it was never played.
+	 * @ensures \result.getPlayCount() == getRollup(listId).getCount()
+	 */
+	public synchronized ListStats getListStats(String listId){
+		return statsByListId.computeIfAbsent(listId, id -> ListStats.of(getRollup(id)));
+	}
+	
+	/**
+	 * @return a copy of the rollups of the attempts no longer kept in full, by list id.
+	 */
+	public synchronized Map<String, AttemptRollup> getFoldedRollups(){
+		Map<String, AttemptRollup> res = new HashMap<>();
+		for (Map.Entry<String, AttemptRollup> e : foldedByListId.entrySet()){
+			res.put(e.getKey(), e.getValue().copy());
+		}
+		return res;
 	}
 	
 	/**
@@ -960,77 +1354,109 @@ public class User implements Iterable<QuestionList>{
 		
 	/**
 	 * Converts the user's data into a pretty-printed, multi-line JSON string.
-	 * <p>A convenience method that calls {@code toJsonUsingMapper(false)}.</p>
+	 * <p>A convenience method that calls {@link Writer#toJson(User)}.</p>
 	 * @return The user data as a JSON string, or {@code null} if a serialization error occurred.
-	 * @ensures \result is a pretty-printed JSON string of user data.
+	 * @ensures \result is a pretty-printed JSON string of user data, attempts are kept in the {@link AttemptJournal}.
 	 */
 	public String toJson(){
-		/*try {
-			return Constants.MAPPER.writer(new DefaultPrettyPrinter()).writeValueAsString(this);
-		}catch(JsonProcessingException e){System.err.print(Constants.ERROR);e.printStackTrace();}*/
-		return toJsonUsingMapper(false);
+		try {
+			return Writer.toJson(this);
+		} catch (IOException e){
+			System.err.print(Constants.ERROR);
+			e.printStackTrace();
+		}
+		return null;
 	}
 	
 	/**
-	 * Converts the user's data into a JSON string format, with options for single-line or pretty-printed output.
-	 * @param oneLine {@code true} for a compact, single-line JSON string; {@code false} for a pretty-printed, multi-line format.
-	 * @return The user data as a JSON string.
-	 * @throws JsonProcessingException if an error occurs during JSON serialization.
-	 * @requires Constants.MAPPER is initialized.
-	 * @ensures \result is a valid JSON string representation of the user data (ID, tags, prefix, stats, preferences).
+	 * Exports the user's data (prefix, preferences, and tags) to the local file specified by {@link #getPathToUserData()}.
+	 * <p>Creates the directory structure if it does not exist, the data is streamed by {@link Writer}
+	 * and replaces the file atomically through {@link DurableWrites}, then a copy left in another format is deleted.</p>
+	 * @ensures the file at getPathToUserData() is created/updated with the current user data.
 	 */
-	private String toJsonUsingMapper(Boolean oneLine) {
-		String nextLine = oneLine?"":"\n";
-		String res="", spc = oneLine?" ":"  ";
-		try {
-		res += "{"+nextLine;
-		res += String.format(spc+"\"%s\":%s%s", "id", Constants.MAPPER.writeValueAsString(getId()), ","+nextLine);
-		res += String.format(spc+"\"%s\":%s%s", "tagEmojiByTagName",Constants.MAPPER.writeValueAsString(tagEmojiByTagName), ","+nextLine);
-		if (getPrefix()!=null) res += String.format(spc+"\"%s\":%s%s", "prefix", Constants.MAPPER.writeValueAsString(getPrefix()), ","+nextLine);
-		res += String.format(spc+"\"%s\":%s%s", "useButtons", useButtons(), ","+nextLine);
-		res += String.format(spc+"\"%s\":%s%s", "useAutoNext", useAutoNext(), ","+nextLine);
-		res += String.format(spc+"\"%s\":%s%s", "attemptsByListId", Constants.MAPPER.writeValueAsString(attemptsByListId), nextLine);
-		res +="}";
-		return res;
-		}catch(JsonProcessingException e){System.err.print(Constants.ERROR);e.printStackTrace();}
-		return null;
+	public void exportUserData(){
+		long v = version.get();
+		write(replaced -> {
+			if (replaced) exportedVersion = v;
+		});
 	}
 	
 	/**
-	 * Exports the user's data (prefix, stats, preferences, and tags) to the local JSON file specified by {@link #getPathToUserData()}.
-	 * <p>Creates the directory structure if it does not exist.</p>
-	 * @ensures the file at getPathToUserData() is created/updated with the current user data in JSON format.
+	 * Exports a copy taken by {@link #copy()}, this user then counts as exported up to the version the copy was taken at.
+	 * <p>Inside a {@link DurableWrites#batch(Runnable)} that version is only recorded once the batch put the file in place.</p>
+	 * @param copy the copy of this user.
+	 * @param v the result of {@link #getVersion()} when the copy was taken.
+	 * @param onNotReplaced run if the copy was written but the batch failed to put it in place.
+	 * @return {@code true} if the copy was written.
+	 * @requires copy.getId().equals(getId())
 	 */
-	public void exportUserData(){
+	boolean exportCopy(User copy, long v, Runnable onNotReplaced){
+		return copy.write(replaced -> {
+			if (replaced){
+				exportedVersion = v;
+			} else {
+				onNotReplaced.run();
+			}
+		});
+	}
+	
+	private boolean write(DurableWrites.Outcome outcome){
 		String destFilePath = getPathToUserData();
 		try {
-			File myJson = new File(destFilePath);
-			File folder = myJson.getParentFile();
-			if(folder != null && !myJson.getParentFile().exists()) {
-				folder.mkdirs();
-			}
-			BufferedWriter buff = Files.newBufferedWriter(Paths.get(destFilePath));
-			buff.write(this.toJson());
-			buff.close();
+			DurableWrites.write(destFilePath, out -> {
+				try (JsonGenerator jg = Constants.STORAGECODEC.createGenerator(out)){
+					Writer.write(jg, this);
+				}
+			}, replaced -> {
+				// the copy in another format is only deleted once this one is in place
+				if (replaced) StorageCodec.removeStale(pathToUserDataWithoutExtension(getId()));
+				outcome.done(replaced);
+			});
+			return true;
 		} catch (IOException e) {
 			System.err.println(Constants.ERROR + "An error occurred while exporting UserData."+destFilePath);
 			e.printStackTrace();
 		}
+		return false;
+	}
+	
+	/**
+	 * @return a copy of the data written by {@link #exportUserData()} as it is now, without lists or attempts,
+	 * for {@link Persistence} to write while this user keeps changing.
+	 * @ensures \result.getId().equals(getId())
+	 */
+	synchronized User copy(){
+		User.Builder b = new User.Builder()
+			.id(userId)
+			.prefix(prefix)
+			.tagEmojiByTagName(tagEmojiByTagName)
+			.useButtons(useButtons)
+			.useAutoNext(useAutoNext);
+		// the constructor copies the tags
+		return new User(b, Map.of(), Map.of());
+	}
+	
+	/**
+	 * @return a counter incremented by every change of this user.
+	 * @pure
+	 */
+	long getVersion(){
+		return version.get();
 	}
 	
 	/**
-	 * Returns a compact, single-line JSON string representation of the user's data.
-	 * <p>A convenience method that calls {@code toJsonUsingMapper(true)}.</p>
-	 * @return A single-line JSON string, or {@code null} if a serialization error occurred.
-	 * @ensures \result is a single-line JSON string of user data.
+	 * Returns a JSON string representation of the user's data.
+	 * <p>A convenience method that calls {@link #toJson()}.</p>
+	 * @return A JSON string, or {@code null} if a serialization error occurred.
+	 * @ensures \result is a JSON string of user data.
 	 */
 	@Override
 	public String toString() {
 		String res=null;
 		try {
-			res = toJson();//Constants.MAPPER.writeValueAsString(this);
+			res = toJson();
 		} catch (Exception e){
-			System.err.println(Constants.ERROR + "[toJsonUsingMapper() failed]"+e.getMessage());
+			System.err.println(Constants.ERROR + "[toJson() failed]"+e.getMessage());
 		}
 		return res;
 	}
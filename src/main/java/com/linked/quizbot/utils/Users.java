@@ -3,11 +3,18 @@ package com.linked.quizbot.utils;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.linked.quizbot.Constants;
 
@@ -15,8 +22,10 @@ import com.linked.quizbot.Constants;
  * A central registry and utility class for managing all {@link User} objects in the application.
  * <p>
  * This class serves as a static access point to user data, providing methods for
- * retrieving, adding, and updating users. It is responsible for loading all user data
- * from local files on startup and exporting it to ensure data persistence.
+ * retrieving, adding, and updating users. Users are held in a concurrent map keyed by id, so
+ * lookups and insertions are O(1) and safe from any JDA event thread. Users are loaded from local
+ * files on first access and at most {@link Constants#USERCACHESIZE} of them are kept in memory,
+ * the least recently used ones are evicted once their changes are on disk.
  * This class also contains utility methods for performing efficient binary searches
  * on sorted lists of users and quiz lists.
  * </p>
@@ -28,29 +37,79 @@ import com.linked.quizbot.Constants;
  * @see QuestionList
  */
 public class Users {
-	public static final List<User> allUsers = new ArrayList<>();
+	private static final Map<String, Resident> allUsers = new ConcurrentHashMap<>();
+	// per-id locks so a user is never loaded twice, nor reloaded while it is being evicted
+	private static final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+	private static final AtomicLong clock = new AtomicLong();
+	private static final AtomicBoolean evicting = new AtomicBoolean(false);
+	// listId -> ownerId, the owner's own map resolves the list so evicted users stay indexed
+	private static final Map<String, String> ownerIdByListId = new ConcurrentHashMap<>();
+	private static volatile boolean listIndexBuilt = false;
+	
+	/**
+	 * A user held in memory with the tick of its last access, used to pick eviction victims.
+	 */
+	private static final class Resident {
+		private final User user;
+		private volatile long lastUsed;
+		
+		private Resident(User user){
+			this.user = user;
+			touch();
+		}
+		
+		private User touch(){
+			lastUsed = clock.incrementAndGet();
+			return user;
+		}
+	}
 	
 	/*static {
 		loadAllUsers();
 	}*/
 	
+	/**
+	 * Returns a user, loading it from disk on first access.
+	 * @param userId the id of the user.
+	 * @return the user, or {@code null} if it is neither resident nor on disk.
+	 */
 	public static User get(String userId) {
 		return Users.getUser(userId);
 	}
 	public static void clear() {
 		allUsers.clear();
+		synchronized (ownerIdByListId){
+			ownerIdByListId.clear();
+			listIndexBuilt = false;
+		}
+		Persistence.clear();
+		Persistence.drain();
+		ListSnapshots.clear();
 		QuestionList.Hasher.clearGeneratedCodes();
 	}
 	public static User addUser(User user){
-		int index = myBinarySearchIndexOf(Users.allUsers, user, User.comparatorByUserId());
-		if (index < 0){
-			index = -index - 1;
-			Users.allUsers.add(index, user);
-		}else {
-			Users.allUsers.set(index, user);
+		Resident r = allUsers.get(user.getId());
+		if (user.isEvicted()){
+			// never put back over a copy loaded since, readmit fails instead
+			readmit(user);
+		} else if (r == null || r.user != user){
+			allUsers.put(user.getId(), new Resident(user));
+		} else {
+			r.touch();
 		}
-		user.exportUserData();
-		return Users.get(user.getId());
+		Persistence.markDirty(user);
+		evictColdUsers();
+		return user;
+	}
+	/**
+	 * Registers a user rebuilt by {@link Checkpoint#restore()}, its data is already on disk so it is not marked dirty.
+	 * @param user the restored user.
+	 * @return the user.
+	 * @ensures isLoaded(user.getId())
+	 */
+	public static User addRestoredUser(User user){
+		allUsers.put(user.getId(), new Resident(user));
+		return user;
 	}
 	public static User addUser(String userId){
 		User user = Users.get(userId);
@@ -61,36 +120,249 @@ public class Users {
 		addUser(user);
 	}
 	public static User getUser(String userId){
-		int index = User.myBinarySearchUserId(Users.allUsers, userId);
-		if (index >=0){
-			return Users.allUsers.get(index);
+		Resident r = allUsers.get(userId);
+		if (r!=null){
+			return r.touch();
+		}
+		if (!isOnDisk(userId)){
+			return null;
+		}
+		User user;
+		Object lock = loadLocks.computeIfAbsent(userId, k -> new Object());
+		synchronized (lock){
+			r = allUsers.get(userId);
+			if (r!=null){
+				return r.touch();
+			}
+			user = new User(userId);
+			// a copy may have been registered meanwhile through addUser
+			r = allUsers.putIfAbsent(userId, new Resident(user));
+			if (r!=null){
+				user = r.touch();
+			} else if (user.isModified()){
+				// the constructor migrated an older user-data.json
+				Persistence.markDirty(user);
+			}
 		}
-		return null;
+		loadLocks.remove(userId, lock);
+		evictColdUsers();
+		return user;
 	}
-	public static QuestionList getById(String listId) {
-		QuestionList l=null;
-		for (User u : Users.allUsers){
-			l = u.getById(listId);
-			if (l!=null){
-				return l;
+	
+	/**
+	 * @return the number of users currently held in memory.
+	 */
+	public static int size(){
+		return allUsers.size();
+	}
+	
+	/**
+	 * @param userId the id of a user.
+	 * @return {@code true} if the user is held in memory.
+	 */
+	public static boolean isLoaded(String userId){
+		return allUsers.containsKey(userId);
+	}
+	
+	/**
+	 * @return a snapshot of the users currently held in memory, in no particular order.
+	 */
+	public static List<User> getLoadedUsers(){
+		List<User> res = new ArrayList<>(allUsers.size());
+		for (Resident r : allUsers.values()){
+			res.add(r.user);
+		}
+		return res;
+	}
+	
+	private static boolean isOnDisk(String userId){
+		return new File(Constants.USERDATAPATH+Constants.SEPARATOR+userId).isDirectory()
+			|| new File(Constants.LISTSPATH+Constants.SEPARATOR+userId).isDirectory()
+			|| (Constants.LISTSTORE && ListStore.hasOwner(userId));
+	}
+	
+	/**
+	 * Once more than {@link Constants#USERCACHESIZE} users are held, drops the least recently used ones that are saved.
+	 * <p>Only one thread evicts at a time, others carry on, and nothing is written nor waited for on the
+	 * calling thread. A user with changes not yet on disk, or a write still queued or running, is skipped
+	 * and its write scheduled, it is dropped by a later round. Each user is checked again and removed while
+	 * its load lock is held, so a concurrent {@link #get(String)} never reads a file older than the instance.</p>
+	 */
+	private static void evictColdUsers(){
+		if (allUsers.size() <= Constants.USERCACHESIZE || !evicting.compareAndSet(false, true)){
+			return;
+		}
+		try {
+			// evicts a tenth of the cache at once so a full cache does not pay this on every miss
+			int target = Constants.USERCACHESIZE - Constants.USERCACHESIZE/10;
+			List<Map.Entry<String, Resident>> byAge = new ArrayList<>(allUsers.entrySet());
+			byAge.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+			Iterator<Map.Entry<String, Resident>> iter = byAge.iterator();
+			while (allUsers.size() > target && iter.hasNext()){
+				Map.Entry<String, Resident> e = iter.next();
+				User user = e.getValue().user;
+				if (!isSaved(user)){
+					scheduleSave(user);
+					continue;
+				}
+				Object lock = loadLocks.computeIfAbsent(e.getKey(), k -> new Object());
+				synchronized (lock){
+					if (isSaved(user) && allUsers.remove(e.getKey(), e.getValue())){
+						user.setEvicted(true);
+					}
+				}
+				loadLocks.remove(e.getKey(), lock);
 			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+	
+	// the files of the user hold everything the instance does, and no write of it is queued
+	private static boolean isSaved(User user){
+		if (user.isModified() || Persistence.isBusy(user.getId())){
+			return false;
+		}
+		for (QuestionList l : user.getLists().values()){
+			if (l.isModified()) return false;
+		}
+		return true;
+	}
+	
+	// changes made without marking the user dirty are only written on shutdown otherwise
+	private static void scheduleSave(User user){
+		for (QuestionList l : user.getLists().values()){
+			if (l.isModified()) Persistence.markDirty(l);
 		}
-		return l;
+		if (user.isModified()) Persistence.markDirty(user);
 	}
-	public static QuestionList getByName(String listName){
-		QuestionList res = null;
-		for (User u : Users.allUsers){
-			res = u.getByName(listName);
-			if (res != null){
-				return res;
+	
+	/**
+	 * Takes an evicted instance back before it is changed, so the change is neither lost nor written over a newer copy.
+	 * <p>Does nothing for a resident instance. An evicted one becomes resident again if the user was not loaded
+	 * since, otherwise the loaded copy is the only one that may change.</p>
+	 * @param user the instance about to be changed.
+	 * @throws IllegalStateException if {@code user} was evicted and the user loaded again meanwhile.
+	 * @ensures !user.isEvicted()
+	 */
+	static void readmit(User user){
+		if (!user.isEvicted()){
+			return;
+		}
+		String userId = user.getId();
+		Object lock = loadLocks.computeIfAbsent(userId, k -> new Object());
+		try {
+			synchronized (lock){
+				if (!user.isEvicted()){
+					return;
+				}
+				Resident r = allUsers.get(userId);
+				if (r != null && r.user != user){
+					throw new IllegalStateException(String.format("User %s was evicted and loaded again, change it through Users.get(\"%s\")", userId, userId));
+				}
+				user.setEvicted(false);
+				if (r == null){
+					allUsers.put(userId, new Resident(user));
+				}
 			}
+		} finally {
+			loadLocks.remove(userId, lock);
+		}
+	}
+	
+	/**
+	 * Records which user owns a list, called whenever a user adds, renames or loads one.
+	 * @param listId the id of the list.
+	 * @param ownerId the id of its owner.
+	 * @ensures getOwnerIdOfList(listId).equals(ownerId)
+	 */
+	public static void indexList(String listId, String ownerId){
+		if (listId != null && ownerId != null){
+			ownerIdByListId.put(listId, ownerId);
 		}
-		return res;
+	}
+	
+	/**
+	 * Forgets the owner of a deleted list.
+	 * @param listId the id of the list.
+	 * @ensures getOwnerIdOfList(listId) == null
+	 */
+	public static void unindexList(String listId){
+		ownerIdByListId.remove(listId);
+	}
+	
+	/**
+	 * Looks up the owner of a list without loading it.
+	 * @param listId the id of the list.
+	 * @return the id of the owner, or {@code null} if no user holds this list.
+	 */
+	public static String getOwnerIdOfList(String listId){
+		buildListIndex();
+		return ownerIdByListId.get(listId);
+	}
+	
+	/**
+	 * On first use, indexes the lists of users that are not loaded yet from the file names
+	 * under {@link Constants#LISTSPATH}, or from the index of the {@link ListStore}, no list is parsed.
+	 */
+	private static void buildListIndex(){
+		if (listIndexBuilt){
+			return;
+		}
+		synchronized (ownerIdByListId){
+			if (listIndexBuilt){
+				return;
+			}
+			if (Constants.LISTSTORE){
+				for (Map.Entry<String, String> e : ListStore.ownerIdsByListId().entrySet()){
+					ownerIdByListId.putIfAbsent(e.getKey(), e.getValue());
+				}
+			}
+			File[] owners = new File(Constants.LISTSPATH).listFiles(File::isDirectory);
+			if (owners != null){
+				for (File owner : owners){
+					if (owner.getName().equals(ListSnapshots.FOLDERNAME) || owner.getName().equals(ListStore.FOLDERNAME)) continue;
+					String[] files = owner.list((dir, name) -> StorageCodec.stripExtension(name) != null);
+					if (files == null) continue;
+					for (String name : files){
+						// lists held in memory are already indexed and may have moved since
+						ownerIdByListId.putIfAbsent(StorageCodec.stripExtension(name), owner.getName());
+					}
+				}
+			}
+			listIndexBuilt = true;
+		}
+	}
+	
+	/**
+	 * Retrieves a list by id in constant time, loading its owner if needed.
+	 * @param listId the id of the list.
+	 * @return the list, or {@code null} if no user holds it.
+	 * @ensures (\result == null) || \result.getId().equals(listId)
+	 */
+	public static QuestionList getById(String listId) {
+		String ownerId = getOwnerIdOfList(listId);
+		if (ownerId == null){
+			QuestionList example = QuestionList.getExampleQuestionList();
+			return example.getId().equals(listId)?example:null;
+		}
+		User u = Users.get(ownerId);
+		return u==null?null:u.getById(listId);
+	}
+	/**
+	 * Retrieves a list of a user by its name, loading the user if needed.
+	 * <p>Names are only unique within a user, so the owner is always given.</p>
+	 * @param ownerId the id of the user holding the list.
+	 * @param listName the name of the list.
+	 * @return the list, or {@code null} if the user does not exist or has no list with that name.
+	 */
+	public static QuestionList getByName(String ownerId, String listName){
+		User u = Users.get(ownerId);
+		return u==null?null:u.getByName(listName);
 	}
 	public static void addListToUser(String userId, QuestionList l) {
 		User u = getUser(userId);
 		u.addList(l);
-		update(u);
 	}
 	public static boolean createTag(String userId, String tagName, String emoji) {
 		User user = Users.get(userId);
@@ -101,24 +373,24 @@ public class Users {
 		return user.deleteTag(tagName);
 	}
 	public static boolean addTagToList(String id, String tagName) {
-		QuestionList tmp = new QuestionList.Builder().id(id).build();
-		for (User u : Users.allUsers) {
-			if (u.addTagToList(tmp, tagName)) {
-				return true;
-			}
+		QuestionList l = Users.getById(id);
+		if (l == null){
+			return false;
 		}
-		return false;
+		User u = Users.get(l.getOwnerId());
+		return u!=null && u.addTagToList(l, tagName);
 	}
 	public static boolean removeTagFromList(String id, String tagName) {
 		QuestionList l = Users.getById(id);
+		if (l == null){
+			return false;
+		}
 		User u = Users.get(l.getOwnerId());
-		return u.removeTagFromList(l, tagName);
+		return u!=null && u.removeTagFromList(l, tagName);
 	}
 	public static boolean deleteList(QuestionList l){
 		User user = Users.get(l.getOwnerId());
-		boolean b = user.deleteList(l);
-		Users.update(user);
-		return b;
+		return user.deleteList(l);
 	}
 	
 	/*TODO add docs */
@@ -150,36 +422,44 @@ public class Users {
 	}
 	
 	public Iterator<User> iterator(){
-		return Users.allUsers.iterator();
+		return getLoadedUsers().iterator();
 	}
 	
+	/**
+	 * Parses every list file of a user, in parallel.
+	 * <p>When called from a task of {@link #importUsers()} the files are parsed on that import's pool,
+	 * otherwise on the common fork-join pool. With {@link Constants#LISTSTORE} set the lists are read from the {@link ListStore}.</p>
+	 * @param userId the owner of the lists.
+	 * @return the lists by id.
+	 */
 	public static Map<String, QuestionList> importLists(String userId) {
-		Map<String, QuestionList> res = new HashMap<>();
+		if (Constants.LISTSTORE){
+			return ListStore.getAll(userId);
+		}
+		Map<String, QuestionList> res = new ConcurrentHashMap<>();
 		File folder = new File(Constants.LISTSPATH+Constants.SEPARATOR+ userId+Constants.SEPARATOR);
 		File[] listOfFiles = folder.listFiles();
 		if(listOfFiles != null) {
-			for (int i = 0; i < listOfFiles.length; i++) {
-				listOfFiles[i].getName();
-				if (List.of("tmp").contains(listOfFiles[i].getName())) continue;
-				if (listOfFiles[i].getName().endsWith(".json")){
-					try{
-						QuestionList l = QuestionList.Parser.fromJsonFile(listOfFiles[i].getAbsolutePath()).build();
-						res.put(l.getId(), l);
-					}catch (IOException e) {
-						System.err.println(String.format(Constants.ERROR + "An error occurred while importing a list. listid:%s , userId:%s",listOfFiles[i].getName(), userId));
-						e.printStackTrace();
-					}
+			Arrays.stream(listOfFiles).parallel()
+			.filter(f -> f.isFile() && StorageCodec.stripExtension(f.getName()) != null)
+			.forEach(f -> {
+				try{
+					QuestionList l = QuestionList.Parser.fromJsonFile(f.getAbsolutePath()).build();
+					res.put(l.getId(), l);
+				}catch (IOException e) {
+					System.err.println(String.format(Constants.ERROR + "An error occurred while importing a list. listid:%s , userId:%s",f.getName(), userId));
+					e.printStackTrace();
 				}
-			}
+			});
 		}
-		return res;
+		return new HashMap<>(res);
 	}
 	public static void exportAllUserLists() {
-		User user;
-		for (int i=0; i<Users.allUsers.size(); i++) {
-			user = Users.allUsers.get(i);
-			user.exportUserLists();
-		}
+		DurableWrites.batch(() -> {
+			for (User user : getLoadedUsers()) {
+				user.exportUserLists();
+			}
+		});
 	}
 
 	public static User importUser(String userId){
@@ -187,35 +467,100 @@ public class Users {
 		if (userId.length()<Constants.DISCORDIDLENMIN || !folder.exists()){
 			return null;
 		}
-		return addUser(new User(userId));
+		// registered like a lazy load, only a user the constructor migrated is written back
+		return getUser(userId);
 	}
 
+	/**
+	 * Replaces the registry with every user found under {@link Constants#USERDATAPATH}.
+	 * <p>Pending writes are flushed first. Users, and the lists of each user, are parsed
+	 * concurrently on a pool of {@link Constants#IMPORTTHREADS} threads while a progress bar
+	 * and the final timing are printed.</p>
+	 * @return the users held in memory once the import is done.
+	 */
 	public static List<User> importUsers(){
+		Persistence.drain();
 		Users.clear();
 		File folder = new File(Constants.USERDATAPATH);
-		String userId;
-		if (folder.exists()){
-			for (File f : folder.listFiles()){
-				if (f.isDirectory()){
-					userId = f.getName();
-					importUser(userId);
+		File[] userFolders = folder.listFiles(File::isDirectory);
+		if (userFolders == null || userFolders.length == 0){
+			return getLoadedUsers();
+		}
+		long start = System.nanoTime();
+		int threads = Math.max(1, Constants.IMPORTTHREADS);
+		AtomicInteger done = new AtomicInteger();
+		AtomicInteger lists = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(() -> Arrays.stream(userFolders).parallel().forEach(f -> {
+				User user = importUser(f.getName());
+				if (user != null){
+					lists.addAndGet(user.getLists().size());
 				}
+				printProgress("Importing all user data", done.incrementAndGet(), userFolders.length);
+			})).get();
+		} catch (InterruptedException | ExecutionException e){
+			System.err.println(Constants.ERROR + "An error occurred while importing users.");
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println(String.format(Constants.INFO + "Imported %d users and %d lists in %.1f ms on %d threads",
+			Users.size(), lists.get(), (System.nanoTime()-start)/1e6, threads));
+		return getLoadedUsers();
+	}
+	
+	private static final AtomicInteger lastPercent = new AtomicInteger(-1);
+	
+	// only redraws when the percentage changes, callers may be on several threads
+	private static void printProgress(String label, int done, int total){
+		int percent = Math.floorDiv(done*100, total);
+		int prev = lastPercent.get();
+		if ((percent != prev || done == total) && lastPercent.compareAndSet(prev, percent)){
+			int width = 20, filled = percent*width/100;
+			System.out.print(String.format("\r"+Constants.INFO+"%s [ %s%s ] %d%s", label, "#".repeat(filled), " ".repeat(width-filled), percent, "%"));
+			if (done == total){
+				System.out.println("");
+				lastPercent.set(-1);
 			}
 		}
-		return new ArrayList<User>(allUsers);
 	}
 
 	public static void loadAllUsers(){
 		importUsers();
 	}
 
-	public static void exportAllUserData(){
-		User user;
-		for (int i=0; i<Users.allUsers.size(); i++) {
-			user = Users.allUsers.get(i);
-			user.exportUserData();
-			System.out.print(String.format("\r"+Constants.INFO+"Exporting all user data [ %s%s ] %d%s", "#".repeat(i+1), " ".repeat(Users.allUsers.size()-i-1), Math.floorDiv((i+1)*100,Users.allUsers.size()), "%"));
+	/**
+	 * Writes only the users and lists that changed since they were last exported, used on shutdown.
+	 * <p>Pending writes and every loaded object whose version moved are flushed together by
+	 * {@link Persistence#flush()}, on {@link Constants#EXPORTTHREADS} threads and in one sync cycle,
+	 * then the count, bytes written and elapsed time are printed.</p>
+	 * @return the number of bytes written.
+	 */
+	public static long exportModified(){
+		long start = System.nanoTime();
+		Persistence.awaitSubmitted();
+		for (User user : getLoadedUsers()){
+			for (QuestionList l : user.getLists().values()){
+				if (l.isModified()) Persistence.markDirty(l);
+			}
+			if (user.isModified()) Persistence.markDirty(user);
 		}
+		int count = Persistence.pendingCount();
+		long bytes = Persistence.flush();
+		System.out.println(String.format(Constants.INFO + "Exported %d changed users and lists, %d bytes, in %.2f ms on %d threads",
+			count, bytes, (System.nanoTime() - start) / 1000000.00, Math.max(1, Constants.EXPORTTHREADS)));
+		return bytes;
+	}
+
+	public static void exportAllUserData(){
+		List<User> users = getLoadedUsers();
+		DurableWrites.batch(() -> {
+			for (int i=0; i<users.size(); i++) {
+				users.get(i).exportUserData();
+				System.out.print(String.format("\r"+Constants.INFO+"Exporting all user data [ %s%s ] %d%s", "#".repeat(i+1), " ".repeat(users.size()-i-1), Math.floorDiv((i+1)*100,users.size()), "%"));
+			}
+		});
 		System.out.println("");
 	}
 }
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import com.linked.quizbot.utils.Attempt;
 import com.linked.quizbot.utils.Awnser;
+import com.linked.quizbot.utils.ListSnapshots;
 import com.linked.quizbot.utils.Option;
 import com.linked.quizbot.utils.Question;
 import com.linked.quizbot.utils.QuestionList;
@@ -120,7 +121,33 @@ public class AttemptTest {
 	void testGetAwnsers() {
 		Attempt attempt = new Attempt(USER_ID, smallQuestionList, fixedStartTime, fixedEndTime, awnsers);
 		assertEquals(awnsers, attempt.getAwnsers());
-		assertSame(awnsers, attempt.getAwnsers());
+		// the answers are copied into the attempt, the map returned is a read-only view of them
+		assertThrows(UnsupportedOperationException.class, () -> attempt.getAwnsers().put(2, awnsers.get(0)));
+		awnsers.remove(0);
+		assertEquals(2, attempt.getAwnsers().size());
+		assertEquals(1000L, attempt.getAwnsers().get(0).getDuration());
+	}
+	
+	@Test
+	void testAwnsersOutsideTheQuestions() throws Exception {
+		Attempt attempt = new Attempt(USER_ID, smallQuestionList, fixedStartTime, fixedEndTime, awnsers);
+		Option outside = new Option("Not an option", true);
+		attempt.addAwnser(1, outside, 3000L);
+		attempt.addAwnser(7, outside, 3000L);
+		assertEquals(3, attempt.getAwnsers().size());
+		assertTrue(attempt.getAwnsers().get(1).getResponses().contains(outside));
+		assertEquals(2, attempt.getAwnsers().get(1).getResponses().size());
+		assertEquals(attempt.computeScore(), attempt.getScore(), 0.0001);
+		
+		// once the unknown option is gone the question is held by its mask again
+		attempt.removeAwnser(1, outside, 4000L);
+		assertEquals(awnsers.get(1).getResponses(), attempt.getAwnsers().get(1).getResponses());
+		assertEquals(4000L, attempt.getAwnsers().get(1).getDuration());
+		assertEquals(1.25, attempt.getScore(), 0.0001);
+		
+		Attempt parsed = Attempt.Parser.parse(new com.fasterxml.jackson.core.JsonFactory().createParser(attempt.toJson()), attempt.toJson());
+		assertEquals(attempt.getAwnsers(), parsed.getAwnsers());
+		assertEquals(attempt, parsed);
 	}
 	
 	
@@ -249,23 +276,105 @@ public class AttemptTest {
 		assertTrue(result.startsWith("` 42%` ` 10m`"), "Should show score and minutes time"+result);
 	}
 	
+	@Test
+	void testAttemptsShareListSnapshot() throws Exception {
+		Attempt first = new Attempt(USER_ID, smallQuestionList, fixedStartTime, fixedEndTime, awnsers);
+		Attempt second = new Attempt("otherUser", smallQuestionList, fixedStartTime, fixedEndTime, new HashMap<>());
+		assertSame(first.getQuestionList(), second.getQuestionList());
+		assertEquals(first.getListVersion(), second.getListVersion());
+		
+		// the serialized attempt only references the list
+		String json = first.toJson();
+		assertFalse(json.contains("Choose wisely A"));
+		Attempt parsed = Attempt.Parser.parse(new com.fasterxml.jackson.core.JsonFactory().createParser(json), json);
+		assertSame(first.getQuestionList(), parsed.getQuestionList());
+		assertEquals(first.getScore(), parsed.getScore());
+		
+		// editing the list creates a new version
+		smallQuestionList.add(new Question("Choose wisely D", new Option("D", true)));
+		Attempt third = new Attempt(USER_ID, smallQuestionList);
+		assertNotEquals(first.getListVersion(), third.getListVersion());
+		assertEquals(3, first.getQuestionList().size());
+		assertEquals(4, third.getQuestionList().size());
+	}
+	
+	@Test
+	void testRunningScoreMatchesFullRecomputation() {
+		QuestionList.Builder builder = new QuestionList.Builder().ownerId("Test00000").name("running score");
+		for (int i = 0; i < 200; ++i) {
+			builder.add(new Question("Q"+i, new Option("A"+i, true), new Option("B"+i, i%3==0), new Option("C"+i, false), new Option("D"+i, false)));
+		}
+		Attempt attempt = new Attempt(USER_ID, builder.build());
+		assertEquals(0.0, attempt.getScore(), 0.0001);
+		java.util.Random random = new java.util.Random(24);
+		int size = attempt.getQuestionList().size();
+		for (int step = 0; step < 20000; ++step) {
+			int index = random.nextInt(size);
+			java.util.List<Option> options = attempt.getQuestionList().get(index).getOptions();
+			Option opt = options.get(random.nextInt(options.size()));
+			switch (random.nextInt(3)) {
+				case 0 -> attempt.addAwnser(index, opt, 10L);
+				case 1 -> attempt.removeAwnser(index, opt, 10L);
+				default -> attempt.setAwnser(index, new HashSet<>(Set.of(opt)), 10L);
+			}
+			assertEquals(attempt.computeScore(), attempt.getScore(), 0.0001);
+		}
+		
+		// an attempt rebuilt from the same answers starts from the same score
+		Attempt copy = new Attempt(USER_ID, attempt.getQuestionList(), fixedStartTime, fixedEndTime, attempt.getAwnsers());
+		assertEquals(attempt.getScore(), copy.getScore(), 0.0001);
+	}
+	
+	@Test
+	void testMasksHoldTheSameAwnsersAsMaps() {
+		int nbPlayers = 50, nbQuestions = 20;
+		QuestionList.Builder builder = new QuestionList.Builder().ownerId("Test00000").name("large game");
+		for (int i = 0; i < nbQuestions; ++i) {
+			builder.add(new Question("Q"+i, new Option("A"+i, true), new Option("B"+i, false), new Option("C"+i, false), new Option("D"+i, false)));
+		}
+		QuestionList list = new Attempt(USER_ID, builder.build()).getQuestionList();
+		
+		// the former layout, a map of answers holding a set of options for each question
+		java.util.List<Map<Integer, Awnser>> maps = new java.util.ArrayList<>();
+		java.util.List<Attempt> attempts = new java.util.ArrayList<>();
+		for (int p = 0; p < nbPlayers; ++p) {
+			Map<Integer, Awnser> map = new HashMap<>();
+			Attempt att = new Attempt("player"+p, list, fixedStartTime, 0L, new HashMap<>());
+			for (int q = 0; q < nbQuestions; ++q) {
+				for (int c = 0; c < 2; ++c) {
+					Set<Option> responses = map.getOrDefault(q, new Awnser(0L, new HashSet<>())).getResponses();
+					responses.add(list.get(q).get((p+c)%4));
+					map.put(q, new Awnser(1000L+p, responses));
+					att.addAwnser(q, list.get(q).get((p+c)%4), 1000L+p);
+				}
+			}
+			maps.add(map);
+			attempts.add(att);
+		}
+		
+		for (int p = 0; p < nbPlayers; ++p) {
+			assertEquals(maps.get(p), attempts.get(p).getAwnsers());
+		}
+	}
+	
 	@Test
 	void testToJson() {
 		Attempt attempt = new Attempt(USER_ID, smallQuestionList, fixedStartTime, fixedEndTime, awnsers);
 		
 		String result = attempt.toJson();
-		String expectedStart = String.format("{\"userId\":%s,\"timeStartedMillis\":%d,\"timeEndedMillis\":%d,\"questionList\":%s", 
-			smallQuestionList.toJson(), 
+		String expectedStart = String.format("{\"userId\":\"%s\",\"listId\":\"%s\",\"listVersion\":\"%s\",\"timeStartedMillis\":%d,\"timeEndedMillis\":%d,", 
+			USER_ID, 
+			smallQuestionList.getId(), 
+			ListSnapshots.versionOf(smallQuestionList), 
 			fixedStartTime, 
-			fixedEndTime, 
-			smallQuestionList.toJson());
+			fixedEndTime);
 		
 		assertTrue(result.startsWith(expectedStart), "JSON should start with the correct fields.");
 		assertTrue(result.contains("\"awnsersByQuestion\":"), "JSON should contain awnsersByQuestion field.");
 		assertTrue(result.endsWith("}"), "JSON should end with a closing brace.");
 		
-		String awnsersPart = String.format("\"0\":%s, \"1\":%s", awnsers.get(0).toJson(), awnsers.get(1).toJson());
-		assertTrue(result.contains(awnsersPart) || result.contains(awnsers.get(1).toJson() + ", " + awnsers.get(0).toJson()), 
+		String awnsersPart = String.format("\"0\":%s,\"1\":%s", awnsers.get(0).toJson(), awnsers.get(1).toJson());
+		assertTrue(result.contains(awnsersPart) || result.contains(awnsers.get(1).toJson() + "," + awnsers.get(0).toJson()), 
 			"awnsersByQuestion should contain serialized awnsers with integer keys.");
 	}
 
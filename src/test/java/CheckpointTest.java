@@ -0,0 +1,136 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.utils.Checkpoint;
+import com.linked.quizbot.utils.Persistence;
+import com.linked.quizbot.utils.QuestionList;
+import com.linked.quizbot.utils.User;
+import com.linked.quizbot.utils.Users;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the registry snapshot and its write-ahead log.
+ */
+public class CheckpointTest {
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void setUp() throws IOException{
+		TestData.useTempStorage(tempDir);
+		Constants.CHECKPOINTPATH = tempDir.resolve("checkpoint").toString();
+	}
+
+	@AfterEach
+	void tearDown(){
+		Checkpoint.close();
+		Constants.CHECKPOINT = false;
+		TestData.clearRegistry();
+	}
+
+	private static final String ALICE = "111111111111111111";
+	private static final String BOB = "222222222222222222";
+
+	private List<Path> logs() throws IOException{
+		try (Stream<Path> files = Files.list(Path.of(Constants.CHECKPOINTPATH))){
+			return files.filter(p -> p.getFileName().toString().startsWith(Checkpoint.LOGPREFIX)).sorted().toList();
+		}
+	}
+
+	@Test
+	public void testRestoreFromSnapshotAndLog() throws IOException {
+		assertEquals(0, Checkpoint.restore());
+		User alice = Users.addUser(new User.Builder().id(ALICE).prefix("a!").build());
+		User bob = Users.addUser(new User.Builder().id(BOB).prefix("b!").build());
+		alice.addList(TestData.createList(ALICE, "idaaaaa", 3));
+		alice.addList(TestData.createList(ALICE, "iddddda", 2));
+		bob.addList(TestData.createList(BOB, "idbbbbb", 4));
+		Persistence.flush();
+		assertTrue(Checkpoint.take() > 0);
+		assertTrue(Constants.CHECKPOINT);
+
+		// changes made after the snapshot only live in the log
+		QuestionList added = TestData.createList(BOB, "idccccc", 2);
+		bob.addList(added);
+		alice.deleteList(alice.getById("iddddda"));
+		alice.setPrefix("alice!");
+		Persistence.flush();
+		String addedJson = added.toJson();
+		String keptJson = alice.getById("idaaaaa").toJson();
+
+		// a crash in the middle of the last record
+		Checkpoint.close();
+		Files.write(logs().getLast(), new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+		Users.clear();
+		assertEquals(2, Checkpoint.restore());
+		assertTrue(Users.isLoaded(ALICE));
+		assertTrue(Users.isLoaded(BOB));
+		assertEquals("alice!", Users.get(ALICE).getPrefix());
+		assertNull(Users.get(ALICE).getById("iddddda"));
+		assertEquals(keptJson, Users.get(ALICE).getById("idaaaaa").toJson());
+		assertEquals(2, Users.get(BOB).getLists().size());
+		assertEquals(addedJson, Users.getById("idccccc").toJson());
+		assertEquals(BOB, Users.getOwnerIdOfList("idccccc"));
+
+		Users.clear();
+		assertEquals(2, Users.importUsers().size());
+	}
+
+	@Test
+	public void testSecondSnapshotFoldsTheLog() throws IOException {
+		User alice = Users.addUser(new User.Builder().id("aliceUser").prefix("a!").build());
+		alice.addList(TestData.createList("aliceUser", "idaaaaa", 3));
+		Persistence.flush();
+		Checkpoint.take();
+		alice.addList(TestData.createList("aliceUser", "ideeeee", 1));
+		Persistence.flush();
+		assertEquals(1, logs().size());
+
+		// the previous snapshot and the log are enough, no user is read
+		Users.clear();
+		Checkpoint.take();
+		assertFalse(Users.isLoaded("aliceUser"));
+		List<Path> logs = logs();
+		assertEquals(1, logs.size());
+		assertEquals(0, Files.size(logs.getFirst()));
+
+		Checkpoint.close();
+		Checkpoint.restore();
+		assertEquals(2, Users.get("aliceUser").getLists().size());
+	}
+
+	@Test
+	public void testRestoreKeepsTheCacheBound() throws IOException {
+		int cacheSize = Constants.USERCACHESIZE;
+		try {
+			User alice = Users.addUser(new User.Builder().id(ALICE).prefix("a!").build());
+			Users.addUser(new User.Builder().id(BOB).prefix("b!").build());
+			Persistence.flush();
+			Checkpoint.take();
+			alice.setPrefix("alice!");
+			Persistence.flush();
+
+			Constants.USERCACHESIZE = 1;
+			Users.clear();
+			assertEquals(1, Checkpoint.restore());
+			// the user changed last in the log is the one kept, the other is read from its files
+			assertTrue(Users.isLoaded(ALICE));
+			assertFalse(Users.isLoaded(BOB));
+			assertEquals("b!", Users.get(BOB).getPrefix());
+		} finally {
+			Constants.USERCACHESIZE = cacheSize;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+import com.linked.quizbot.utils.DurableWrites;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test class for atomic and batched file writes.
+ */
+public class DurableWritesTest {
+	@TempDir
+	Path tempDir;
+
+	private static void writeString(Path p, String s) throws IOException{
+		DurableWrites.write(p.toString(), out -> out.write(s.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testFailedWriteKeepsOldContent() throws IOException {
+		Path p = tempDir.resolve("sub").resolve("data.json");
+		writeString(p, "{\"old\":true}");
+		assertEquals("{\"old\":true}", Files.readString(p));
+
+		assertThrows(IOException.class, () -> DurableWrites.write(p.toString(), out -> {
+			out.write("{\"new\":".getBytes(StandardCharsets.UTF_8));
+			throw new IOException("crash in the middle of a write");
+		}));
+		assertEquals("{\"old\":true}", Files.readString(p));
+		try (var files = Files.list(p.getParent())) {
+			assertTrue(files.noneMatch(f -> f.toString().endsWith(DurableWrites.TMPEXTENSION)));
+		}
+	}
+
+	@Test
+	public void testReplacedFileKeepsItsPermissions() throws IOException {
+		Path p = tempDir.resolve("perms.json");
+		writeString(p, "{}");
+		assumeTrue(Files.getFileStore(p).supportsFileAttributeView(PosixFileAttributeView.class));
+		Set<PosixFilePermission> perms = PosixFilePermissions.fromString("rw-r-----");
+		Files.setPosixFilePermissions(p, perms);
+
+		writeString(p, "{\"v\":1}");
+		DurableWrites.batch(() -> {
+			try {
+				writeString(p, "{\"v\":2}");
+			} catch (IOException e) {
+				fail(e);
+			}
+		});
+		assertEquals("{\"v\":2}", Files.readString(p));
+		assertEquals(perms, Files.getPosixFilePermissions(p));
+	}
+
+	@Test
+	public void testOutcomeIsToldOnceTheBatchEnds() throws IOException {
+		Path ok = tempDir.resolve("ok.json");
+		// a non empty directory cannot be replaced by a file, its rename fails
+		Path blocked = tempDir.resolve("blocked.json");
+		Files.createDirectories(blocked);
+		Files.writeString(blocked.resolve("inside"), "x");
+		List<String> told = new ArrayList<>();
+		DurableWrites.batch(() -> {
+			try {
+				DurableWrites.write(ok.toString(), out -> out.write('1'), replaced -> told.add("ok "+replaced));
+				DurableWrites.write(blocked.toString(), out -> out.write('2'), replaced -> told.add("blocked "+replaced));
+				assertTrue(told.isEmpty());
+			} catch (IOException e) {
+				fail(e);
+			}
+		});
+		assertEquals(List.of("ok true", "blocked false"), told);
+		assertEquals("1", Files.readString(ok));
+		assertTrue(Files.isDirectory(blocked));
+		try (var files = Files.list(tempDir)) {
+			assertTrue(files.noneMatch(f -> f.toString().endsWith(DurableWrites.TMPEXTENSION)));
+		}
+	}
+
+	@Test
+	public void testConcurrentWritesOfOneFile() throws Exception {
+		Path p = tempDir.resolve("shared.json");
+		int nbThreads = 4, nbWrites = 50;
+		ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < nbThreads; ++t) {
+				String content = String.valueOf(t).repeat(1000);
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < nbWrites; ++i) {
+						writeString(p, content);
+					}
+					return null;
+				}));
+			}
+			// no writer fails to put its file in place
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		// the file holds one whole write, never bytes of several
+		String res = Files.readString(p);
+		assertEquals(1000, res.length());
+		assertEquals(String.valueOf(res.charAt(0)).repeat(1000), res);
+		try (var files = Files.list(tempDir)) {
+			assertTrue(files.noneMatch(f -> f.toString().endsWith(DurableWrites.TMPEXTENSION)));
+		}
+	}
+
+	@Test
+	public void testBatchReplacesFilesAtTheEnd() throws IOException {
+		Path a = tempDir.resolve("a.json");
+		Path b = tempDir.resolve("b.json");
+		Path stale = tempDir.resolve("a.smile");
+		writeString(a, "old");
+		Files.writeString(stale, "stale");
+		DurableWrites.batch(() -> {
+			try {
+				writeString(a, "first");
+				writeString(a, "second");
+				writeString(b, "b");
+				DurableWrites.delete(stale.toString());
+				// nothing is visible before the batch ends
+				assertEquals("old", Files.readString(a));
+				assertFalse(Files.exists(b));
+				assertTrue(Files.exists(stale));
+			} catch (IOException e) {
+				fail(e);
+			}
+		});
+		assertFalse(DurableWrites.inBatch());
+		assertEquals("second", Files.readString(a));
+		assertEquals("b", Files.readString(b));
+		assertFalse(Files.exists(stale));
+		try (var files = Files.list(tempDir)) {
+			assertTrue(files.noneMatch(f -> f.toString().endsWith(DurableWrites.TMPEXTENSION)));
+		}
+	}
+
+	@Test
+	public void testBatchWritesEveryFile() throws IOException {
+		int nbFiles = 50;
+		String content = "{\"id\":\"0123456789\",\"questions\":[]}".repeat(20);
+		DurableWrites.batch(() -> {
+			try {
+				for (int i = 0; i < nbFiles; ++i) {
+					writeString(tempDir.resolve("batched").resolve(i+".json"), content);
+				}
+			} catch (IOException e) {
+				fail(e);
+			}
+		});
+		for (int i = 0; i < nbFiles; ++i) {
+			assertEquals(content, Files.readString(tempDir.resolve("batched").resolve(i+".json")));
+		}
+		try (var files = Files.list(tempDir.resolve("batched"))) {
+			assertTrue(files.noneMatch(f -> f.toString().endsWith(DurableWrites.TMPEXTENSION)));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.utils.Option;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the sharing of parsed questions and options.
+ */
+public class InternerTest {
+
+	@AfterEach
+	void tearDown(){
+		Constants.INTERNING = true;
+		QuestionList.Hasher.clearGeneratedCodes();
+	}
+
+	// lists written by different users often reuse the same true/false and catch-all options
+	private List<String> createDataSet(int nbLists, int nbQuestions){
+		List<String> res = new ArrayList<>();
+		for (int i = 0; i < nbLists; ++i) {
+			QuestionList.Builder b = new QuestionList.Builder().ownerId("owner"+(i%10)).name("List "+i).id(String.format("idint%02d", i)).timeCreatedMillis(1L);
+			for (int j = 0; j < nbQuestions; ++j) {
+				if (j%2 == 0) {
+					b.add(new Question("Statement n°"+j+" of chapter "+(i%5)+" is true?"));
+				} else {
+					b.add(new Question("Which one is right for n°"+j+"?",
+						new Option("Answer "+j, true, "Because of rule "+j),
+						new Option("Answer "+(j+1), false),
+						new Option("All of the above", false),
+						new Option("None of the above", false)));
+				}
+			}
+			res.add(b.build().toJson());
+		}
+		return res;
+	}
+
+	// every list is read once per stored version, as list snapshots and attempts do
+	private List<QuestionList> parseAll(List<String> jsons, int copies) throws IOException{
+		List<QuestionList> res = new ArrayList<>();
+		for (int k = 0; k < copies; ++k) {
+			for (String json : jsons) {
+				res.add(QuestionList.Parser.fromString(json).build());
+			}
+		}
+		return res;
+	}
+
+	private static int distinctOptions(List<QuestionList> lists){
+		Map<Option, Boolean> seen = new IdentityHashMap<>();
+		for (QuestionList l : lists) {
+			for (Question q : l) {
+				for (Option o : q.getOptions()) {
+					seen.put(o, true);
+				}
+			}
+		}
+		return seen.size();
+	}
+
+	@Test
+	public void testParsedQuestionsAreShared() throws IOException {
+		String json = createDataSet(1, 6).getFirst();
+		QuestionList a = QuestionList.Parser.fromString(json).build();
+		QuestionList b = QuestionList.Parser.fromString(json).build();
+		assertEquals(a.toJson(), b.toJson());
+		for (int i = 0; i < a.size(); ++i) {
+			assertSame(a.get(i), b.get(i));
+		}
+		// the true/false options of different questions are shared too
+		assertSame(a.get(0).get(0), a.get(2).get(0));
+
+		Question shared = a.get(1);
+		assertThrows(UnsupportedOperationException.class, () -> shared.setExplication("changed"));
+		assertThrows(UnsupportedOperationException.class, () -> shared.add(new Option("Another", false)));
+		List<Option> before = shared.getOptions();
+		Question reordered = shared.rearrageOptions((x, y) -> x.isCorrect()?1:-1);
+		assertNotSame(shared, reordered);
+		assertEquals(before, shared.getOptions());
+		assertFalse(reordered.getOptions().getFirst().isCorrect());
+	}
+
+	@Test
+	public void testDifferentContentIsNotShared() throws IOException {
+		Constants.INTERNING = true;
+		Option plain = Option.intern(new Option("Paris", true));
+		Option explained = Option.intern(new Option("Paris", true, "The capital"));
+		Option wrong = Option.intern(new Option("Paris", false));
+		assertNotSame(plain, explained);
+		assertNotSame(plain, wrong);
+		assertSame(plain, Option.intern(new Option("Paris", true)));
+	}
+
+	@Test
+	public void testCopiesShareTheirOptions() throws IOException {
+		List<String> jsons = createDataSet(10, 10);
+		int copies = 5;
+
+		Constants.INTERNING = false;
+		int plainOptions = distinctOptions(parseAll(jsons, copies));
+
+		Constants.INTERNING = true;
+		List<QuestionList> interned = parseAll(jsons, copies);
+		int internedOptions = distinctOptions(interned);
+
+		assertTrue(internedOptions*copies <= plainOptions);
+		assertTrue(Option.internedCount() >= internedOptions);
+		assertEquals(jsons.size()*copies, interned.size());
+	}
+}
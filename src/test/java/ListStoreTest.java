@@ -0,0 +1,171 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.utils.ListStore;
+import com.linked.quizbot.utils.Persistence;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
+import com.linked.quizbot.utils.User;
+import com.linked.quizbot.utils.Users;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the segmented list store.
+ */
+public class ListStoreTest {
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void setUp() throws IOException{
+		TestData.useTempStorage(tempDir);
+		// loading QuestionList exports its example list, which must not land in the store
+		QuestionList.getExampleQuestionList();
+		Constants.LISTSTORE = true;
+	}
+
+	@AfterEach
+	void tearDown(){
+		ListStore.close();
+		Constants.LISTSTORE = false;
+		Constants.LISTSTOREMMAP = false;
+		Constants.LISTSTORESEGMENTBYTES = 64L*1024*1024;
+		TestData.clearRegistry();
+	}
+
+	private List<Path> segments() throws IOException{
+		try (Stream<Path> files = Files.list(Path.of(ListStore.pathToStore()))){
+			return files.filter(p -> p.toString().endsWith(ListStore.EXTENSION)).sorted().toList();
+		}
+	}
+
+	@Test
+	public void testPutGetDeleteAndReopen() {
+		QuestionList a = TestData.createList("ownerA", "idaaaaa", 3);
+		QuestionList b = TestData.createList("ownerB", "idbbbbb", 2);
+		ListStore.put(a);
+		ListStore.put(b);
+		assertEquals(a.toJson(), ListStore.get("idaaaaa").toJson());
+
+		a.add(new Question("One more?", TestData.createSampleOptions("Yes", "No")));
+		ListStore.put(a);
+		ListStore.delete("idbbbbb");
+		assertEquals(a.toJson(), ListStore.get("idaaaaa").toJson());
+		assertNull(ListStore.get("idbbbbb"));
+		assertFalse(ListStore.hasOwner("ownerB"));
+
+		// the index is rebuilt from the segments alone
+		ListStore.close();
+		assertEquals(1, ListStore.size());
+		assertEquals(a.toJson(), ListStore.get("idaaaaa").toJson());
+		assertNull(ListStore.get("idbbbbb"));
+		assertEquals(1, ListStore.getAll("ownerA").size());
+	}
+
+	@Test
+	public void testTornRecordIsTruncated() throws IOException {
+		QuestionList a = TestData.createList("ownerA", "idaaaaa", 3);
+		ListStore.put(a);
+		long size = ListStore.sizeOnDisk();
+		ListStore.put(TestData.createList("ownerA", "idccccc", 3));
+		ListStore.close();
+
+		// a crash in the middle of the second record
+		Path segment = segments().getLast();
+		try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)){
+			channel.truncate(size + 20);
+		}
+		assertEquals(1, ListStore.size());
+		assertEquals(size, ListStore.sizeOnDisk());
+		assertEquals(a.toJson(), ListStore.get("idaaaaa").toJson());
+		assertFalse(ListStore.contains("idccccc"));
+	}
+
+	@Test
+	public void testCompactionKeepsLatestRecords() throws IOException {
+		Constants.LISTSTORESEGMENTBYTES = 4096;
+		Constants.LISTSTOREMMAP = true;
+		List<QuestionList> lists = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			lists.add(TestData.createList("ownerA", String.format("id%05d", i), 5));
+		}
+		for (int round = 0; round < 10; ++round) {
+			for (QuestionList l : lists) {
+				l.setName("Round "+round);
+				ListStore.put(l);
+			}
+		}
+		ListStore.delete("id00000");
+		long before = ListStore.sizeOnDisk();
+		ListStore.compact();
+		long after = ListStore.sizeOnDisk();
+		assertTrue(after < before);
+		for (QuestionList l : lists.subList(1, lists.size())) {
+			assertEquals(l.toJson(), ListStore.get(l.getId()).toJson());
+		}
+		assertNull(ListStore.get("id00000"));
+
+		ListStore.close();
+		assertEquals(lists.size()-1, ListStore.size());
+		assertEquals(lists.get(5).toJson(), ListStore.get(lists.get(5).getId()).toJson());
+		assertNull(ListStore.get("id00000"));
+	}
+
+	@Test
+	public void testUsersThroughTheStore() {
+		User alice = Users.addUser(new User.Builder().id("aliceUser").build());
+		QuestionList la = TestData.createList("aliceUser", "idaaaaa", 2);
+		QuestionList lb = TestData.createList("aliceUser", "idbbbbb", 2);
+		alice.addList(la);
+		alice.addList(lb);
+		Persistence.flush();
+		alice.deleteList(lb);
+		Persistence.flush();
+		assertFalse(new File(la.pathToList()).exists());
+
+		Users.clear();
+		ListStore.close();
+		assertEquals("aliceUser", Users.getOwnerIdOfList("idaaaaa"));
+		assertEquals(la.toJson(), Users.getById("idaaaaa").toJson());
+		assertNull(Users.getById("idbbbbb"));
+	}
+
+	@Test
+	public void testMoveFromAndToFiles() {
+		Constants.LISTSTORE = false;
+		int nbLists = 50;
+		List<QuestionList> lists = new ArrayList<>();
+		for (int i = 0; i < nbLists; ++i) {
+			lists.add(TestData.createList("owner"+(i%10), String.format("id%05d", i), 10));
+		}
+		for (QuestionList l : lists) {
+			l.exportListQuestionAsJson();
+		}
+
+		assertEquals(nbLists, ListStore.importFromFiles());
+		assertTrue(Constants.LISTSTORE);
+		assertFalse(new File(lists.get(0).pathToList()).exists());
+		for (QuestionList l : lists) {
+			l.exportListQuestionAsJson();
+		}
+		assertEquals(nbLists/10, ListStore.getAll("owner3").size());
+
+		assertEquals(nbLists, ListStore.exportToFiles());
+		assertFalse(Constants.LISTSTORE);
+		assertTrue(new File(lists.get(0).pathToList()).exists());
+		assertEquals(lists.get(7).toJson(), Users.importLists("owner7").get(lists.get(7).getId()).toJson());
+	}
+}
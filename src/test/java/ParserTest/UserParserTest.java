@@ -4,6 +4,10 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.linked.quizbot.Constants;
 import com.linked.quizbot.utils.Attempt;
+import com.linked.quizbot.utils.Awnser;
+import com.linked.quizbot.utils.Option;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
 import com.linked.quizbot.utils.User;
 import com.linked.quizbot.utils.User.Parser;
 
@@ -14,8 +18,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -309,4 +315,51 @@ public class UserParserTest {
 		assertThrows(IOException.class, () -> User.Parser.parseAttempts(jp, invalidJson));
 		jp.close();
 	}
+	
+	@Test
+	@DisplayName("Test User.Writer output is read back by User.Parser")
+	void testWriterRoundTrip() throws IOException{
+		User user = new User.Builder()
+			.id("roundTripUser")
+			.prefix("\"quoted\" \\ prefix")
+			.addTag("tagA", "<:emojiA:12345>")
+			.addTag("ünïcödé", "🎨")
+			.useButtons(false)
+			.useAutoNext(true)
+			.build();
+		
+		String json = User.Writer.toJson(user);
+		User parsed = User.Parser.fromString(json).build();
+		
+		assertEquals(user.getId(), parsed.getId());
+		assertEquals(user.getPrefix(), parsed.getPrefix());
+		assertEquals(user.getEmojiPerTagName(), parsed.getEmojiPerTagName());
+		assertEquals(user.useButtons(), parsed.useButtons());
+		assertEquals(user.useAutoNext(), parsed.useAutoNext());
+		assertEquals(json, parsed.toJson());
+	}
+	
+	@Test
+	@DisplayName("Test Attempt.Writer output is read back by Attempt.Parser")
+	void testAttemptWriterRoundTrip() throws IOException{
+		Option right = new Option("Right", true, "because");
+		Option wrong = new Option("Wrong", false);
+		QuestionList list = new QuestionList.Builder().ownerId("roundTripUser").name("RoundTrip").id("rndtrp0").timeCreatedMillis(1L)
+			.add(new Question.Builder().question("Q1").add(right).add(wrong).build())
+			.build();
+		Map<Integer, Awnser> awnsers = new HashMap<>();
+		awnsers.put(0, new Awnser(1500L, Set.of(right)));
+		Attempt att = new Attempt("roundTripUser", list, 1000L, 5000L, awnsers);
+		
+		String json = Attempt.Writer.toJson(att);
+		assertTrue(json.startsWith("{\"userId\":\"roundTripUser\",\"listId\":\"rndtrp0\","));
+		assertFalse(json.contains("\n"));
+		Attempt parsed = Attempt.Parser.parse(new JsonFactory().createParser(json), json);
+		
+		assertEquals(att.getUserId(), parsed.getUserId());
+		assertEquals(att.getStart(), parsed.getStart());
+		assertEquals(att.getEnd(), parsed.getEnd());
+		assertEquals(att.getAwnsers(), parsed.getAwnsers());
+		assertEquals(json, parsed.toJson());
+	}
 }
@@ -1,14 +1,21 @@
 
 import com.linked.quizbot.utils.QuestionList;
 import com.linked.quizbot.utils.Question;
-import com.linked.quizbot.utils.Option;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,31 +35,21 @@ public class QuestionListTest {
 	public void setUp() {
 		// Create the first QuestionList with specific attributes and questions
 		questionList1 = new QuestionList("author1", "Test Questions");
-		questionList1.add(new Question("What is H2O?", createSampleOptions("Water", "Carbon Dioxide")));
-		questionList1.add(new Question("What is the capital of France?", createSampleOptions("Paris", "London")));
+		questionList1.add(new Question("What is H2O?", TestData.createSampleOptions("Water", "Carbon Dioxide")));
+		questionList1.add(new Question("What is the capital of France?", TestData.createSampleOptions("Paris", "London")));
 		
 		// Create a second QuestionList with the same attributes and questions (should be equal)
 		questionList2 = new QuestionList.Builder().add(questionList1).build();
 		
 		// Create a third QuestionList with different attributes (should not be equal)
 		questionList3 = new QuestionList("author2", "Different Questions");
-		questionList3.add(new Question("Who was the first U.S. President?", createSampleOptions("George Washington", "Thomas Jefferson")));
+		questionList3.add(new Question("Who was the first U.S. President?", TestData.createSampleOptions("George Washington", "Thomas Jefferson")));
 		
 		// Initialize the collection of QuestionLists
 		questionListCollection = new ArrayList<>();
 		questionListCollection.add(questionList1);
 	}
 	
-	/**
-	 * Helper method to create sample options for questions
-	 */
-	private LinkedList<Option> createSampleOptions(String correctAnswer, String incorrectAnswer) {
-		LinkedList<Option> options = new LinkedList<>();
-		options.add(new Option(correctAnswer, true, "Correct explanation"));
-		options.add(new Option(incorrectAnswer, false, "Incorrect explanation"));
-		return options;
-	}
-	
 	@Test
 	public void testQuestionListEquality() {
 		// Test equality between two QuestionLists with same attributes and questions
@@ -127,9 +124,60 @@ public class QuestionListTest {
 		
 		// Modify the list by adding a new question
 		modifiedList.add(new Question("What is the speed of light?",
-			createSampleOptions("299,792,458 m/s", "150,000,000 m/s")));
+			TestData.createSampleOptions("299,792,458 m/s", "150,000,000 m/s")));
 		// After modification, the list should no longer be equal
 		assertFalse(questionListCollection.contains(modifiedList),
 			"After modification, collection should not contain the modified QuestionList");
 	}
+	
+	@Test
+	public void testStreamingExportOfLargeList(@TempDir Path tempDir) throws IOException {
+		int nbQuestions = 500;
+		QuestionList big = new QuestionList("author1", "Big \"quoted\" list");
+		for (int i = 0; i < nbQuestions; ++i) {
+			big.add(new Question("Question n°"+i+" \\ \"what\"?\n", TestData.createSampleOptions("Right "+i, "Wrong\t"+i)));
+		}
+		Path dest = tempDir.resolve("big.json");
+		
+		big.exportListQuestionAsJson(dest.toString());
+		String json = big.toJson();
+		
+		// the streamed file is read back by the existing parser
+		QuestionList parsed = QuestionList.Parser.fromJsonFile(dest.toString()).build();
+		assertEquals(nbQuestions, parsed.size());
+		assertEquals(big.getName(), parsed.getName());
+		assertEquals(json, Files.readString(dest));
+		assertEquals(json, parsed.toJson());
+	}
+	
+	@Test
+	public void testIdAllocationUnderContention() throws Exception {
+		QuestionList.Hasher.clearGeneratedCodes();
+		int threads = 4;
+		int perThread = 1000;
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; ++t) {
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < perThread; ++i) {
+						String id = QuestionList.Hasher.generate("owner"+"name", 1L);
+						assertEquals(QuestionList.Hasher.DEFAULT_LENGTH, id.length());
+						assertTrue(Character.isLetter(id.charAt(0)));
+						assertTrue(id.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')));
+						assertTrue(seen.add(id), "id handed out twice: "+id);
+						assertTrue(QuestionList.Hasher.isAlreadyInUse(id));
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(threads*perThread, seen.size());
+		QuestionList.Hasher.clearGeneratedCodes();
+	}
 }
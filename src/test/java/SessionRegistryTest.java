@@ -0,0 +1,315 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.core.BotCore;
+import com.linked.quizbot.core.SessionRegistry;
+import com.linked.quizbot.core.viewers.QuizBot;
+import com.linked.quizbot.core.viewers.Viewer;
+import com.linked.quizbot.utils.Option;
+import com.linked.quizbot.utils.Persistence;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
+import com.linked.quizbot.utils.Users;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the registry of game sessions.
+ */
+public class SessionRegistryTest {
+	@TempDir
+	Path tempDir;
+
+	private QuestionList list;
+	private long idleMillis;
+	private final AtomicLong now = new AtomicLong();
+
+	@BeforeEach
+	void setUp() throws IOException{
+		TestData.useTempStorage(tempDir);
+		idleMillis = Constants.SESSIONIDLEMILLIS;
+		now.set(System.currentTimeMillis());
+		SessionRegistry.setClock(now::get);
+		SessionRegistry.clear();
+		list = new QuestionList.Builder().ownerId("owner").name("Sessions").id("sessn01")
+			.add(new Question("Q1", new Option("A", true), new Option("B", false)))
+			.add(new Question("Q2", new Option("C", true), new Option("D", false))).build();
+	}
+
+	@AfterEach
+	void tearDown(){
+		Constants.SESSIONIDLEMILLIS = idleMillis;
+		SessionRegistry.setClock(System::currentTimeMillis);
+		SessionRegistry.clear();
+		Users.clear();
+		QuestionList.Hasher.clearGeneratedCodes();
+	}
+
+	@Test
+	public void testLookupsAndUnregister(){
+		QuizBot game = new QuizBot(list);
+		Viewer viewer = new Viewer(list);
+		assertNotEquals(game.getId(), viewer.getId());
+		game.addPlayer("alice");
+		game.addPlayer("bob");
+		SessionRegistry.bindMessage(game, "m1", "c1", -1);
+		SessionRegistry.bindMessage(game, "m2", "c1", 0);
+		SessionRegistry.bindMessage(viewer, "m3", "c1", -1);
+		SessionRegistry.requestExplication("m2");
+
+		assertSame(game, BotCore.getViewer("m1"));
+		assertSame(game, SessionRegistry.getViewer("m2"));
+		assertEquals(0, SessionRegistry.getIndex(game, "m2"));
+		assertEquals(-1, SessionRegistry.getIndex(game, "m1"));
+		assertNull(SessionRegistry.getIndex(viewer, "m1"));
+		assertEquals(new HashSet<>(List.of(game, viewer)), new HashSet<>(SessionRegistry.getSessionsInChannel("c1")));
+		assertEquals(List.of(game), SessionRegistry.getSessionsOfPlayer("alice"));
+		assertEquals(2, SessionRegistry.size());
+
+		assertTrue(SessionRegistry.unregister(game));
+		assertFalse(SessionRegistry.unregister(game));
+		assertNull(SessionRegistry.getViewer("m1"));
+		assertNull(SessionRegistry.getViewer("m2"));
+		assertFalse(SessionRegistry.isExplicationRequested("m2"));
+		assertEquals(List.of(viewer), SessionRegistry.getSessionsInChannel("c1"));
+		assertTrue(SessionRegistry.getSessionsOfPlayer("alice").isEmpty());
+		assertEquals(1, SessionRegistry.messageCount());
+	}
+
+	@Test
+	public void testHundredsOfConcurrentGames() throws Exception {
+		int nbGames = 500, nbThreads = 8, eventsPerGame = 50;
+		List<QuizBot> games = new ArrayList<>();
+		for (int i = 0; i < nbGames; ++i) {
+			games.add(new QuizBot(list));
+		}
+		int[] handled = new int[nbGames];
+		ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+		try {
+			List<Future<?>> done = new ArrayList<>();
+			for (int t = 0; t < nbThreads; ++t) {
+				final int thread = t;
+				done.add(pool.submit(() -> {
+					for (int e = 0; e < eventsPerGame; ++e) {
+						for (int g = 0; g < nbGames; ++g) {
+							QuizBot game = games.get(g);
+							final int index = g;
+							if (e == 0) {
+								game.addPlayer("player"+thread);
+								SessionRegistry.bindMessage(game, "msg"+g+"-"+thread, "chan"+(g%10), thread);
+							}
+							assertSame(game, SessionRegistry.getViewer("msg"+g+"-"+thread));
+							// handlers of one game never overlap, so a plain counter stays exact
+							SessionRegistry.runExclusive(game, () -> handled[index]++);
+						}
+					}
+				}));
+			}
+			for (Future<?> f : done) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int g = 0; g < nbGames; ++g) {
+			assertEquals(nbThreads*eventsPerGame, handled[g]);
+			assertEquals(nbThreads, games.get(g).getPlayers().size());
+		}
+		assertEquals(nbGames, SessionRegistry.size());
+		assertEquals(nbGames*nbThreads, SessionRegistry.messageCount());
+		assertEquals(nbGames/10, SessionRegistry.getSessionsInChannel("chan3").size());
+		assertEquals(nbGames, SessionRegistry.getSessionsOfPlayer("player0").size());
+
+		for (QuizBot game : games) {
+			SessionRegistry.unregister(game);
+		}
+		assertEquals(0, SessionRegistry.size());
+		assertEquals(0, SessionRegistry.messageCount());
+		assertTrue(SessionRegistry.getSessionsInChannel("chan3").isEmpty());
+	}
+
+	@Test
+	public void testIdleSessionsExpire() throws Exception {
+		String player = "111111111111111111";
+		Constants.SESSIONIDLEMILLIS = 60000;
+		long t0 = now.get();
+		QuizBot game = new QuizBot(list);
+		game.start();
+		game.addPlayer(player);
+		SessionRegistry.bindMessage(game, "m1", "c1", -1);
+		Viewer viewer = new Viewer(list);
+		SessionRegistry.bindMessage(viewer, "m2", "c1", -1);
+		SessionRegistry.requestExplication("m1");
+		long expiredBefore = SessionRegistry.expiredCount();
+
+		// the viewer is still used, its deadline is pushed back when it fires
+		now.set(t0+2100);
+		SessionRegistry.runExclusive(viewer, () -> {});
+		assertEquals(0, SessionRegistry.expireIdle(t0+30000));
+		assertEquals(1, SessionRegistry.expireIdle(t0+62000));
+		SessionRegistry.awaitMailboxes();
+		assertEquals(expiredBefore+1, SessionRegistry.expiredCount());
+		assertSame(viewer, SessionRegistry.getViewer("m2"));
+
+		// the abandoned game was ended, its player's attempt saved and all its entries dropped
+		assertFalse(game.isActive());
+		assertNull(SessionRegistry.getViewer("m1"));
+		assertFalse(SessionRegistry.isExplicationRequested("m1"));
+		assertTrue(SessionRegistry.getSessionsOfPlayer(player).isEmpty());
+		assertEquals(1, Users.get(player).getAttempts(list.getId()).size());
+		Persistence.drain();
+
+		assertEquals(1, SessionRegistry.expireIdle(t0+70000));
+		SessionRegistry.awaitMailboxes();
+		assertEquals(0, SessionRegistry.size());
+		assertEquals(0, SessionRegistry.messageCount());
+		assertTrue(SessionRegistry.getSessionsInChannel("c1").isEmpty());
+	}
+
+	@Test
+	public void testEventQueuedBeforeAnExpiryKeepsTheGame() throws Exception {
+		Constants.SESSIONIDLEMILLIS = 60000;
+		long t0 = now.get();
+		QuizBot game = new QuizBot(list);
+		game.start();
+		SessionRegistry.bindMessage(game, "m1", "c1", -1);
+
+		// holds the mailbox so the next event is still queued when the expiry is decided
+		CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+		SessionRegistry.post(game, () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		CompletableFuture<Void> click = SessionRegistry.post(game, () -> {});
+		assertEquals(1, SessionRegistry.expireIdle(t0+62000));
+		// the click is handled after the expiry was decided
+		now.set(t0+61000);
+		release.countDown();
+		click.get(10, TimeUnit.SECONDS);
+		SessionRegistry.awaitMailboxes();
+
+		// the click came first, the game goes on until it is idle again
+		assertTrue(game.isActive());
+		assertSame(game, SessionRegistry.getViewer("m1"));
+		assertEquals(0, SessionRegistry.expireIdle(t0+120000));
+		assertEquals(1, SessionRegistry.expireIdle(t0+122000));
+		SessionRegistry.awaitMailboxes();
+		assertFalse(game.isActive());
+		assertNull(SessionRegistry.getViewer("m1"));
+	}
+
+	@Test
+	public void testGamesOfOnePlayerEndInParallel() throws Exception {
+		String player = "111111111111111111";
+		int nbGames = 64;
+		List<QuizBot> games = new ArrayList<>();
+		for (int i = 0; i < nbGames; ++i) {
+			QuizBot game = new QuizBot(list);
+			game.start();
+			game.addPlayer(player);
+			games.add(game);
+		}
+		// the stats are then kept up to date by every attempt recorded
+		assertEquals(0, Users.addUser(player).getListStats(list.getId()).getPlayCount());
+		// each game ends on its own mailbox, so the attempts reach the same user from several threads
+		List<CompletableFuture<Void>> ended = new ArrayList<>();
+		for (QuizBot game : games) {
+			ended.add(SessionRegistry.post(game, game::end));
+		}
+		CompletableFuture.allOf(ended.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+
+		assertEquals(nbGames, Users.get(player).getRollup(list.getId()).getCount());
+		assertEquals(nbGames, Users.get(player).getListStats(list.getId()).getPlayCount());
+		Persistence.drain();
+	}
+
+	@Test
+	public void testMailboxesKeepOrderPerSession() throws Exception {
+		int nbGames = 200, nbProducers = 4, eventsPerProducer = 100;
+		List<QuizBot> games = new ArrayList<>();
+		for (int i = 0; i < nbGames; ++i) {
+			QuizBot game = new QuizBot(list);
+			SessionRegistry.register(game);
+			games.add(game);
+		}
+		// last sequence number seen per game and producer, and events running per game
+		int[][] lastSeen = new int[nbGames][nbProducers];
+		int[] running = new int[nbGames];
+		AtomicInteger overlaps = new AtomicInteger(), reordered = new AtomicInteger();
+		List<CompletableFuture<Void>> last = new ArrayList<>();
+		ExecutorService producers = Executors.newFixedThreadPool(nbProducers);
+		try {
+			List<Future<List<CompletableFuture<Void>>>> done = new ArrayList<>();
+			for (int p = 0; p < nbProducers; ++p) {
+				final int producer = p;
+				done.add(producers.submit(() -> {
+					List<CompletableFuture<Void>> res = new ArrayList<>();
+					for (int e = 1; e <= eventsPerProducer; ++e) {
+						for (int g = 0; g < nbGames; ++g) {
+							final int game = g, seq = e;
+							CompletableFuture<Void> f = SessionRegistry.post(games.get(g), () -> {
+								if (++running[game] != 1) overlaps.incrementAndGet();
+								if (lastSeen[game][producer] != seq-1) reordered.incrementAndGet();
+								lastSeen[game][producer] = seq;
+								--running[game];
+							});
+							if (e == eventsPerProducer) res.add(f);
+						}
+					}
+					return res;
+				}));
+			}
+			for (Future<List<CompletableFuture<Void>>> f : done) {
+				last.addAll(f.get());
+			}
+			CompletableFuture.allOf(last.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+		} finally {
+			producers.shutdown();
+		}
+
+		assertEquals(0, overlaps.get());
+		assertEquals(0, reordered.get());
+		for (int g = 0; g < nbGames; ++g) {
+			for (int p = 0; p < nbProducers; ++p) {
+				assertEquals(eventsPerProducer, lastSeen[g][p]);
+			}
+		}
+
+		// a failing event does not stop the next ones
+		QuizBot game = games.getFirst();
+		CompletableFuture<Void> failed = SessionRegistry.post(game, () -> { throw new IllegalStateException("expected"); });
+		CompletableFuture<Void> after = SessionRegistry.post(game, () -> {});
+		after.get(10, TimeUnit.SECONDS);
+		assertTrue(failed.isCompletedExceptionally());
+
+		// an event of an unregistered game is dropped, the game is not registered again
+		SessionRegistry.unregister(game);
+		AtomicInteger late = new AtomicInteger();
+		SessionRegistry.post(game, late::incrementAndGet).get(10, TimeUnit.SECONDS);
+		assertEquals(0, late.get());
+		assertEquals(nbGames-1, SessionRegistry.size());
+	}
+}
@@ -0,0 +1,91 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.utils.Persistence;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
+import com.linked.quizbot.utils.StorageCodec;
+import com.linked.quizbot.utils.StorageMigration;
+import com.linked.quizbot.utils.User;
+import com.linked.quizbot.utils.Users;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the JSON and Smile storage formats and the migration between them.
+ */
+public class StorageCodecTest {
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void setUp() throws IOException{
+		TestData.useTempStorage(tempDir);
+	}
+
+	@AfterEach
+	void tearDown(){
+		Constants.STORAGECODEC = StorageCodec.JSON;
+		TestData.clearRegistry();
+	}
+
+	@Test
+	public void testSmileIsSmallerAndReadsBack() throws IOException {
+		int nbQuestions = 500;
+		QuestionList big = new QuestionList("author1", "Big list");
+		for (int i = 0; i < nbQuestions; ++i) {
+			big.add(new Question("Question n°"+i+"?", TestData.createSampleOptions("Right "+i, "Wrong "+i)));
+		}
+		Path json = tempDir.resolve("big.json");
+		Path smile = tempDir.resolve("big.smile");
+		big.exportListQuestionAsJson(json.toString());
+		big.exportListQuestionAsJson(smile.toString());
+		QuestionList fromJson = QuestionList.Parser.fromJsonFile(json.toString()).build();
+		QuestionList fromSmile = QuestionList.Parser.fromJsonFile(smile.toString()).build();
+
+		assertTrue(Files.size(smile) < Files.size(json));
+		assertEquals(nbQuestions, fromSmile.size());
+		assertEquals(fromJson.toJson(), fromSmile.toJson());
+		assertEquals(big.toJson(), fromSmile.toJson());
+	}
+
+	@Test
+	public void testMigrateToSmileAndBack() {
+		User alice = Users.addUser(new User.Builder().id("aliceUser").prefix("a!").build());
+		QuestionList la = new QuestionList.Builder().ownerId("aliceUser").name("A").id("idaaaaa").timeCreatedMillis(1L).build();
+		la.add(new Question("What is H2O?", TestData.createSampleOptions("Water", "Carbon Dioxide")));
+		alice.addList(la);
+		Persistence.flush();
+		String listJson = la.toJson();
+		String base = la.pathToListWithoutExtension();
+		String userBase = User.pathToUserDataWithoutExtension("aliceUser");
+		assertTrue(new File(base+".json").exists());
+		assertTrue(new File(userBase+".json").exists());
+
+		assertTrue(StorageMigration.migrate(StorageCodec.SMILE) >= 2);
+		assertSame(StorageCodec.SMILE, Constants.STORAGECODEC);
+		assertTrue(new File(base+".smile").exists());
+		assertFalse(new File(base+".json").exists());
+		assertTrue(new File(userBase+".smile").exists());
+		assertFalse(new File(userBase+".json").exists());
+
+		Users.clear();
+		User reloaded = Users.get("aliceUser");
+		assertEquals("a!", reloaded.getPrefix());
+		assertEquals(listJson, Users.getById("idaaaaa").toJson());
+
+		StorageMigration.migrate(StorageCodec.JSON);
+		assertTrue(new File(base+".json").exists());
+		assertFalse(new File(base+".smile").exists());
+		Users.clear();
+		assertEquals(listJson, Users.getById("idaaaaa").toJson());
+	}
+}
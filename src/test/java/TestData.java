@@ -0,0 +1,59 @@
+import com.linked.quizbot.Constants;
+import com.linked.quizbot.utils.Option;
+import com.linked.quizbot.utils.Question;
+import com.linked.quizbot.utils.QuestionList;
+import com.linked.quizbot.utils.Users;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+
+/**
+ * Fixtures shared by the test classes that read and write lists and users on disk.
+ */
+final class TestData {
+	private TestData(){}
+
+	/**
+	 * Helper method to create sample options for questions
+	 */
+	static LinkedList<Option> createSampleOptions(String correctAnswer, String incorrectAnswer) {
+		LinkedList<Option> options = new LinkedList<>();
+		options.add(new Option(correctAnswer, true, "Correct explanation"));
+		options.add(new Option(incorrectAnswer, false, "Incorrect explanation"));
+		return options;
+	}
+
+	/**
+	 * Helper method to create a list of nbQuestions numbered questions.
+	 */
+	static QuestionList createList(String ownerId, String id, int nbQuestions){
+		QuestionList l = new QuestionList.Builder().ownerId(ownerId).name("List "+id).id(id).timeCreatedMillis(1L).build();
+		for (int i = 0; i < nbQuestions; ++i) {
+			l.add(new Question("Question n°"+i+" of "+id+"?", createSampleOptions("Right "+i, "Wrong "+i)));
+		}
+		return l;
+	}
+
+	/**
+	 * Points the lists and users directories at tempDir and starts from an empty registry.
+	 */
+	static void useTempStorage(Path tempDir) throws IOException{
+		Files.createDirectories(tempDir.resolve("lists"));
+		Files.createDirectories(tempDir.resolve("users"));
+		Constants.LISTSPATH = tempDir.resolve("lists").toString();
+		Constants.USERDATAPATH = tempDir.resolve("users").toString();
+		Constants.SEPARATOR = File.separator;
+		clearRegistry();
+	}
+
+	/**
+	 * Forgets every loaded user and every generated list id.
+	 */
+	static void clearRegistry(){
+		Users.clear();
+		QuestionList.Hasher.clearGeneratedCodes();
+	}
+}
@@ -21,6 +21,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.reset;
@@ -163,9 +164,16 @@ public class UserTest {
 		predefinedUserStub.exportUserData();
 		// Instantiate User, which should load data
 		Users.clear();
+		Persistence.flush();
 		User user = new User(userId);
-		Users.addUser(user);
 		
+		// what was just read is not written back
+		assertEquals(0, Persistence.pendingCount());
+		assertFalse(user.isModified());
+		for (QuestionList l : user.getLists().values()){
+			assertFalse(l.isModified());
+		}
+		Users.addUser(user);
 		assertNotNull(user);
 		assertEquals(userId, user.getId());
 		assertEquals(expectedPrefix, user.getPrefix());
@@ -218,12 +226,361 @@ public class UserTest {
 		assertEquals("new!", user.getPrefix());
 		
 		// Verify the content of the exported file
+		Persistence.flush();
 		Path userFile = tempUserDataPath.resolve(userId).resolve("user-data.json");
 		assertTrue(Files.exists(userFile));
 		String fileContent = readFileContent(userFile);
 		assertTrue(fileContent.matches(".*\"prefix\"\\s*:\\s*\"new!\".*"));
 	}
 	
+	@Test
+	@DisplayName("Test a flush writes the copy taken when the user was marked dirty")
+	void testFlushWritesTheCopyTakenWhenMarkedDirty() throws IOException{
+		long delay = Constants.FLUSHDELAYMILLIS;
+		Constants.FLUSHDELAYMILLIS = 60_000;
+		try {
+			String userId = "copyUser";
+			User user = Users.addUser(new User.Builder().id(userId).build());
+			user.setPrefix("copied!");
+			// changes the user without marking it dirty
+			user.useAutoNext(true);
+
+			Persistence.flush();
+			String fileContent = readFileContent(tempUserDataPath.resolve(userId).resolve("user-data.json"));
+			assertTrue(fileContent.matches(".*\"prefix\"\\s*:\\s*\"copied!\".*"));
+			assertTrue(fileContent.matches(".*\"useAutoNext\"\\s*:\\s*false.*"));
+			// the change made after the copy is still to be written
+			assertTrue(user.isModified());
+		} finally {
+			Constants.FLUSHDELAYMILLIS = delay;
+		}
+	}
+	
+	@Test
+	@DisplayName("Test a user whose file could not be replaced stays modified and dirty")
+	void testFailedRenameKeepsTheUserDirty() throws IOException{
+		long delay = Constants.FLUSHDELAYMILLIS;
+		Constants.FLUSHDELAYMILLIS = 60_000;
+		try {
+			String userId = "blockedUser";
+			User user = Users.addUser(new User.Builder().id(userId).build());
+			Persistence.flush();
+			// a non empty directory in place of the file makes its rename fail
+			Path userFile = tempUserDataPath.resolve(userId).resolve("user-data.json");
+			Files.delete(userFile);
+			Files.createDirectories(userFile.resolve("blocker"));
+			user.setPrefix("later!");
+
+			Persistence.flush();
+			assertTrue(user.isModified());
+			assertTrue(Persistence.isDirty(user));
+
+			Files.delete(userFile.resolve("blocker"));
+			Files.delete(userFile);
+			Persistence.flush();
+			assertFalse(user.isModified());
+			assertTrue(readFileContent(userFile).matches(".*\"prefix\"\\s*:\\s*\"later!\".*"));
+		} finally {
+			Constants.FLUSHDELAYMILLIS = delay;
+		}
+	}
+	
+	@Test
+	@DisplayName("Test mutations are written behind and coalesced")
+	void testWriteBehindCoalescesMutations() throws IOException{
+		long delay = Constants.FLUSHDELAYMILLIS;
+		Constants.FLUSHDELAYMILLIS = 60_000;
+		try {
+			String userId = "writeBehindUser";
+			User user = new User.Builder().id(userId).build();
+			Users.addUser(user);
+			user.setPrefix("a!");
+			user.createTag("later", "⏰");
+			user.setPrefix("b!");
+
+			// Nothing is written on the calling thread
+			Path userFile = tempUserDataPath.resolve(userId).resolve("user-data.json");
+			assertFalse(Files.exists(userFile));
+			assertTrue(Persistence.isDirty(user));
+
+			Persistence.flush();
+			assertFalse(Persistence.isDirty(user));
+			String fileContent = readFileContent(userFile);
+			assertTrue(fileContent.matches(".*\"prefix\"\\s*:\\s*\"b!\".*"));
+			assertTrue(fileContent.matches(".*\"later\".*"));
+		} finally {
+			Constants.FLUSHDELAYMILLIS = delay;
+		}
+	}
+
+	@Test
+	@DisplayName("Test attempts are appended to the journal and replayed on load")
+	void testAttemptJournalReplay() throws IOException{
+		String userId = "journalUser";
+		QuestionList list = new QuestionList.Builder().ownerId(userId).name("Journal").id("jrnl001")
+			.add(new Question("Q1", new Option("A", true), new Option("B", false))).build();
+		User user = Users.addUser(new User.Builder().id(userId).build());
+		Attempt first = new Attempt(userId, list, 1000L, 2000L, new HashMap<>());
+		Attempt second = new Attempt(userId, list, 3000L, 4000L, new HashMap<>());
+		second.addAwnser(0, list.get(0).get(0), 500L);
+		user.addAttempt(list.getId(), first);
+		user.addAttempt(list.getId(), second);
+		Persistence.drain();
+
+		Path journal = tempUserDataPath.resolve(userId).resolve(AttemptJournal.FILENAME);
+		assertEquals(2, Files.readAllLines(journal).size());
+		assertFalse(readFileContent(tempUserDataPath.resolve(userId).resolve("user-data.json")).contains("attemptsByListId"));
+
+		// a torn last line is skipped and compacted away
+		Files.writeString(journal, "{\"listId\":\"jrnl001\",\"attem", java.nio.file.StandardOpenOption.APPEND);
+		Users.clear();
+		User reloaded = new User(userId);
+		List<Attempt> attempts = reloaded.getAttempts(list.getId());
+		assertEquals(2, attempts.size());
+		assertEquals(3000L, attempts.get(0).getStart());
+		assertEquals(1.0, attempts.get(0).getScore());
+		assertEquals(1000L, attempts.get(1).getStart());
+		Persistence.drain();
+		assertEquals(2, Files.readAllLines(journal).size());
+	}
+
+	@Test
+	@DisplayName("Test old attempts are folded into rollups when the journal is compacted")
+	void testAttemptRetentionAndRollups() throws IOException{
+		String userId = "rollupUser";
+		int kept = Constants.ATTEMPTSKEPT;
+		Constants.ATTEMPTSKEPT = 3;
+		try {
+			QuestionList list = new QuestionList.Builder().ownerId(userId).name("Rollup").id("rlup001")
+				.add(new Question("Q1", new Option("A", true), new Option("B", false)))
+				.add(new Question("Q2", new Option("C", true), new Option("D", false))).build();
+			User user = Users.addUser(new User.Builder().id(userId).build());
+			// scores of 0%, 50% and 100% in turn, each attempt lasting one second
+			for (int i = 0; i < 8; ++i) {
+				Attempt att = new Attempt(userId, list, 10000L*i, 10000L*i+1000L, new HashMap<>());
+				for (int q = 0; q < i%3; ++q) {
+					att.addAwnser(q, list.get(q).get(0), 500L);
+				}
+				user.addAttempt(list.getId(), att);
+			}
+			AttemptRollup before = user.getRollup(list.getId());
+			user.compactAttemptJournal();
+			Persistence.drain();
+
+			List<Attempt> attempts = user.getAttempts(list.getId());
+			assertEquals(3, attempts.size());
+			assertEquals(70000L, attempts.getFirst().getStart());
+			assertEquals(5, user.getFoldedRollups().get(list.getId()).getCount());
+			AttemptRollup after = user.getRollup(list.getId());
+			assertEquals(8, after.getCount());
+			assertEquals(100.0, after.getBestPercent());
+			assertEquals(50.0, after.getLastPercent());
+			assertEquals(before.getMeanPercent(), after.getMeanPercent(), 1e-9);
+			assertEquals(8000L, after.getTotalMillis());
+			assertEquals(70000L, after.getLastStart());
+
+			// the journal holds one rollup and the retained attempts
+			Path journal = tempUserDataPath.resolve(userId).resolve(AttemptJournal.FILENAME);
+			assertEquals(4, Files.readAllLines(journal).size());
+			Users.clear();
+			User reloaded = new User(userId);
+			assertEquals(3, reloaded.getAttempts(list.getId()).size());
+			AttemptRollup again = reloaded.getRollup(list.getId());
+			assertEquals(8, again.getCount());
+			assertEquals(after.getMeanPercent(), again.getMeanPercent(), 1e-9);
+			assertEquals(after.getBestPercent(), again.getBestPercent());
+			assertEquals(after.getTotalMillis(), again.getTotalMillis());
+		} finally {
+			Constants.ATTEMPTSKEPT = kept;
+		}
+	}
+
+	@Test
+	@DisplayName("Test list stats follow new attempts and drive collection sorting")
+	void testListStatsSortAndFilter() throws IOException{
+		String userId = "statsUser";
+		User user = Users.addUser(new User.Builder().id(userId).build());
+		List<QuestionList> lists = new ArrayList<>();
+		for (int i = 0; i < 3; ++i) {
+			QuestionList l = new QuestionList.Builder().ownerId(userId).name("Stats "+i).id("stats0"+i)
+				.add(new Question("Q1", new Option("A", true), new Option("B", false)))
+				.add(new Question("Q2", new Option("C", true), new Option("D", false))).build();
+			user.addList(l);
+			lists.add(l);
+		}
+		QuestionList first = lists.get(0), second = lists.get(1), never = lists.get(2);
+		assertSame(ListStats.NONE, user.getListStats(first.getId()));
+
+		Attempt full = new Attempt(userId, first, 1000L, 2000L, new HashMap<>());
+		full.addAwnser(0, first.get(0).get(0), 500L);
+		full.addAwnser(1, first.get(1).get(0), 500L);
+		user.addAttempt(first.getId(), full);
+		Attempt half = new Attempt(userId, second, 5000L, 9000L, new HashMap<>());
+		half.addAwnser(0, second.get(0).get(0), 500L);
+		user.addAttempt(second.getId(), half);
+		Attempt older = new Attempt(userId, first, 500L, 600L, new HashMap<>());
+		user.addAttempt(first.getId(), older);
+
+		ListStats stats = user.getListStats(first.getId());
+		assertEquals(2, stats.getPlayCount());
+		assertEquals(100.0, stats.getBestPercent());
+		// an attempt that started earlier does not replace the last one
+		assertEquals(100.0, stats.getLastPercent());
+		assertEquals(1000L, stats.getLastStart());
+		assertEquals(2000L, stats.getLastEnd());
+		assertEquals(50.0, user.getListStats(second.getId()).getLastPercent());
+
+		List<QuestionList> sorted = new ArrayList<>(lists);
+		sorted.sort(CollectionManager.parseComparator(user, "o=score"));
+		assertEquals(List.of(never, second, first), sorted);
+		sorted.sort(CollectionManager.parseComparator(user, "o=start").reversed());
+		assertEquals(List.of(second, first, never), sorted);
+		assertEquals(List.of(second), CollectionManager.applyFilters(lists, List.of(CollectionManager.parseFilter(user, "end>=9000"))));
+		assertEquals(List.of(never), CollectionManager.applyFilters(lists, List.of(CollectionManager.parseFilter(user, "start=0"))));
+
+		// stats are rebuilt from the journal on load
+		Persistence.drain();
+		Users.clear();
+		User reloaded = new User(userId);
+		assertEquals(2, reloaded.getListStats(first.getId()).getPlayCount());
+		assertEquals(1000L, reloaded.getListStats(first.getId()).getLastStart());
+	}
+
+	@Test
+	@DisplayName("Test users are loaded on demand and cold users are evicted")
+	void testLazyLoadingAndEviction() throws IOException{
+		int cacheSize = Constants.USERCACHESIZE;
+		Constants.USERCACHESIZE = 2;
+		try {
+			User cold = Users.addUser(new User.Builder().id("coldUser").build());
+			cold.setPrefix("cold!");
+			Users.addUser(new User.Builder().id("warmUser").build());
+			Users.addUser(new User.Builder().id("hotUser").build());
+			// users whose changes are not on disk yet are kept, eviction never writes nor waits
+			assertEquals(3, Users.size());
+			assertTrue(Users.isLoaded("coldUser"));
+
+			Persistence.flush();
+			Users.addUser(new User.Builder().id("newUser").build());
+			// the least recently used saved users were dropped
+			assertTrue(Users.size() <= 2);
+			assertFalse(Users.isLoaded("coldUser"));
+			assertTrue(Users.isLoaded("newUser"));
+			assertTrue(Files.exists(tempUserDataPath.resolve("coldUser").resolve("user-data.json")));
+
+			User reloaded = Users.get("coldUser");
+			assertNotNull(reloaded);
+			assertNotSame(cold, reloaded);
+			assertEquals("cold!", reloaded.getPrefix());
+			assertTrue(Users.isLoaded("coldUser"));
+			assertNull(Users.get("unknownUser"));
+
+			// the evicted instance can no longer change, its data would be written over the loaded copy
+			assertThrows(IllegalStateException.class, () -> cold.setPrefix("stale!"));
+			assertThrows(IllegalStateException.class, () -> Users.addUser(cold));
+			assertSame(reloaded, Users.get("coldUser"));
+			Persistence.flush();
+			assertEquals("cold!", new User("coldUser").getPrefix());
+		} finally {
+			Constants.USERCACHESIZE = cacheSize;
+		}
+	}
+
+	@Test
+	@DisplayName("Test concurrent lookups in a large registry")
+	void testConcurrentRegistryLookups() throws InterruptedException{
+		long delay = Constants.FLUSHDELAYMILLIS;
+		int cacheSize = Constants.USERCACHESIZE;
+		Constants.FLUSHDELAYMILLIS = 60_000;
+		Constants.USERCACHESIZE = 200_000;
+		try {
+			int nbUsers = 10_000, nbLookups = 100_000, nbThreads = 8;
+			List<User> users = new ArrayList<>(nbUsers);
+			for (int i=0; i<nbUsers; ++i){
+				users.add(new User.Builder().id(String.format("benchUser%07d", i)).build());
+			}
+			for (User user : users){
+				Users.addUser(user);
+			}
+			assertEquals(nbUsers, Users.size());
+
+			Thread[] threads = new Thread[nbThreads];
+			int[] misses = new int[nbThreads];
+			for (int t=0; t<nbThreads; ++t){
+				int id = t;
+				threads[t] = new Thread(() -> {
+					java.util.Random rand = new java.util.Random(id);
+					for (int i=0; i<nbLookups/nbThreads; ++i){
+						User u = users.get(rand.nextInt(nbUsers));
+						if (Users.get(u.getId()) != u) ++misses[id];
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread t : threads) t.join();
+			assertEquals(0, Arrays.stream(misses).sum());
+		} finally {
+			Users.clear();
+			Constants.FLUSHDELAYMILLIS = delay;
+			Constants.USERCACHESIZE = cacheSize;
+		}
+	}
+
+	@Test
+	@DisplayName("Test importing every user in parallel")
+	void testParallelImportUsers() throws IOException{
+		int nbUsers = 40, nbLists = 5;
+		for (int i=0; i<nbUsers; ++i){
+			String userId = String.format("1000000000000%05d", i);
+			User user = new User.Builder().id(userId).prefix("p"+i).build();
+			for (int j=0; j<nbLists; ++j){
+				user.addList(new QuestionList.Builder().ownerId(userId).name("L"+j).id(String.format("i%02dl%03d", j, i)).timeCreatedMillis(j).build());
+			}
+			Users.addUser(user);
+		}
+		Persistence.flush();
+		Users.clear();
+
+		List<User> imported = Users.importUsers();
+
+		assertEquals(nbUsers, imported.size());
+		// nothing read from disk is written back
+		assertEquals(0, Persistence.pendingCount());
+		for (User user : imported){
+			assertEquals(nbLists, user.getLists().size());
+			assertEquals("p"+Integer.parseInt(user.getId().substring(13)), user.getPrefix());
+		}
+	}
+
+	@Test
+	@DisplayName("Test the global list index")
+	void testGlobalListIndex() throws IOException{
+		User alice = Users.addUser(new User.Builder().id("aliceUser").build());
+		User bob = Users.addUser(new User.Builder().id("bobUser").build());
+		QuestionList la = new QuestionList.Builder().ownerId("aliceUser").name("A").id("idaaaaa").timeCreatedMillis(1L).build();
+		QuestionList lb = new QuestionList.Builder().ownerId("bobUser").name("B").id("idbbbbb").timeCreatedMillis(2L).build();
+		alice.addList(la);
+		bob.addList(lb);
+
+		assertEquals("aliceUser", Users.getOwnerIdOfList("idaaaaa"));
+		assertSame(lb, Users.getById("idbbbbb"));
+		assertNull(Users.getById("idnoone"));
+
+		bob.deleteList(lb);
+		assertNull(Users.getOwnerIdOfList("idbbbbb"));
+		assertNull(Users.getById("idbbbbb"));
+
+		// lists on disk are indexed from their file names without loading the owner
+		Persistence.flush();
+		Users.clear();
+		assertEquals("aliceUser", Users.getOwnerIdOfList("idaaaaa"));
+		assertFalse(Users.isLoaded("aliceUser"));
+		QuestionList reloaded = Users.getById("idaaaaa");
+		assertNotNull(reloaded);
+		assertEquals("A", reloaded.getName());
+		assertTrue(Users.isLoaded("aliceUser"));
+	}
+
 	@Test
 	@DisplayName("Test getLists and iterator")
 	void testGetListsAndIterator() {
@@ -266,6 +623,7 @@ public class UserTest {
 		assertTrue(user.getQuestionListPerTags().get("verified").isEmpty());
 		
 		// Verify exported data
+		Persistence.flush();
 		Path userFile = tempUserDataPath.resolve(userId).resolve("user-data.json");
 		String fileContent = readFileContent(userFile);
 		assertTrue(fileContent.matches(".*\"verified\"\\s*:\\s*\"✅\".*"), "Doesnt contain .*\\\"verified\\\"\\\\s*:\\\\s*\\\"✅\\\".*\n"+fileContent);
@@ -301,6 +659,7 @@ public class UserTest {
 		assertTrue(user.getEmojiPerTagName().containsKey("keep"));
 		
 		// Verify exported data
+		Persistence.flush();
 		Path userFile = tempUserDataPath.resolve(userId).resolve("user-data.json");
 		String fileContent = readFileContent(userFile);
 		assertFalse(fileContent.matches(".*\"toDelete\".*"));
@@ -337,6 +696,7 @@ public class UserTest {
 		assertEquals(newList, user.getLists().get("newId123"));
 		
 		// Verify list was exported
+		Persistence.flush();
 		Path listFile = tempListsPath.resolve(userId).resolve(newList.getId() + ".json");
 		assertTrue(Files.exists(listFile));
 		String fileContent = readFileContent(listFile);
@@ -382,6 +742,7 @@ public class UserTest {
 		assertEquals(2, retrieved.size()); // Should now have both old Q and new Q
 		
 		// Verify the file was updated
+		Persistence.flush();
 		Path listFile = tempListsPath.resolve(userId).resolve(existingList.getId() + ".json");
 		String fileContent = readFileContent(listFile).replaceAll("[\t\n]*", "").trim();
 		assertTrue(fileContent.matches(".*\"question\"\\s*:\\s*"+Constants.MAPPER.writeValueAsString("New Q")+".*"));
@@ -445,7 +806,64 @@ public class UserTest {
 		QuestionList foundList = user.getByName("Non Existent Name");
 		assertNull(foundList);
 	}
-	
+
+	@Test
+	@DisplayName("Test the tag index follows retagging, renames and deletions")
+	void testTagIndex() throws IOException{
+		User user = Users.addUser(new User.Builder().id("tagIndexUser").build());
+		QuestionList math = new QuestionList.Builder().ownerId("tagIndexUser").name("Math").id("idmath0").timeCreatedMillis(1L).build();
+		QuestionList physics = new QuestionList.Builder().ownerId("tagIndexUser").name("Physics").id("idphys0").timeCreatedMillis(2L).build();
+		user.addList(math);
+		user.addList(physics);
+		user.createTag("science", "🔬");
+		user.createTag("hard", "💀");
+		user.addTagToList(math, "science");
+		user.addTagToList(physics, "science");
+		user.addTagToList(physics, "hard");
+
+		assertTrue(user.removeTagFromList(physics, "hard"));
+		assertTrue(user.getListsByTag("hard").isEmpty());
+		assertEquals("💀", user.getEmojiFomTagName("hard"));
+
+		assertTrue(user.renameTag("science", "stem"));
+		assertNull(user.getEmojiFomTagName("science"));
+		assertEquals("🔬", user.getEmojiFomTagName("stem"));
+		assertEquals(Set.of(math, physics), Set.copyOf(user.getListsByTag("stem")));
+		assertTrue(math.tagNames().contains("stem"));
+		assertFalse(math.tagNames().contains("science"));
+
+		user.deleteList(math);
+		assertEquals(List.of(physics), user.getListsByTag("stem"));
+		assertEquals("🔬", user.getEmojiFomTagName("stem"));
+	}
+
+	@Test
+	@DisplayName("Test the name index follows renames and deletions")
+	void testNameIndex() throws IOException{
+		User user = Users.addUser(new User.Builder().id("nameUser").build());
+		QuestionList algebra = new QuestionList.Builder().ownerId("nameUser").name("Algebra").id("idalgeb").timeCreatedMillis(1L).build();
+		QuestionList algo = new QuestionList.Builder().ownerId("nameUser").name("algorithms").id("idalgor").timeCreatedMillis(2L).build();
+		QuestionList bio = new QuestionList.Builder().ownerId("nameUser").name("Biology").id("idbiolo").timeCreatedMillis(3L).build();
+		user.addList(algebra);
+		user.addList(algo);
+		user.addList(bio);
+
+		assertSame(algebra, user.getByName("Algebra"));
+		assertNull(user.getByName("algebra"));
+		assertSame(algebra, user.getByNameIgnoreCase("ALGEBRA"));
+		assertEquals(List.of(algebra, algo), user.getByNamePrefix("alg"));
+
+		assertFalse(user.renameList(algo, "Biology"));
+		assertTrue(user.renameList(algo, "Chemistry"));
+		assertNull(user.getByName("algorithms"));
+		assertSame(algo, user.getByName("Chemistry"));
+		assertEquals(List.of(algebra), user.getByNamePrefix("alg"));
+
+		user.deleteList(bio);
+		assertNull(user.getByName("Biology"));
+		assertTrue(user.getByNamePrefix("b").isEmpty());
+	}
+
 	@Test
 	@DisplayName("Test getEmojiFomTagName methods")
 	void testGetEmojiFomTagName() throws IOException{
@@ -570,4 +988,112 @@ public class UserTest {
 		User userAlphaNumericId = new User.Builder().id("alpha123").build();
 		assertTrue(userAlphaNumericId.equals("alpha123"));
 	}
-}
\ No newline at end of file
+	
+	@Test
+	@DisplayName("Test that only modified users and lists are exported on shutdown")
+	void testExportModified_OnlyWritesChanges() throws IOException {
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			User user = Users.addUser(new User.Builder().id("exportUser"+i).prefix("p"+i+"!").build());
+			user.addList(new QuestionList.Builder().ownerId(user.getId()).name("List "+i).id(String.format("idexp%02d", i)).timeCreatedMillis(1L).build());
+			users.add(user);
+		}
+		Persistence.flush();
+		for (User user : users) {
+			assertFalse(user.isModified());
+			assertFalse(user.getById(String.format("idexp%02d", users.indexOf(user))).isModified());
+		}
+		// nothing changed since the last flush
+		assertEquals(0, Users.exportModified());
+		
+		// a list edited in place, without going through its owner
+		QuestionList edited = users.get(3).getById("idexp03");
+		edited.setName("Renamed in place");
+		users.get(7).useButtons(false);
+		assertTrue(edited.isModified());
+		assertTrue(users.get(7).isModified());
+		long bytes = Users.exportModified();
+		assertTrue(bytes > 0);
+		assertFalse(edited.isModified());
+		assertFalse(users.get(7).isModified());
+		
+		Users.clear();
+		assertEquals("Renamed in place", Users.getById("idexp03").getName());
+		assertFalse(Users.get("exportUser7").useButtons());
+	}
+	
+	@Test
+	@DisplayName("Test list snapshots live as long as their attempts")
+	void testListSnapshotsLiveAsLongAsTheirAttempts() throws Exception {
+		QuestionList list = new QuestionList.Builder().ownerId("snapOwner").name("Snapshots").id("snapsh1")
+			.add(new Question("Q1", new Option("A", true), new Option("B", false))).build();
+		String version = list.getContentVersion();
+		assertSame(version, list.getContentVersion());
+		assertEquals(ListSnapshots.versionOf(list), version);
+		
+		Attempt att = new Attempt("snapUser", list);
+		assertEquals(version, att.getListVersion());
+		ListSnapshots.persist(att.getQuestionList(), version);
+		Persistence.drain();
+		java.lang.ref.WeakReference<QuestionList> snapshot = new java.lang.ref.WeakReference<>(att.getQuestionList());
+		att = null;
+		for (int i = 0; i < 50 && snapshot.get() != null; ++i) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		// no attempt references the version anymore, it is read back from disk when asked for
+		assertNull(snapshot.get());
+		QuestionList reloaded = ListSnapshots.get(list.getId(), version);
+		assertNotNull(reloaded);
+		assertEquals(version, reloaded.getContentVersion());
+		assertSame(reloaded, new Attempt("snapUser", list).getQuestionList());
+		
+		list.add(new Question("Q2", new Option("C", true), new Option("D", false)));
+		assertNotEquals(version, list.getContentVersion());
+		assertEquals(ListSnapshots.versionOf(list), list.getContentVersion());
+	}
+	
+	@Test
+	@DisplayName("Test getByName loads the owner")
+	void testGetByNameLoadsTheOwner() throws IOException {
+		User owner = Users.addUser(new User.Builder().id("nameOwner1").build());
+		owner.addList(new QuestionList.Builder().ownerId(owner.getId()).name("Stored Name").id("idname1").timeCreatedMillis(1L).build());
+		Persistence.flush();
+		Users.clear();
+		
+		// the owner is not resident anymore, looking its list up by name loads it
+		assertTrue(Users.getLoadedUsers().isEmpty());
+		QuestionList found = Users.getByName("nameOwner1", "Stored Name");
+		assertNotNull(found);
+		assertEquals("idname1", found.getId());
+		assertNull(Users.getByName("nameOwner1", "Other Name"));
+		assertNull(Users.getByName("someoneElse", "Stored Name"));
+	}
+	
+	@Test
+	@DisplayName("Test an evicted user changed before a reload is taken back")
+	void testEvictedUserChangedBeforeReloadIsTakenBack() throws IOException {
+		int cacheSize = Constants.USERCACHESIZE;
+		Constants.USERCACHESIZE = 1;
+		try {
+			User first = Users.addUser(new User.Builder().id("firstUser").build());
+			first.addList(new QuestionList.Builder().ownerId("firstUser").name("First").id("idevct1").timeCreatedMillis(1L).build());
+			Persistence.flush();
+			Users.addUser(new User.Builder().id("secondUser").build());
+			assertFalse(Users.isLoaded("firstUser"));
+
+			// nobody loaded it since, so the instance still held by a caller becomes resident again
+			QuestionList list = first.getById("idevct1");
+			list.setName("Renamed after eviction");
+			assertSame(first, Users.get("firstUser"));
+			first.addAttempt("idevct1", new Attempt("firstUser", list, 1000L, 2000L, new HashMap<>()));
+			Users.exportModified();
+			Users.clear();
+			User reloaded = Users.get("firstUser");
+			assertEquals("Renamed after eviction", reloaded.getById("idevct1").getName());
+			assertEquals(1, reloaded.getAttempts("idevct1").size());
+		} finally {
+			Constants.USERCACHESIZE = cacheSize;
+		}
+	}
+}